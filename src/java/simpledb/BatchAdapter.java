@@ -0,0 +1,136 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * BatchAdapter converts between the two iterator interfaces, so that a
+ * batch operator can read from a tuple-at-a-time child and the other way
+ * around.  Each adapter opens, rewinds and closes the iterator it wraps.
+ *
+ * @see BatchIterator
+ * @see DbIterator
+ */
+public class BatchAdapter {
+
+    private BatchAdapter() {
+    }
+
+    /** @return a DbIterator over the selected rows of the batches of child */
+    public static DbIterator toTuples(BatchIterator child) {
+        return new Tuples(child);
+    }
+
+    /**
+     * @return a BatchIterator that reads child into batches of up to
+     *         capacity rows
+     */
+    public static BatchIterator toBatches(DbIterator child, int capacity) {
+        return new Batches(child, capacity);
+    }
+
+    /** Returns the selected rows of a BatchIterator's batches as Tuples. */
+    private static class Tuples implements DbIterator {
+        private static final long serialVersionUID = 1L;
+
+        private final BatchIterator child;
+        private transient TupleBatch batch;
+        private transient int next; // index in batch's selection vector
+        private transient boolean open;
+        private transient boolean done;
+
+        Tuples(BatchIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            batch = null;
+            open = true;
+            done = false;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (!open)
+                throw new IllegalStateException("iterator is not open");
+            while (batch == null || next >= batch.numSelected()) {
+                // don't ask the child again once it is done
+                if (done)
+                    return false;
+                batch = child.nextBatch();
+                next = 0;
+                done = batch == null;
+            }
+            return true;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return batch.getTuple(batch.getSelection()[next++]);
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            if (!open)
+                throw new IllegalStateException("iterator is not open");
+            child.rewind();
+            batch = null;
+            done = false;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+            batch = null;
+            open = false;
+        }
+    }
+
+    /** Collects the Tuples of a DbIterator into batches. */
+    private static class Batches implements BatchIterator {
+        private static final long serialVersionUID = 1L;
+
+        private final DbIterator child;
+        private final int capacity;
+        private transient TupleBatch batch;
+        private transient boolean open;
+
+        Batches(DbIterator child, int capacity) {
+            this.child = child;
+            this.capacity = capacity;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            open = true;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+            if (!open)
+                throw new IllegalStateException("iterator is not open");
+            if (batch == null)
+                batch = new TupleBatch(child.getTupleDesc(), capacity);
+            batch.clear();
+            while (!batch.isFull() && child.hasNext())
+                batch.addTuple(child.next());
+            return batch.size() == 0 ? null : batch;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            if (!open)
+                throw new IllegalStateException("iterator is not open");
+            child.rewind();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+            open = false;
+        }
+    }
+}
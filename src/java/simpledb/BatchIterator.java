@@ -0,0 +1,50 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * BatchIterator is the interface of operators that produce their output a
+ * {@link TupleBatch} at a time rather than a Tuple at a time, so that the
+ * cost of a call is spread over many rows.  As with DbIterator, none of
+ * the methods work until the iterator is opened, and they throw
+ * IllegalStateException instead.
+ * <p>
+ * {@link BatchAdapter} turns a BatchIterator into a DbIterator and back,
+ * so batch and tuple-at-a-time operators can be mixed in one plan.
+ *
+ * @see DbIterator
+ */
+public interface BatchIterator extends Serializable {
+    /**
+     * Opens the iterator. This must be called before any of the other methods.
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    public void open() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch of rows.  The batch may be the one returned
+     * by the previous call, refilled, so callers must be done with a batch
+     * before asking for the next.  A batch may have no selected rows
+     * without the iteration being over.
+     *
+     * @return the next batch, or null if there are no more rows
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     * @throws DbException when rewind is unsupported.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public void rewind() throws DbException, TransactionAbortedException;
+
+    /** @return the TupleDesc associated with this BatchIterator */
+    public TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator. When the iterator is closed, calling
+     * nextBatch() or rewind() should fail by throwing IllegalStateException.
+     */
+    public void close();
+}
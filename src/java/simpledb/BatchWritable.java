@@ -0,0 +1,32 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Optional interface for DbFiles that can write many pages more cheaply
+ * together than one at a time.  When the BufferPool flushes several dirty
+ * pages of such a file it hands them over in a single writePages call,
+ * sorted by page number, and then forces the file once.  Files that do not
+ * implement it get one {@link DbFile#writePage} call per page.
+ *
+ * @see BufferPool#flushAllPages
+ */
+public interface BatchWritable {
+    /**
+     * Writes the given pages, coalescing pages with adjacent page numbers
+     * into as few writes as possible.  The writes need not be durable until
+     * {@link #force} is called.
+     *
+     * @param pages the pages to write, sorted by page number
+     * @throws IOException if a write fails
+     */
+    public void writePages(List<Page> pages) throws IOException;
+
+    /**
+     * Forces every page written so far to stable storage.
+     *
+     * @throws IOException if the file cannot be forced
+     */
+    public void force() throws IOException;
+}
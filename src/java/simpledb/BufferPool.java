@@ -1,8 +1,29 @@
 package simpledb;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -12,6 +33,58 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Cache hits take no pool-wide lock: the page table is a
+ * ConcurrentHashMap, and the access is appended to a striped buffer that is
+ * replayed into the eviction policy in batches.  A hit pins its frame only
+ * while it looks the page up, so that an eviction or discard cannot release
+ * the frame (or, off-heap, reuse its arena slot) halfway through; the pin
+ * is dropped before the page is returned, and as before nothing stops a
+ * page a caller holds from being evicted afterwards.  Misses serialize per page
+ * on a striped lock, and only take the pool's monitor to make room and
+ * install the new frame.  Flushes, evictions and discards still hold the
+ * monitor, which LogFile relies on (see the locking note there).
+ * <p>
+ * In off-heap mode the serialized bytes of every resident page live in a
+ * {@link FrameArena} outside the Java heap.  A Page object is materialized
+ * from those bytes only when the page is requested (files that are
+ * {@link RawPageReadable} are read straight into the arena, so a prefetched
+ * page is never built at all), and only a bounded number of clean
+ * materialized pages, a quarter of the frames, are kept reachable from the
+ * pool; the rest are left to the garbage collector and rebuilt on the next
+ * request.  Dirty pages stay materialized until they are flushed, at which
+ * point their bytes are copied back into the arena, and so do pages handed
+ * out READ_WRITE until their transaction completes, since the caller may
+ * be about to dirty them.
+ * <p>
+ * Pages can also be read ahead of need with {@link #prefetchPage}, which
+ * loads them on a background thread through the same miss path.  A
+ * prefetched page is reported to the eviction policy as prefetched, and
+ * only counts as admitted once a caller actually asks for it.
+ * <p>
+ * Optionally, a background page cleaner (see {@link #setCleanTarget}) keeps
+ * a fraction of the frames clean by writing out dirty pages of transactions
+ * that have committed (see {@link #transactionComplete(TransactionId,
+ * boolean)}) while it runs, so that evictions rarely have to write a page
+ * on the requesting thread.  The cleaner writes through the same batched,
+ * log-first path as flushAllPages, holding the pool's monitor.
+ * <p>
+ * A BufferPool can be split into several named pools (see {@link #addPool}),
+ * each with its own capacity and eviction policy.  The Catalog binds each
+ * table to a pool by name; tables that are not bound, or bound to a pool
+ * this BufferPool does not have, use the default pool sized by the
+ * constructor.  A table in one pool can never evict a page of another, so
+ * e.g. a large scan cannot push small lookup tables out of memory.  All
+ * pools share the page table, the monitor and the background threads.
+ * <p>
+ * Each DbFile has its own page size (see {@link DbFile#getPageSize}), and
+ * {@link #getPageSize()} is only the default.  Capacities are counted in
+ * default-size pages, so a page twice the default size takes up two pages
+ * of its pool, and off-heap pools keep one arena per page size.
+ * <p>
+ * The pool counts what it does in a {@link BufferPoolStats}, cheaply
+ * enough to stay on all the time; it is also readable over JMX through
+ * {@link BufferPoolMXBean}.
  * 
  * @Threadsafe, all fields are final
  */
@@ -26,15 +99,405 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Name of the pool sized by the constructor, used by unbound tables. */
+    public static final String DEFAULT_POOL = "default";
+
+    /** Eviction policy used when none is passed to the constructor. */
+    public static final EvictionPolicy.Kind DEFAULT_EVICTION_POLICY =
+        EvictionPolicy.Kind.TWO_QUEUE;
+
+    /** Number of lock stripes used to serialize misses on the same page. */
+    private static final int MISS_STRIPES = 64;
+    /** Pending hits per access buffer stripe before a drain is attempted. */
+    private static final int DRAIN_THRESHOLD = 32;
+    /** Pending hits per stripe beyond which further hits are not recorded. */
+    private static final int MAX_PENDING = 256;
+    /** An off-heap pool keeps one in this many of its pages materialized. */
+    private static final int ARENA_VIEW_SHARE = 4;
+    /** Seconds an idle prefetch thread waits for work before exiting. */
+    private static final int PREFETCH_KEEP_ALIVE = 1;
+    /** Most dirty pages the cleaner writes while holding the monitor. */
+    private static final int CLEANER_BATCH = 32;
+    /** Milliseconds the cleaner sleeps between rounds unless woken up. */
+    private static final int CLEANER_INTERVAL = 100;
+
+    /**
+     * A resident page together with the number of threads currently
+     * looking it up.  A frame is only evicted or discarded once its pin
+     * count is zero; it is then marked EVICTED so late pins fail.
+     */
+    private static class Frame {
+        static final int EVICTED = Integer.MIN_VALUE / 2;
+
+        final AtomicInteger pins = new AtomicInteger();
+        /** Arena frame holding the page's bytes, or -1 for a heap frame. */
+        final int slot;
+        /** The arena slot belongs to, or null for a heap frame. */
+        final FrameArena arena;
+        /** Default-size pages of capacity the frame takes up. */
+        final int weight;
+        /** Decodes the page, for off-heap frames of RawPageReadable files. */
+        final RawPageReadable raw;
+        /** Page(PageId, byte[]) constructor used to rebuild other off-heap pages. */
+        final Constructor<?> pageConstructor;
+        final PageId pid;
+        /** The named pool the frame belongs to. */
+        final Partition partition;
+        /** Hit and miss counters of the page's table. */
+        final BufferPoolStats.TableStats stats;
+        /** Set while a prefetched page has not been requested yet. */
+        final AtomicBoolean prefetched = new AtomicBoolean();
+        /** The page; null while an off-heap frame is not materialized. */
+        volatile Page page;
+        /** Last dropped view, so callers still holding it keep identity. */
+        WeakReference<Page> detached; // protected by this
+        /** Set while discardPage waits for the frame to be unpinned. */
+        volatile boolean draining;
+        /** Transactions the page was handed out READ_WRITE to; protected by this. */
+        int holds;
+
+        Frame(PageId pid, Page page, int slot, FrameArena arena, int weight,
+              Partition partition, BufferPoolStats.TableStats stats, RawPageReadable raw) {
+            this.page = page;
+            this.slot = slot;
+            this.arena = arena;
+            this.weight = weight;
+            this.pid = pid;
+            this.partition = partition;
+            this.stats = stats;
+            this.raw = slot < 0 ? null : raw;
+            this.pageConstructor = slot < 0 || raw != null ? null : pageConstructor(page.getClass());
+        }
+
+        /** @return the materialized page, possibly detached, or null */
+        synchronized Page residentPage() {
+            if (page != null)
+                return page;
+            return detached == null ? null : detached.get();
+        }
+
+        /** @return false if the frame has already left the pool */
+        boolean pin() {
+            for (;;) {
+                int n = pins.get();
+                if (n < 0)
+                    return false;
+                if (pins.compareAndSet(n, n + 1))
+                    return true;
+            }
+        }
+
+        void unpin() {
+            if (pins.decrementAndGet() == 0 && draining) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /** Waits for the pins of lookups in progress to go, then claims the frame. */
+        synchronized void awaitClaim() {
+            boolean interrupted = false;
+            draining = true;
+            while (!claim()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            draining = false;
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        /** @return true if the frame was unpinned and is now EVICTED */
+        boolean claim() {
+            return pins.compareAndSet(0, EVICTED);
+        }
+
+        void unclaim() {
+            pins.set(0);
+        }
+    }
+
+    /** @return the Page(PageId, byte[]) constructor every Page must have */
+    private static Constructor<?> pageConstructor(Class<?> pageClass) {
+        for (Constructor<?> c : pageClass.getDeclaredConstructors()) {
+            Class<?>[] params = c.getParameterTypes();
+            if (params.length == 2 && PageId.class.isAssignableFrom(params[0])
+                    && params[1] == byte[].class) {
+                c.setAccessible(true);
+                return c;
+            }
+        }
+        throw new IllegalArgumentException(pageClass.getName()
+                + " has no (PageId, byte[]) constructor");
+    }
+
+    /** One stripe of the lossy log of hits not yet seen by the policy. */
+    private static class AccessBuffer {
+        final ConcurrentLinkedQueue<PageId> hits = new ConcurrentLinkedQueue<PageId>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+
+    /**
+     * One named pool: a capacity, the eviction policy that keeps the pool
+     * within it, and the hits waiting to be replayed into that policy.
+     */
+    private static class Partition {
+        final String name;
+        final int numPages;
+        final EvictionPolicy policy; // protected by policyLock
+        final ReentrantLock policyLock = new ReentrantLock();
+        final AccessBuffer[] accessBuffers;
+        final boolean offHeap;
+        /** Off-heap page bytes, one arena per page size; protected by this. */
+        final HashMap<Integer, FrameArena> arenas = new HashMap<Integer, FrameArena>();
+        // resident and loading count default-size pages, not frames
+        int resident = 0; // frames in the page table; protected by the pool's monitor
+        int loading = 0;  // frames reserved by in-progress misses; protected by the pool's monitor
+
+        Partition(String name, int numPages, EvictionPolicy.Kind evictionPolicy, boolean offHeap) {
+            this.name = name;
+            this.numPages = numPages;
+            this.policy = evictionPolicy.create(numPages);
+            this.offHeap = offHeap;
+            if (offHeap)
+                arenaFor(getPageSize());
+            int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+            this.accessBuffers = new AccessBuffer[stripes];
+            for (int i = 0; i < stripes; i++)
+                accessBuffers[i] = new AccessBuffer();
+        }
+
+        /**
+         * @return the arena for pages of pageSize bytes, allocated on first
+         * use with room for a pool full of such pages, or null if the
+         * partition is on the heap
+         */
+        synchronized FrameArena arenaFor(int pageSize) {
+            if (!offHeap)
+                return null;
+            FrameArena arena = arenas.get(pageSize);
+            if (arena == null) {
+                arena = new FrameArena(Math.max(1, numPages / weightOf(pageSize)), pageSize);
+                arenas.put(pageSize, arena);
+            }
+            return arena;
+        }
+
+        /**
+         * Logs a cache hit for the eviction policy without blocking.  Hits
+         * are replayed into the policy in batches by whichever thread finds
+         * the policy lock free; if the buffers back up, hits are dropped,
+         * which only costs the policy some precision.
+         *
+         * @return false if the hit was dropped
+         */
+        boolean recordAccess(PageId pid) {
+            AccessBuffer buffer = accessBuffers[(int) Thread.currentThread().getId() & (accessBuffers.length - 1)];
+            int pending = buffer.size.get();
+            boolean recorded = pending < MAX_PENDING;
+            if (recorded) {
+                buffer.hits.add(pid);
+                pending = buffer.size.incrementAndGet();
+            }
+            if (pending >= DRAIN_THRESHOLD && policyLock.tryLock()) {
+                try {
+                    drainAccessBuffers();
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return recorded;
+        }
+
+        /** Replays logged hits into the policy.  Caller holds policyLock. */
+        void drainAccessBuffers() {
+            for (AccessBuffer buffer : accessBuffers) {
+                PageId pid;
+                while ((pid = buffer.hits.poll()) != null) {
+                    buffer.size.decrementAndGet();
+                    policy.pageAccessed(pid);
+                }
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, Frame> frames;
+    private final Object[] missLocks;
+    private final boolean offHeap;
+    /** The pool of tables not bound to another one. */
+    private final Partition defaultPartition;
+    /** Every pool, by name, including the default one. */
+    private final ConcurrentHashMap<String, Partition> partitions =
+        new ConcurrentHashMap<String, Partition>();
+    /** Off-heap frames that currently have a page materialized. */
+    private final ConcurrentLinkedQueue<Frame> views = new ConcurrentLinkedQueue<Frame>();
+    private final AtomicInteger numViews = new AtomicInteger();
+    /** Most clean, unheld materialized pages, over all pools. */
+    private final AtomicInteger maxViews = new AtomicInteger();
+    /** Off-heap frames handed out READ_WRITE, by transaction. */
+    private final ConcurrentHashMap<TransactionId, Set<Frame>> held =
+        new ConcurrentHashMap<TransactionId, Set<Frame>>();
+    /**
+     * Committed transactions that may still have dirty pages in the pool.
+     * Only kept while the cleaner runs, which prunes it each round.
+     */
+    private final Set<TransactionId> committed =
+        Collections.newSetFromMap(new ConcurrentHashMap<TransactionId, Boolean>());
+
+    /** Runs prefetches, one at a time, on a daemon thread. */
+    private final ThreadPoolExecutor prefetcher;
+    /** Pages queued for or being read by the prefetcher. */
+    private final ConcurrentHashMap<PageId, Boolean> prefetching =
+        new ConcurrentHashMap<PageId, Boolean>();
+
+    /** Fraction of frames the cleaner keeps clean; 0 when it is off. */
+    private volatile double cleanTarget = 0;
+    /** The running cleaner thread, or null; protected by cleanerSignal. */
+    private Thread cleaner;
+    /** Wakes the cleaner up early. */
+    private final Object cleanerSignal = new Object();
+
+    private final BufferPoolStats stats = new BufferPoolStats();
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
-        // some code goes here
+        this(numPages, DEFAULT_EVICTION_POLICY);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and picks
+     * eviction victims with the given policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param evictionPolicy the replacement policy to use.
+     */
+    public BufferPool(int numPages, EvictionPolicy.Kind evictionPolicy) {
+        this(numPages, evictionPolicy, false);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, picks eviction
+     * victims with the given policy, and optionally keeps page contents off
+     * the Java heap.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param evictionPolicy the replacement policy to use.
+     * @param offHeap if true, store page bytes in a direct-memory
+     *   {@link FrameArena} and materialize pages on demand.
+     */
+    public BufferPool(int numPages, EvictionPolicy.Kind evictionPolicy, boolean offHeap) {
+        this.offHeap = offHeap;
+        this.frames = new ConcurrentHashMap<PageId, Frame>();
+        this.defaultPartition = new Partition(DEFAULT_POOL, numPages, evictionPolicy, offHeap);
+        partitions.put(DEFAULT_POOL, defaultPartition);
+        maxViews.addAndGet(Math.max(1, numPages / ARENA_VIEW_SHARE));
+        this.missLocks = new Object[MISS_STRIPES];
+        for (int i = 0; i < MISS_STRIPES; i++)
+            missLocks[i] = new Object();
+
+        // no thread is started until the first prefetch; more pages queued
+        // than the pool holds would only evict each other
+        this.prefetcher = new ThreadPoolExecutor(0, 1, PREFETCH_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, numPages)), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "BufferPool prefetcher");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Adds a named pool of numPages pages, on top of the pages of the pools
+     * this BufferPool already has.  Tables bound to name in the Catalog
+     * are cached in the new pool from now on.
+     *
+     * @param name the name tables are bound to the pool with
+     * @param numPages maximum number of pages in the new pool
+     * @param evictionPolicy the replacement policy of the new pool
+     * @throws IllegalArgumentException if a pool of that name exists
+     */
+    public void addPool(String name, int numPages, EvictionPolicy.Kind evictionPolicy) {
+        if (numPages <= 0)
+            throw new IllegalArgumentException("pool " + name + " must hold at least one page");
+        Partition partition = new Partition(name, numPages, evictionPolicy, offHeap);
+        if (partitions.putIfAbsent(name, partition) != null)
+            throw new IllegalArgumentException("there is already a pool named " + name);
+        maxViews.addAndGet(Math.max(1, numPages / ARENA_VIEW_SHARE));
+    }
+
+    /**
+     * @return the maximum number of pages of the named pool
+     * @throws NoSuchElementException if there is no pool of that name
+     */
+    public int getPoolCapacity(String name) throws NoSuchElementException {
+        Partition partition = partitions.get(name);
+        if (partition == null)
+            throw new NoSuchElementException("no pool named " + name);
+        return partition.numPages;
+    }
+
+    /** @return the names of the pools of this BufferPool */
+    public Set<String> getPoolNames() {
+        return Collections.unmodifiableSet(partitions.keySet());
+    }
+
+    /** @return the pool that caches the pages of tableId */
+    private Partition partitionFor(int tableId) {
+        if (partitions.size() == 1)
+            return defaultPartition;
+        String name;
+        try {
+            name = Database.getCatalog().getPoolName(tableId);
+        } catch (NoSuchElementException e) {
+            return defaultPartition;
+        }
+        Partition partition = name == null ? null : partitions.get(name);
+        return partition == null ? defaultPartition : partition;
+    }
+
+    /** @return the maximum number of pages this pool holds, over all pools */
+    int capacity() {
+        int n = 0;
+        for (Partition partition : partitions.values())
+            n += partition.numPages;
+        return n;
+    }
+
+    /**
+     * @return the maximum number of pages of table tableId the pool it
+     * uses can hold
+     */
+    int capacityFor(int tableId) {
+        int weight = 1;
+        try {
+            weight = weightOf(Database.getCatalog().getDatabaseFile(tableId).getPageSize());
+        } catch (NoSuchElementException e) {
+            // not in the catalog: assume default-size pages
+        }
+        return Math.max(1, partitionFor(tableId).numPages / weight);
+    }
+
+    /**
+     * @return the number of default-size pages of capacity a page of
+     * pageSize bytes takes up; pool capacities are counted in those.
+     */
+    static int weightOf(int pageSize) {
+        return Math.max(1, (pageSize + getPageSize() - 1) / getPageSize());
     }
     
+    /**
+     * @return the default page size, used by files that are not given one
+     * and as the unit of pool capacities
+     */
     public static int getPageSize() {
       return pageSize;
     }
@@ -49,6 +512,127 @@ public class BufferPool {
     	BufferPool.pageSize = PAGE_SIZE;
     }
 
+    /**
+     * Starts, retunes or stops the background page cleaner.
+     *
+     * @param fraction the fraction of frames, between 0 and 1, that the
+     *   cleaner tries to keep free or clean; 0 stops the cleaner.
+     */
+    public void setCleanTarget(double fraction) {
+        if (fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("clean target " + fraction + " is not between 0 and 1");
+        synchronized (cleanerSignal) {
+            cleanTarget = fraction;
+            if (fraction > 0 && cleaner == null) {
+                cleaner = new Thread(new Runnable() {
+                    public void run() {
+                        runCleaner();
+                    }
+                }, "BufferPool page cleaner");
+                cleaner.setDaemon(true);
+                cleaner.start();
+            } else if (fraction == 0) {
+                cleaner = null;
+                committed.clear();
+            }
+            cleanerSignal.notifyAll();
+        }
+    }
+
+    /** @return the statistics of this pool */
+    public BufferPoolStats getStats() {
+        return stats;
+    }
+
+    /** @return the number of resident pages */
+    int residentPages() {
+        return frames.size();
+    }
+
+    /** @return the number of committed transactions the cleaner may write pages of */
+    int committedTransactions() {
+        return committed.size();
+    }
+
+    /** @return the number of resident pages that are dirty */
+    int dirtyPages() {
+        int n = 0;
+        for (Frame frame : frames.values()) {
+            Page page = frame.residentPage();
+            if (page != null && page.isDirty() != null)
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Body of the cleaner thread.  It exits once it is stopped or replaced,
+     * or once this pool is no longer the database's pool.
+     */
+    private void runCleaner() {
+        Thread self = Thread.currentThread();
+        for (;;) {
+            synchronized (cleanerSignal) {
+                try {
+                    if (cleaner == self)
+                        cleanerSignal.wait(CLEANER_INTERVAL);
+                } catch (InterruptedException e) {
+                    cleaner = null;
+                }
+                if (cleaner != self || Database.getBufferPool() != this) {
+                    if (cleaner == self)
+                        cleaner = null;
+                    return;
+                }
+            }
+            try {
+                // keep going while there is more to do, but let others in
+                while (cleanRound() == CLEANER_BATCH)
+                    Thread.yield();
+            } catch (IOException e) {
+                // leave the pages dirty; eviction will report the error
+            }
+        }
+    }
+
+    /**
+     * Writes up to CLEANER_BATCH dirty pages of committed transactions if
+     * fewer than the target fraction of frames are free or clean.  Pages of
+     * transactions that are running or have aborted are never written.
+     *
+     * @return the number of pages written
+     */
+    synchronized int cleanRound() throws IOException {
+        int capacity = capacity();
+        int target = (int) Math.ceil(cleanTarget * capacity);
+        int clean = capacity;
+        for (Partition partition : partitions.values())
+            clean -= partition.resident + partition.loading;
+        // committed transactions none of whose pages are dirty any more are
+        // forgotten; those committing during the scan are kept for next time
+        HashSet<TransactionId> forget = new HashSet<TransactionId>(committed);
+        ArrayList<Frame> candidates = new ArrayList<Frame>();
+        for (Frame frame : frames.values()) {
+            Page page = frame.residentPage();
+            TransactionId dirtier = page == null ? null : page.isDirty();
+            if (dirtier == null) {
+                clean += frame.weight;
+            } else if (committed.contains(dirtier)) {
+                candidates.add(frame);
+                forget.remove(dirtier);
+            }
+        }
+        committed.removeAll(forget);
+        int wanted = Math.min(target - clean, CLEANER_BATCH);
+        if (wanted <= 0 || candidates.isEmpty())
+            return 0;
+        if (candidates.size() > wanted)
+            candidates.subList(wanted, candidates.size()).clear();
+        int written = flushFrames(candidates);
+        stats.cleanerWrites.add(written);
+        return written;
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -66,8 +650,314 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-        // some code goes here
-        return null;
+        Frame frame = frames.get(pid);
+        if (frame != null && frame.pin()) {
+            try {
+                touch(frame);
+                if (perm == Permissions.READ_WRITE)
+                    hold(tid, frame);
+                return pageOf(frame);
+            } finally {
+                frame.unpin();
+            }
+        }
+        long start = System.nanoTime();
+        Page page;
+        try {
+            page = loadPage(pid, false);
+        } finally {
+            stats.pageWaits.increment();
+            stats.pageWaitNanos.add(System.nanoTime() - start);
+        }
+        if (perm == Permissions.READ_WRITE) {
+            frame = frames.get(pid);
+            if (frame != null && frame.slot >= 0 && frame.pin()) {
+                try {
+                    hold(tid, frame);
+                    // page is still reachable, so this is page unless it was
+                    // evicted and read again meanwhile
+                    page = pageOf(frame);
+                } finally {
+                    frame.unpin();
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Keeps the page of an off-heap frame materialized from now until tid
+     * completes, since tid may be about to modify it; a page dropped from
+     * the heap while clean would take such changes with it.
+     */
+    private void hold(TransactionId tid, Frame frame) {
+        if (frame.slot < 0 || tid == null)
+            return;
+        Set<Frame> mine = held.get(tid);
+        if (mine == null) {
+            Set<Frame> created = Collections.newSetFromMap(new ConcurrentHashMap<Frame, Boolean>());
+            mine = held.putIfAbsent(tid, created);
+            if (mine == null)
+                mine = created;
+        }
+        if (mine.add(frame)) {
+            synchronized (frame) {
+                frame.holds++;
+            }
+        }
+    }
+
+    /**
+     * Asks for a page to be read into the pool in the background, so that
+     * a later getPage finds it resident.  Prefetching is best effort: the
+     * request is dropped if the page is already resident or queued, or if
+     * as many pages as the pool holds are already queued, and errors reading
+     * it are ignored (the demand read will report them).
+     *
+     * @param pid the ID of the page that is likely to be requested soon
+     */
+    public void prefetchPage(final PageId pid) {
+        if (frames.containsKey(pid) || prefetching.putIfAbsent(pid, Boolean.TRUE) != null)
+            return;
+        try {
+            prefetcher.execute(new Runnable() {
+                public void run() {
+                    try {
+                        loadPage(pid, true);
+                    } catch (DbException e) {
+                        // e.g. every frame is pinned; the reader will fetch it
+                    } catch (RuntimeException e) {
+                        // e.g. the page no longer exists
+                    } finally {
+                        prefetching.remove(pid);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the queue is full; the reader will fetch it
+            prefetching.remove(pid);
+        }
+    }
+
+    /** @return true if pid is resident in this pool */
+    boolean isResident(PageId pid) {
+        return frames.containsKey(pid);
+    }
+
+    /** @return true if pid is waiting for or being read by the prefetcher */
+    boolean isPrefetching(PageId pid) {
+        return prefetching.containsKey(pid);
+    }
+
+    /**
+     * Returns the page held by a pinned frame, materializing it from the
+     * arena if the frame is off-heap and has no page at the moment.
+     */
+    private Page pageOf(Frame frame) throws DbException {
+        Page page = frame.page;
+        if (page != null)
+            return page;
+        synchronized (frame) {
+            if (frame.page != null)
+                return frame.page;
+            page = frame.detached == null ? null : frame.detached.get();
+            if (page == null && frame.raw != null) {
+                page = frame.raw.newPage(frame.pid, frame.arena.read(frame.slot));
+            } else if (page == null) {
+                try {
+                    page = (Page) frame.pageConstructor.newInstance(frame.pid,
+                            frame.arena.read(frame.slot));
+                } catch (InstantiationException e) {
+                    throw new DbException("cannot materialize page " + frame.pid + ": " + e);
+                } catch (IllegalAccessException e) {
+                    throw new DbException("cannot materialize page " + frame.pid + ": " + e);
+                } catch (InvocationTargetException e) {
+                    throw new DbException("cannot materialize page " + frame.pid + ": " + e.getCause());
+                }
+            }
+            frame.detached = null;
+            frame.page = page;
+        }
+        addView(frame);
+        return page;
+    }
+
+    /**
+     * Registers a newly materialized off-heap page, and lets go of the
+     * oldest clean ones if too many are reachable from the pool.
+     */
+    private void addView(Frame frame) {
+        views.add(frame);
+        int max = maxViews.get();
+        int excess = numViews.incrementAndGet() - max;
+        // look at each queued frame at most once per call
+        for (int i = views.size(); excess > 0 && i > 0; i--) {
+            Frame oldest = views.poll();
+            if (oldest == null)
+                break;
+            synchronized (oldest) {
+                Page page = oldest.page;
+                if (page == null) {
+                    // left the pool or already detached
+                    excess = numViews.decrementAndGet() - max;
+                } else if (page.isDirty() == null && oldest.holds == 0) {
+                    oldest.detached = new WeakReference<Page>(page);
+                    oldest.page = null;
+                    excess = numViews.decrementAndGet() - max;
+                } else {
+                    // dirty pages stay until flushPage copies them back,
+                    // held ones until their transactions complete
+                    views.add(oldest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a page that was not resident into a new frame.  Concurrent
+     * misses on the same page wait for the first one instead of reading
+     * the page twice, so a demand read never duplicates a prefetch.
+     *
+     * @param prefetch true if no caller has asked for the page yet
+     * @return the page, or null for a prefetch of a resident page
+     */
+    private Page loadPage(PageId pid, boolean prefetch) throws DbException {
+        synchronized (missLocks[(pid.hashCode() & 0x7fffffff) % MISS_STRIPES]) {
+            Frame frame = frames.get(pid);
+            if (frame != null && prefetch)
+                return null;
+            if (frame != null && frame.pin()) {
+                try {
+                    touch(frame);
+                    return pageOf(frame);
+                } finally {
+                    frame.unpin();
+                }
+            }
+
+            Partition partition = partitionFor(pid.getTableId());
+            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            int weight = weightOf(file.getPageSize());
+            FrameArena arena = partition.arenaFor(file.getPageSize());
+            reserveFrame(partition, weight);
+            RawPageReadable raw = arena != null && file instanceof RawPageReadable
+                ? (RawPageReadable) file : null;
+            Page page = null;
+            int slot = -1;
+            try {
+                if (raw != null) {
+                    byte[] data = raw.readPageBytes(pid);
+                    slot = arena.allocate();
+                    arena.write(slot, data);
+                    // a prefetched page is built when it is first requested
+                    if (!prefetch)
+                        page = raw.newPage(pid, data);
+                } else {
+                    page = file.readPage(pid);
+                    if (arena != null) {
+                        slot = arena.allocate();
+                        arena.write(slot, page);
+                    }
+                }
+            } catch (RuntimeException e) {
+                abandonLoad(partition, weight, arena, slot);
+                throw e;
+            } catch (DbException e) {
+                abandonLoad(partition, weight, arena, slot);
+                throw e;
+            }
+            BufferPoolStats.TableStats tableStats = stats.table(pid.getTableId());
+            if (prefetch)
+                stats.prefetches.increment();
+            else
+                tableStats.misses.increment();
+            frame = new Frame(pid, page, slot, arena, weight, partition, tableStats, raw);
+            frame.prefetched.set(prefetch);
+            Frame installed = installFrame(pid, frame);
+            if (installed != frame) {
+                if (slot >= 0)
+                    arena.free(slot);
+                if (installed.pin()) {
+                    try {
+                        if (!prefetch)
+                            touch(installed);
+                        return pageOf(installed);
+                    } finally {
+                        installed.unpin();
+                    }
+                }
+                return page;
+            }
+            if (slot >= 0 && page != null)
+                addView(frame);
+            return page;
+        }
+    }
+
+    /** Gives back what loadPage took for a page that could not be read. */
+    private void abandonLoad(Partition partition, int weight, FrameArena arena, int slot) {
+        if (slot >= 0)
+            arena.free(slot);
+        synchronized (this) {
+            partition.loading -= weight;
+        }
+    }
+
+    /**
+     * Makes room for one more frame of weight default-size pages in
+     * partition, evicting if needed.
+     */
+    private synchronized void reserveFrame(Partition partition, int weight) throws DbException {
+        if (weight > partition.numPages)
+            throw new DbException("a page of " + weight + " default-size pages does not fit in the "
+                    + partition.name + " buffer pool of " + partition.numPages);
+        while (partition.resident + partition.loading + weight > partition.numPages)
+            evictPage(partition);
+        partition.loading += weight;
+    }
+
+    /**
+     * Adds a freshly read frame to the page table, unless a frame for the
+     * same page is already resident, in which case that one wins.
+     */
+    private synchronized Frame installFrame(PageId pid, Frame frame) {
+        Partition partition = frame.partition;
+        partition.loading -= frame.weight;
+        Frame existing = frames.putIfAbsent(pid, frame);
+        if (existing != null)
+            return existing;
+        partition.resident += frame.weight;
+        partition.policyLock.lock();
+        try {
+            if (frame.prefetched.get())
+                partition.policy.pagePrefetched(pid);
+            else
+                partition.policy.pageAdmitted(pid);
+        } finally {
+            partition.policyLock.unlock();
+        }
+        return frame;
+    }
+
+    /**
+     * Reports a request for a pinned frame to the eviction policy.  The
+     * first request for a prefetched page is its admission as far as the
+     * policy is concerned; later ones are ordinary hits.
+     */
+    private void touch(Frame frame) {
+        frame.stats.hits.increment();
+        Partition partition = frame.partition;
+        if (frame.prefetched.get() && frame.prefetched.compareAndSet(true, false)) {
+            partition.policyLock.lock();
+            try {
+                partition.policy.pageAdmitted(frame.pid);
+            } finally {
+                partition.policyLock.unlock();
+            }
+            return;
+        }
+        if (!partition.recordAccess(frame.pid))
+            stats.droppedAccesses.increment();
     }
 
     /**
@@ -90,8 +980,7 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
@@ -110,8 +999,20 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4
+        if (commit && cleanTarget > 0) {
+            committed.add(tid);
+            // the cleaner stopped meanwhile, and will not prune it
+            if (cleanTarget == 0)
+                committed.remove(tid);
+        }
+        Set<Frame> mine = held.remove(tid);
+        if (mine != null) {
+            for (Frame frame : mine) {
+                synchronized (frame) {
+                    frame.holds--;
+                }
+            }
+        }
     }
 
     /**
@@ -131,8 +1032,9 @@ public class BufferPool {
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-        // some code goes here
-        // not necessary for lab1
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        for (Page page : file.insertTuple(tid, t))
+            page.markDirty(true, tid);
     }
 
     /**
@@ -150,19 +1052,21 @@ public class BufferPool {
      */
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-        // some code goes here
-        // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null)
+            throw new DbException("tuple is not stored in any table");
+        DbFile file = Database.getCatalog().getDatabaseFile(rid.getPageId().getTableId());
+        for (Page page : file.deleteTuple(tid, t))
+            page.markDirty(true, tid);
     }
 
     /**
-     * Flush all dirty pages to disk.
+     * Flush all dirty pages to disk, in one batch (see flushFrames).
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        // some code goes here
-        // not necessary for lab1
-
+        flushFrames(frames.values());
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -174,33 +1078,216 @@ public class BufferPool {
         are removed from the cache so they can be reused safely
     */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // not necessary for lab1
+        Frame frame = frames.get(pid);
+        if (frame == null)
+            return;
+        // pins are only held while a getPage looks the page up
+        frame.awaitClaim();
+        frames.remove(pid);
+        releaseFrame(frame);
+        Partition partition = frame.partition;
+        partition.resident -= frame.weight;
+        partition.policyLock.lock();
+        try {
+            partition.policy.pageRemoved(pid);
+        } finally {
+            partition.policyLock.unlock();
+        }
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
+     * @return true if the page was dirty and has been written
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
-        // some code goes here
-        // not necessary for lab1
+    private synchronized  boolean flushPage(PageId pid) throws IOException {
+        Frame frame = frames.get(pid);
+        if (frame == null)
+            return false;
+        Page page = frame.residentPage();
+        // off-heap pages that are not materialized are clean
+        if (page == null)
+            return false;
+        TransactionId dirtier = page.isDirty();
+        if (dirtier == null)
+            return false;
+        long start = System.nanoTime();
+        // write-ahead: the update record must reach the log before the page
+        Database.getLogFile().logWrite(dirtier, page.getBeforeImage(), page);
+        Database.getLogFile().force();
+        Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+        markClean(frame, page);
+        stats.pagesFlushed.increment();
+        stats.flushLatency.record(System.nanoTime() - start);
+        return true;
+    }
+
+    /** A dirty page picked up by flushFrames. */
+    private static class DirtyPage {
+        final Frame frame;
+        final Page page;
+        final TransactionId dirtier;
+
+        DirtyPage(Frame frame, Page page, TransactionId dirtier) {
+            this.frame = frame;
+            this.page = page;
+            this.dirtier = dirtier;
+        }
+    }
+
+    /** Orders dirty pages by table, then page number. */
+    private static final Comparator<DirtyPage> FILE_ORDER = new Comparator<DirtyPage>() {
+        public int compare(DirtyPage a, DirtyPage b) {
+            PageId x = a.frame.pid;
+            PageId y = b.frame.pid;
+            if (x.getTableId() != y.getTableId())
+                return x.getTableId() < y.getTableId() ? -1 : 1;
+            return x.pageNumber() < y.pageNumber() ? -1 : (x.pageNumber() == y.pageNumber() ? 0 : 1);
+        }
+    };
+
+    /**
+     * Flushes the dirty pages among frames as one batch: every update
+     * record is logged and the log forced once, then the pages are written
+     * file by file in page order, so that files implementing
+     * {@link BatchWritable} can coalesce adjacent pages, and each such file
+     * is forced once.
+     *
+     * @return the number of pages written
+     */
+    private synchronized int flushFrames(Collection<Frame> candidates) throws IOException {
+        ArrayList<DirtyPage> dirty = new ArrayList<DirtyPage>();
+        for (Frame frame : candidates) {
+            // off-heap pages that are not materialized are clean
+            Page page = frame.residentPage();
+            TransactionId dirtier = page == null ? null : page.isDirty();
+            if (dirtier != null)
+                dirty.add(new DirtyPage(frame, page, dirtier));
+        }
+        if (dirty.isEmpty())
+            return 0;
+        Collections.sort(dirty, FILE_ORDER);
+
+        long begin = System.nanoTime();
+        // write-ahead: the update records must reach the log before the pages
+        LogFile log = Database.getLogFile();
+        for (DirtyPage d : dirty)
+            log.logWrite(d.dirtier, d.page.getBeforeImage(), d.page);
+        log.force();
+
+        int start = 0;
+        while (start < dirty.size()) {
+            int tableId = dirty.get(start).frame.pid.getTableId();
+            int end = start + 1;
+            while (end < dirty.size() && dirty.get(end).frame.pid.getTableId() == tableId)
+                end++;
+            DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+            if (file instanceof BatchWritable) {
+                List<Page> pages = new ArrayList<Page>(end - start);
+                for (int i = start; i < end; i++)
+                    pages.add(dirty.get(i).page);
+                ((BatchWritable) file).writePages(pages);
+                ((BatchWritable) file).force();
+            } else {
+                for (int i = start; i < end; i++)
+                    file.writePage(dirty.get(i).page);
+            }
+            for (int i = start; i < end; i++)
+                markClean(dirty.get(i).frame, dirty.get(i).page);
+            stats.pagesFlushed.add(end - start);
+            start = end;
+        }
+        stats.flushLatency.record(System.nanoTime() - begin);
+        return dirty.size();
+    }
+
+    /** Marks a page that has just been written as clean. */
+    private void markClean(Frame frame, Page page) {
+        synchronized (frame) {
+            // refresh the arena before the page looks clean and can be dropped
+            if (frame.slot >= 0)
+                frame.arena.write(frame.slot, page);
+            page.markDirty(false, null);
+        }
+    }
+
+    /** Returns the arena frame of a frame that has left the page table. */
+    private void releaseFrame(Frame frame) {
+        if (frame.slot < 0)
+            return;
+        synchronized (frame) {
+            frame.page = null;
+            frame.detached = null;
+        }
+        frame.arena.free(frame.slot);
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4
+        ArrayList<Frame> dirtied = new ArrayList<Frame>();
+        for (Frame frame : frames.values()) {
+            Page page = frame.residentPage();
+            if (page != null && tid.equals(page.isDirty()))
+                dirtied.add(frame);
+        }
+        flushFrames(dirtied);
     }
 
     /**
-     * Discards a page from the buffer pool.
+     * Discards a page from the given pool of the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
      */
-    private synchronized  void evictPage() throws DbException {
-        // some code goes here
-        // not necessary for lab1
+    private synchronized  void evictPage(Partition partition) throws DbException {
+        PageId victim;
+        EvictionPolicy policy = partition.policy;
+        ReentrantLock policyLock = partition.policyLock;
+        policyLock.lock();
+        try {
+            partition.drainAccessBuffers();
+            // claiming the frame makes concurrent hits on it fall back to
+            // the miss path, which waits for us on the monitor
+            victim = policy.evict(new EvictionPolicy.Filter() {
+                public boolean canEvict(PageId pid) {
+                    Frame frame = frames.get(pid);
+                    return frame == null || frame.claim();
+                }
+            });
+        } finally {
+            policyLock.unlock();
+        }
+        if (victim == null)
+            throw new DbException("no page can be evicted from the " + partition.name
+                    + " buffer pool: all pages are pinned");
+        try {
+            if (flushPage(victim)) {
+                stats.evictionWrites.increment();
+                if (cleanTarget > 0) {
+                    // the cleaner is falling behind
+                    synchronized (cleanerSignal) {
+                        cleanerSignal.notifyAll();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // keep the page resident so its changes are not lost
+            Frame frame = frames.get(victim);
+            if (frame != null)
+                frame.unclaim();
+            policyLock.lock();
+            try {
+                policy.evictFailed(victim);
+            } finally {
+                policyLock.unlock();
+            }
+            throw new DbException("could not flush evicted page " + victim + ": " + e.getMessage());
+        }
+        Frame frame = frames.remove(victim);
+        if (frame != null) {
+            releaseFrame(frame);
+            partition.resident -= frame.weight;
+        }
+        stats.evictions.increment();
     }
 
 }
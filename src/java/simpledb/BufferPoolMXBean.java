@@ -0,0 +1,52 @@
+package simpledb;
+
+import java.util.Map;
+
+/**
+ * JMX view of the statistics of the database's current BufferPool, under
+ * the name {@link #OBJECT_NAME}.  Reading an attribute aggregates the
+ * pool's counters on the spot; nothing is maintained for JMX otherwise.
+ *
+ * @see BufferPoolStats
+ */
+public interface BufferPoolMXBean {
+    /** Name the bean is registered under with the platform MBean server. */
+    public static final String OBJECT_NAME = "simpledb:type=BufferPool";
+
+    public int getCapacity();
+
+    public int getResidentPages();
+
+    public int getDirtyPages();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public double getHitRatio();
+
+    /** @return hits per table, by table name */
+    public Map<String, Long> getTableHits();
+
+    /** @return misses per table, by table name */
+    public Map<String, Long> getTableMisses();
+
+    public long getPrefetches();
+
+    public long getEvictions();
+
+    public long getPagesFlushed();
+
+    public long getCleanerWrites();
+
+    public long getEvictionWrites();
+
+    /** @see BufferPoolStats.LatencyHistogram */
+    public long[] getFlushLatencyHistogram();
+
+    public long getPageWaits();
+
+    public long getPageWaitNanos();
+
+    public long getDroppedAccesses();
+}
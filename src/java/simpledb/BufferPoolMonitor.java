@@ -0,0 +1,133 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The {@link BufferPoolMXBean} registered with the platform MBean server.
+ * It always reports on the pool currently returned by
+ * {@link Database#getBufferPool}, so it only needs registering once.
+ */
+class BufferPoolMonitor implements BufferPoolMXBean {
+
+    private static boolean registered = false; // protected by BufferPoolMonitor.class
+
+    /**
+     * Registers the bean, unless that was done already.  JMX being
+     * unavailable is not an error; the statistics just cannot be read
+     * remotely.
+     */
+    static synchronized void register() {
+        if (registered)
+            return;
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new BufferPoolMonitor(), name);
+        } catch (JMException e) {
+            System.err.println("BufferPool statistics not available over JMX: " + e);
+        } catch (SecurityException e) {
+            System.err.println("BufferPool statistics not available over JMX: " + e);
+        }
+    }
+
+    private static BufferPool pool() {
+        return Database.getBufferPool();
+    }
+
+    private static BufferPoolStats stats() {
+        return pool().getStats();
+    }
+
+    /** @return counts by table name, as picked by hits */
+    private static Map<String, Long> byTable(boolean hits) {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<Integer, BufferPoolStats.TableStats> e : stats().getTableStats().entrySet()) {
+            String name;
+            try {
+                name = Database.getCatalog().getTableName(e.getKey());
+            } catch (NoSuchElementException ex) {
+                name = String.valueOf(e.getKey());
+            }
+            BufferPoolStats.TableStats t = e.getValue();
+            counts.put(name, hits ? t.getHits() : t.getMisses());
+        }
+        return counts;
+    }
+
+    public int getCapacity() {
+        return pool().capacity();
+    }
+
+    public int getResidentPages() {
+        return pool().residentPages();
+    }
+
+    public int getDirtyPages() {
+        return pool().dirtyPages();
+    }
+
+    public long getHits() {
+        return stats().getHits();
+    }
+
+    public long getMisses() {
+        return stats().getMisses();
+    }
+
+    public double getHitRatio() {
+        return stats().getHitRatio();
+    }
+
+    public Map<String, Long> getTableHits() {
+        return byTable(true);
+    }
+
+    public Map<String, Long> getTableMisses() {
+        return byTable(false);
+    }
+
+    public long getPrefetches() {
+        return stats().getPrefetches();
+    }
+
+    public long getEvictions() {
+        return stats().getEvictions();
+    }
+
+    public long getPagesFlushed() {
+        return stats().getPagesFlushed();
+    }
+
+    public long getCleanerWrites() {
+        return stats().getCleanerWrites();
+    }
+
+    public long getEvictionWrites() {
+        return stats().getEvictionWrites();
+    }
+
+    public long[] getFlushLatencyHistogram() {
+        return stats().getFlushLatency().getCounts();
+    }
+
+    public long getPageWaits() {
+        return stats().getPageWaits();
+    }
+
+    public long getPageWaitNanos() {
+        return stats().getPageWaitNanos();
+    }
+
+    public long getDroppedAccesses() {
+        return stats().getDroppedAccesses();
+    }
+}
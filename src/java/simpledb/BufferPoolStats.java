@@ -0,0 +1,189 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing what a BufferPool has been doing: hits and misses
+ * per table, evictions, page writes and how long they took, and how long
+ * callers of getPage waited for pages that were not resident.
+ * <p>
+ * Counters are striped LongAdders, so recording an event is a single
+ * uncontended add and nothing is aggregated until somebody reads it.  The
+ * statistics stay on all the time; see {@link BufferPoolMXBean} for reading
+ * them over JMX.
+ *
+ * @Threadsafe
+ * @see BufferPool#getStats
+ */
+public class BufferPoolStats {
+
+    /** Hit and miss counters of one table. */
+    public static class TableStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+
+        /** @return requests for pages of the table served from the pool */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /** @return requests for pages of the table that had to read them */
+        public long getMisses() {
+            return misses.sum();
+        }
+    }
+
+    /**
+     * A histogram of durations with power-of-two buckets: bucket 0 counts
+     * durations under a microsecond, and bucket i durations of at least
+     * 2^(i-1) and under 2^i microseconds.  The last bucket also counts
+     * everything longer.
+     */
+    public static class LatencyHistogram {
+        /** Number of buckets; the last one starts at about 18 minutes. */
+        public static final int BUCKETS = 32;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder totalNanos = new LongAdder();
+
+        LatencyHistogram() {
+            for (int i = 0; i < BUCKETS; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            buckets[Math.min(bucket, BUCKETS - 1)].increment();
+            totalNanos.add(nanos);
+        }
+
+        /** @return a snapshot of the bucket counts */
+        public long[] getCounts() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] = buckets[i].sum();
+            return counts;
+        }
+
+        /** @return the number of durations recorded */
+        public long getCount() {
+            long n = 0;
+            for (LongAdder bucket : buckets)
+                n += bucket.sum();
+            return n;
+        }
+
+        /** @return the sum of all durations recorded, in nanoseconds */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, TableStats> tables =
+        new ConcurrentHashMap<Integer, TableStats>();
+    final LongAdder prefetches = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder pagesFlushed = new LongAdder();
+    final LongAdder cleanerWrites = new LongAdder();
+    final LongAdder evictionWrites = new LongAdder();
+    final LongAdder pageWaits = new LongAdder();
+    final LongAdder pageWaitNanos = new LongAdder();
+    final LongAdder droppedAccesses = new LongAdder();
+    final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    /** @return the counters of tableId, creating them if needed */
+    TableStats table(int tableId) {
+        TableStats stats = tables.get(tableId);
+        if (stats == null) {
+            TableStats created = new TableStats();
+            stats = tables.putIfAbsent(tableId, created);
+            if (stats == null)
+                stats = created;
+        }
+        return stats;
+    }
+
+    /** @return a snapshot of the counters of every table seen, by table id */
+    public Map<Integer, TableStats> getTableStats() {
+        return new HashMap<Integer, TableStats>(tables);
+    }
+
+    /** @return page requests served from the pool, over all tables */
+    public long getHits() {
+        long n = 0;
+        for (TableStats t : tables.values())
+            n += t.getHits();
+        return n;
+    }
+
+    /** @return page requests that had to read the page, over all tables */
+    public long getMisses() {
+        long n = 0;
+        for (TableStats t : tables.values())
+            n += t.getMisses();
+        return n;
+    }
+
+    /** @return the fraction of page requests that hit, or 0 if none */
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** @return pages read ahead of any request for them */
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    /** @return pages evicted to make room for others */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** @return dirty pages written to their files, for any reason */
+    public long getPagesFlushed() {
+        return pagesFlushed.sum();
+    }
+
+    /** @return pages written by the background cleaner */
+    public long getCleanerWrites() {
+        return cleanerWrites.sum();
+    }
+
+    /** @return dirty pages written in order to evict them */
+    public long getEvictionWrites() {
+        return evictionWrites.sum();
+    }
+
+    /**
+     * @return latencies of flushes, from logging the first page to writing
+     *   the last: one per page flushed on its own (e.g. by eviction) and one
+     *   per batch flushed together (e.g. by flushAllPages).
+     */
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    /** @return getPage calls that did not find their page resident */
+    public long getPageWaits() {
+        return pageWaits.sum();
+    }
+
+    /** @return total time getPage callers spent on non-resident pages */
+    public long getPageWaitNanos() {
+        return pageWaitNanos.sum();
+    }
+
+    /**
+     * @return hits the eviction policy never saw, because they arrived
+     *   while its access buffers were full
+     */
+    public long getDroppedAccesses() {
+        return droppedAccesses.sum();
+    }
+}
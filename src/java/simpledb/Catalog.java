@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -18,12 +19,34 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class Catalog {
 
+    /**
+     * A table entry: its backing file, name, primary key field and the
+     * buffer pool it is cached in.
+     */
+    private static class Table {
+        final DbFile file;
+        final String name;
+        final String pkeyField;
+        final String poolName;
+
+        Table(DbFile file, String name, String pkeyField, String poolName) {
+            this.file = file;
+            this.name = name;
+            this.pkeyField = pkeyField;
+            this.poolName = poolName;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, Table> tablesById;
+    private final ConcurrentHashMap<String, Integer> idsByName;
+
     /**
      * Constructor.
      * Creates a new, empty catalog.
      */
     public Catalog() {
-        // some code goes here
+        tablesById = new ConcurrentHashMap<Integer, Table>();
+        idsByName = new ConcurrentHashMap<String, Integer>();
     }
 
     /**
@@ -36,7 +59,29 @@ public class Catalog {
      * @param pkeyField the name of the primary key field
      */
     public void addTable(DbFile file, String name, String pkeyField) {
-        // some code goes here
+        addTable(file, name, pkeyField, BufferPool.DEFAULT_POOL);
+    }
+
+    /**
+     * Add a new table to the catalog, cached in the named buffer pool.
+     * @param file the contents of the table to add;  file.getId() is the identfier of
+     *    this file/tupledesc param for the calls getTupleDesc and getFile
+     * @param name the name of the table -- may be an empty string.  May not be null.  If a name
+     * conflict exists, use the last table to be added as the table for a given name.
+     * @param pkeyField the name of the primary key field
+     * @param poolName the buffer pool the table's pages are cached in
+     *    (see {@link BufferPool#addPool})
+     */
+    public synchronized void addTable(DbFile file, String name, String pkeyField, String poolName) {
+        if (name == null)
+            throw new IllegalArgumentException("table name may not be null");
+        int id = file.getId();
+        Table old = tablesById.put(id, new Table(file, name, pkeyField, poolName));
+        if (old != null && !old.name.equals(name))
+            idsByName.remove(old.name, id);
+        idsByName.put(name, id);
+        if (old != null && old.file != file)
+            close(old.file);
     }
 
     public void addTable(DbFile file, String name) {
@@ -59,8 +104,10 @@ public class Catalog {
      * @throws NoSuchElementException if the table doesn't exist
      */
     public int getTableId(String name) throws NoSuchElementException {
-        // some code goes here
-        return 0;
+        Integer id = name == null ? null : idsByName.get(name);
+        if (id == null)
+            throw new NoSuchElementException("no table named " + name);
+        return id;
     }
 
     /**
@@ -70,8 +117,7 @@ public class Catalog {
      * @throws NoSuchElementException if the table doesn't exist
      */
     public TupleDesc getTupleDesc(int tableid) throws NoSuchElementException {
-        // some code goes here
-        return null;
+        return getTable(tableid).file.getTupleDesc();
     }
 
     /**
@@ -81,32 +127,73 @@ public class Catalog {
      *     function passed to addTable
      */
     public DbFile getDatabaseFile(int tableid) throws NoSuchElementException {
-        // some code goes here
-        return null;
+        return getTable(tableid).file;
     }
 
     public String getPrimaryKey(int tableid) {
-        // some code goes here
-        return null;
+        return getTable(tableid).pkeyField;
+    }
+
+    /**
+     * Returns the name of the buffer pool the specified table is cached in.
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public String getPoolName(int tableid) throws NoSuchElementException {
+        return getTable(tableid).poolName;
     }
 
     public Iterator<Integer> tableIdIterator() {
-        // some code goes here
-        return null;
+        return tablesById.keySet().iterator();
     }
 
     public String getTableName(int id) {
-        // some code goes here
-        return null;
+        return getTable(id).name;
     }
     
-    /** Delete all tables from the catalog */
-    public void clear() {
-        // some code goes here
+    /** Delete all tables from the catalog, closing their files */
+    public synchronized void clear() {
+        for (Table t : tablesById.values())
+            close(t.file);
+        tablesById.clear();
+        idsByName.clear();
+    }
+
+    /** Closes file if it keeps files open; it is no longer in the catalog. */
+    private static void close(DbFile file) {
+        if (!(file instanceof Closeable))
+            return;
+        try {
+            ((Closeable) file).close();
+        } catch (IOException e) {
+            // nothing more to be done
+        }
+    }
+
+    private Table getTable(int tableid) throws NoSuchElementException {
+        Table t = tablesById.get(tableid);
+        if (t == null)
+            throw new NoSuchElementException("no table with id " + tableid);
+        return t;
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line describes one table as {@code name (field type [pk], ...)},
+     * optionally followed by table options: {@code mapped} accesses the
+     * table's file through memory mappings (see {@link HeapFile}),
+     * {@code pool=name} caches the table in the named buffer pool,
+     * {@code pagesize=bytes} gives the table's file pages of that size
+     * instead of {@link BufferPool#getPageSize()}, {@code layout=name}
+     * stores its pages in that {@link HeapFile.Layout}, case insensitive,
+     * {@code compressed} stores them compressed (see
+     * {@link CompressedFile}), and {@code direct} reads and writes them
+     * with direct I/O where possible (see {@link DirectFile}).  A table can
+     * be only one of mapped, compressed and direct.
+     * <p>
+     * A line {@code pool name pages [policy]} instead adds a named pool of
+     * that many pages to the database's BufferPool (see
+     * {@link BufferPool#addPool}); policy is one of
+     * {@link EvictionPolicy.Kind}, case insensitive.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -116,7 +203,11 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                if (line.trim().startsWith("pool ") && line.indexOf("(") < 0) {
+                    addPool(line.trim().split("\\s+"));
+                    continue;
+                }
+                //assume line is of the format name (field type, field type, ...) [option ...]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -147,8 +238,35 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
-                addTable(tabHf,name,primaryKey);
+                HeapFile.Storage storage = HeapFile.Storage.PLAIN;
+                String poolName = BufferPool.DEFAULT_POOL;
+                int pageSize = BufferPool.getPageSize();
+                HeapFile.Layout layout = HeapFile.Layout.ROW;
+                for (String option : line.substring(line.indexOf(")") + 1).trim().split("\\s+")) {
+                    HeapFile.Storage mode = option.equals("mapped") ? HeapFile.Storage.MAPPED
+                        : option.equals("compressed") ? HeapFile.Storage.COMPRESSED
+                        : option.equals("direct") ? HeapFile.Storage.DIRECT
+                        : null;
+                    if (mode != null) {
+                        if (storage != HeapFile.Storage.PLAIN && storage != mode) {
+                            System.out.println("Table " + name + " can be only one of mapped, compressed and direct");
+                            System.exit(0);
+                        }
+                        storage = mode;
+                    }
+                    else if (option.startsWith("pool="))
+                        poolName = option.substring("pool=".length());
+                    else if (option.startsWith("pagesize="))
+                        pageSize = Integer.parseInt(option.substring("pagesize=".length()));
+                    else if (option.startsWith("layout="))
+                        layout = HeapFile.Layout.valueOf(option.substring("layout=".length()).toUpperCase());
+                    else if (!option.isEmpty()) {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
+                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t, pageSize, storage, layout);
+                addTable(tabHf,name,primaryKey,poolName);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
@@ -159,5 +277,20 @@ public class Catalog {
             System.exit(0);
         }
     }
-}
 
+    /** Adds the pool described by the words of a pool line of a schema file. */
+    private static void addPool(String[] words) {
+        try {
+            EvictionPolicy.Kind policy = BufferPool.DEFAULT_EVICTION_POLICY;
+            if (words.length == 4)
+                policy = EvictionPolicy.Kind.valueOf(words[3].toUpperCase());
+            else if (words.length != 3)
+                throw new IllegalArgumentException("expected pool name pages [policy]");
+            Database.getBufferPool().addPool(words[1], Integer.parseInt(words[2]), policy);
+            System.out.println("Added pool : " + words[1] + " of " + words[2] + " pages");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid pool entry : " + Arrays.toString(words) + ": " + e.getMessage());
+            System.exit(0);
+        }
+    }
+}
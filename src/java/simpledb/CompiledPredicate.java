@@ -0,0 +1,463 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * CompiledPredicate evaluates a Predicate, or a conjunction or disjunction
+ * of them, with the operator and operand type decided once, when it is
+ * compiled, rather than for every tuple as {@link Predicate#filter} does.
+ * A comparison of an int field with a constant becomes a range check on the
+ * raw int (one comparison, whatever the operator), and ranges on the same
+ * field in a conjunction are merged into one.
+ * <p>
+ * A compiled predicate can be evaluated against a Tuple, against the bytes
+ * of a page, without decoding the tuple, and against a {@link TupleBatch},
+ * a column at a time.
+ *
+ * @see Predicate#compile
+ */
+public abstract class CompiledPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Matches every tuple. */
+    public static final CompiledPredicate TRUE = new Constant(true);
+    /** Matches no tuple. */
+    public static final CompiledPredicate FALSE = new Constant(false);
+
+    /** @return true if t matches */
+    public abstract boolean matches(Tuple t);
+
+    /**
+     * Evaluates the predicate against a tuple of a page without decoding it.
+     * Field j of the tuple in slot is serialized at
+     * data[base[j] + slot * stride[j]] (see {@link HeapPage#matches}).
+     *
+     * @return true if the tuple in slot matches
+     */
+    public abstract boolean matches(byte[] data, int slot, int[] base, int[] stride);
+
+    /**
+     * Narrows the selection of batch to the selected rows that match.
+     *
+     * @return the number of rows left selected
+     */
+    public int select(TupleBatch batch) {
+        return select(batch, 0);
+    }
+
+    /**
+     * Narrows the selection of batch to the rows that match, leaving the
+     * first from entries of the selection vector as they are.
+     *
+     * @return the number of rows left selected
+     */
+    public abstract int select(TupleBatch batch, int from);
+
+    /**
+     * Decides whether some tuple whose int fields lie within the given
+     * bounds could match, e.g. for a page of a {@link ZoneMap}.  min[j] and
+     * max[j] bound field j; fields without bounds are given
+     * Integer.MIN_VALUE and Integer.MAX_VALUE.
+     *
+     * @return false only if no such tuple can match
+     */
+    public boolean mayMatch(int[] min, int[] max) {
+        return true;
+    }
+
+    /** @return an evaluator of p */
+    public static CompiledPredicate compile(Predicate p) {
+        int field = p.getField();
+        Field operand = p.getOperand();
+        if (!(operand instanceof IntField))
+            return new StringCompare(field, p.getOp(), ((StringField) operand).getValue());
+        int c = ((IntField) operand).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+        case LIKE:
+            return new IntRange(field, c, c);
+        case NOT_EQUALS:
+            return new IntNotEquals(field, c);
+        case GREATER_THAN:
+            return c == Integer.MAX_VALUE ? FALSE : new IntRange(field, c + 1, Integer.MAX_VALUE);
+        case GREATER_THAN_OR_EQ:
+            return new IntRange(field, c, Integer.MAX_VALUE);
+        case LESS_THAN:
+            return c == Integer.MIN_VALUE ? FALSE : new IntRange(field, Integer.MIN_VALUE, c - 1);
+        case LESS_THAN_OR_EQ:
+            return new IntRange(field, Integer.MIN_VALUE, c);
+        }
+        throw new IllegalArgumentException("unknown operator " + p.getOp());
+    }
+
+    /** @return an evaluator of the conjunction of ps; TRUE if there are none */
+    public static CompiledPredicate and(Predicate... ps) {
+        List<CompiledPredicate> compiled = new ArrayList<CompiledPredicate>();
+        for (Predicate p : ps)
+            compiled.add(compile(p));
+        return and(compiled);
+    }
+
+    /** @return an evaluator of the conjunction of ps; TRUE if there are none */
+    public static CompiledPredicate and(List<CompiledPredicate> ps) {
+        List<CompiledPredicate> terms = new ArrayList<CompiledPredicate>();
+        Map<Integer, IntRange> ranges = new LinkedHashMap<Integer, IntRange>();
+        Deque<CompiledPredicate> todo = new ArrayDeque<CompiledPredicate>(ps);
+        while (!todo.isEmpty()) {
+            CompiledPredicate p = todo.removeFirst();
+            if (p == FALSE)
+                return FALSE;
+            if (p == TRUE)
+                continue;
+            if (p instanceof And) {
+                todo.addAll(Arrays.asList(((And) p).terms));
+            } else if (p instanceof IntRange) {
+                IntRange r = (IntRange) p;
+                IntRange old = ranges.get(r.field);
+                if (old != null) {
+                    int lo = Math.max(old.lo, r.lo);
+                    int hi = Math.min(old.hi, r.hi);
+                    if (lo > hi)
+                        return FALSE;
+                    r = new IntRange(r.field, lo, hi);
+                }
+                ranges.put(r.field, r);
+            } else {
+                terms.add(p);
+            }
+        }
+        // the cheap range checks go first
+        terms.addAll(0, ranges.values());
+        if (terms.isEmpty())
+            return TRUE;
+        if (terms.size() == 1)
+            return terms.get(0);
+        return new And(terms.toArray(new CompiledPredicate[terms.size()]));
+    }
+
+    /** @return an evaluator of the disjunction of ps; FALSE if there are none */
+    public static CompiledPredicate or(List<CompiledPredicate> ps) {
+        List<CompiledPredicate> terms = new ArrayList<CompiledPredicate>();
+        Deque<CompiledPredicate> todo = new ArrayDeque<CompiledPredicate>(ps);
+        while (!todo.isEmpty()) {
+            CompiledPredicate p = todo.removeFirst();
+            if (p == TRUE)
+                return TRUE;
+            if (p == FALSE)
+                continue;
+            if (p instanceof Or)
+                todo.addAll(Arrays.asList(((Or) p).terms));
+            else
+                terms.add(p);
+        }
+        if (terms.isEmpty())
+            return FALSE;
+        if (terms.size() == 1)
+            return terms.get(0);
+        return new Or(terms.toArray(new CompiledPredicate[terms.size()]));
+    }
+
+    /** Always or never matches. */
+    private static final class Constant extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final boolean value;
+
+        Constant(boolean value) {
+            this.value = value;
+        }
+
+        public boolean matches(Tuple t) {
+            return value;
+        }
+
+        public boolean matches(byte[] data, int slot, int[] base, int[] stride) {
+            return value;
+        }
+
+        public int select(TupleBatch batch, int from) {
+            if (!value)
+                batch.setNumSelected(Math.min(from, batch.numSelected()));
+            return batch.numSelected();
+        }
+
+        public boolean mayMatch(int[] min, int[] max) {
+            return value;
+        }
+
+        /** Keeps TRUE and FALSE unique, so they can be compared with ==. */
+        private Object readResolve() {
+            return value ? TRUE : FALSE;
+        }
+
+        public String toString() {
+            return Boolean.toString(value);
+        }
+    }
+
+    /** lo <= int field <= hi. */
+    static final class IntRange extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        final int field;
+        final int lo;
+        final int hi;
+        /** v is in range if v - lo <= hi - lo, unsigned; biased to compare signed. */
+        private final int limit;
+
+        IntRange(int field, int lo, int hi) {
+            this.field = field;
+            this.lo = lo;
+            this.hi = hi;
+            this.limit = hi - lo + Integer.MIN_VALUE;
+        }
+
+        private boolean test(int v) {
+            return v - lo + Integer.MIN_VALUE <= limit;
+        }
+
+        public boolean matches(Tuple t) {
+            return test(((IntField) t.getField(field)).getValue());
+        }
+
+        public boolean matches(byte[] data, int slot, int[] base, int[] stride) {
+            return test(Type.readInt(data, base[field] + slot * stride[field]));
+        }
+
+        public int select(TupleBatch batch, int from) {
+            int[] sel = batch.getSelection();
+            int[] values = batch.getInts(field);
+            int n = from;
+            for (int k = from, end = batch.numSelected(); k < end; k++) {
+                int row = sel[k];
+                if (test(values[row]))
+                    sel[n++] = row;
+            }
+            batch.setNumSelected(n);
+            return n;
+        }
+
+        public boolean mayMatch(int[] min, int[] max) {
+            return min[field] <= hi && max[field] >= lo;
+        }
+
+        public String toString() {
+            return lo + " <= f" + field + " <= " + hi;
+        }
+    }
+
+    /** int field != c. */
+    static final class IntNotEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        final int field;
+        final int c;
+
+        IntNotEquals(int field, int c) {
+            this.field = field;
+            this.c = c;
+        }
+
+        public boolean matches(Tuple t) {
+            return ((IntField) t.getField(field)).getValue() != c;
+        }
+
+        public boolean matches(byte[] data, int slot, int[] base, int[] stride) {
+            return Type.readInt(data, base[field] + slot * stride[field]) != c;
+        }
+
+        public int select(TupleBatch batch, int from) {
+            int[] sel = batch.getSelection();
+            int[] values = batch.getInts(field);
+            int n = from;
+            for (int k = from, end = batch.numSelected(); k < end; k++) {
+                int row = sel[k];
+                if (values[row] != c)
+                    sel[n++] = row;
+            }
+            batch.setNumSelected(n);
+            return n;
+        }
+
+        public boolean mayMatch(int[] min, int[] max) {
+            return min[field] != c || max[field] != c;
+        }
+
+        public String toString() {
+            return "f" + field + " <> " + c;
+        }
+    }
+
+    /** A comparison of a string field with a constant. */
+    static final class StringCompare extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        final int field;
+        final Predicate.Op op;
+        final String c;
+
+        StringCompare(int field, Predicate.Op op, String c) {
+            this.field = field;
+            this.op = op;
+            this.c = c;
+        }
+
+        private boolean test(String v) {
+            switch (op) {
+            case EQUALS:
+                return v.equals(c);
+            case NOT_EQUALS:
+                return !v.equals(c);
+            case LIKE:
+                return v.indexOf(c) >= 0;
+            case GREATER_THAN:
+                return v.compareTo(c) > 0;
+            case GREATER_THAN_OR_EQ:
+                return v.compareTo(c) >= 0;
+            case LESS_THAN:
+                return v.compareTo(c) < 0;
+            case LESS_THAN_OR_EQ:
+                return v.compareTo(c) <= 0;
+            }
+            return false;
+        }
+
+        public boolean matches(Tuple t) {
+            return test(((StringField) t.getField(field)).getValue());
+        }
+
+        public boolean matches(byte[] data, int slot, int[] base, int[] stride) {
+            return test(Type.readString(data, base[field] + slot * stride[field]));
+        }
+
+        public int select(TupleBatch batch, int from) {
+            int[] sel = batch.getSelection();
+            String[] values = batch.getStrings(field);
+            int n = from;
+            for (int k = from, end = batch.numSelected(); k < end; k++) {
+                int row = sel[k];
+                if (test(values[row]))
+                    sel[n++] = row;
+            }
+            batch.setNumSelected(n);
+            return n;
+        }
+
+        public String toString() {
+            return "f" + field + " " + op + " '" + c + "'";
+        }
+    }
+
+    /** Every term matches. */
+    static final class And extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        final CompiledPredicate[] terms;
+
+        And(CompiledPredicate[] terms) {
+            this.terms = terms;
+        }
+
+        public boolean matches(Tuple t) {
+            for (CompiledPredicate p : terms)
+                if (!p.matches(t))
+                    return false;
+            return true;
+        }
+
+        public boolean matches(byte[] data, int slot, int[] base, int[] stride) {
+            for (CompiledPredicate p : terms)
+                if (!p.matches(data, slot, base, stride))
+                    return false;
+            return true;
+        }
+
+        public int select(TupleBatch batch, int from) {
+            int n = batch.numSelected();
+            for (int i = 0; i < terms.length && n > from; i++)
+                n = terms[i].select(batch, from);
+            return n;
+        }
+
+        public boolean mayMatch(int[] min, int[] max) {
+            for (CompiledPredicate p : terms)
+                if (!p.mayMatch(min, max))
+                    return false;
+            return true;
+        }
+
+        public String toString() {
+            return join(" AND ", terms);
+        }
+    }
+
+    /** Some term matches. */
+    static final class Or extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        final CompiledPredicate[] terms;
+
+        Or(CompiledPredicate[] terms) {
+            this.terms = terms;
+        }
+
+        public boolean matches(Tuple t) {
+            for (CompiledPredicate p : terms)
+                if (p.matches(t))
+                    return true;
+            return false;
+        }
+
+        public boolean matches(byte[] data, int slot, int[] base, int[] stride) {
+            for (CompiledPredicate p : terms)
+                if (p.matches(data, slot, base, stride))
+                    return true;
+            return false;
+        }
+
+        /**
+         * Runs each term on the rows no earlier term matched, then selects
+         * the rows some term matched, in their original order.
+         */
+        public int select(TupleBatch batch, int from) {
+            int[] sel = batch.getSelection();
+            int[] candidates = Arrays.copyOfRange(sel, from, batch.numSelected());
+            boolean[] matched = new boolean[batch.size()];
+            int left = candidates.length;
+            for (int i = 0; i < terms.length && left > 0; i++) {
+                int n = from;
+                for (int row : candidates)
+                    if (!matched[row])
+                        sel[n++] = row;
+                batch.setNumSelected(n);
+                int hits = terms[i].select(batch, from) - from;
+                for (int k = from; k < from + hits; k++)
+                    matched[sel[k]] = true;
+                left -= hits;
+            }
+            int n = from;
+            for (int row : candidates)
+                if (matched[row])
+                    sel[n++] = row;
+            batch.setNumSelected(n);
+            return n;
+        }
+
+        public boolean mayMatch(int[] min, int[] max) {
+            for (CompiledPredicate p : terms)
+                if (p.mayMatch(min, max))
+                    return true;
+            return false;
+        }
+
+        public String toString() {
+            return "(" + join(" OR ", terms) + ")";
+        }
+    }
+
+    private static String join(String sep, CompiledPredicate[] terms) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < terms.length; i++) {
+            if (i > 0)
+                sb.append(sep);
+            sb.append(terms[i]);
+        }
+        return sb.toString();
+    }
+}
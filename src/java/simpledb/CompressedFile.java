@@ -0,0 +1,476 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * CompressedFile stores the fixed-size pages of a HeapFile compressed, each
+ * page in as many bytes as it compresses to.
+ * <p>
+ * Each page is stored as a format byte, the length of the encoded page as
+ * an int, and the encoded page compressed with {@link LZCodec}.  Pages of
+ * row layout tables are encoded first, so that they compress well even
+ * when they are full: the header is kept, then each distinct string of the
+ * page is stored once (a dictionary), and then the fields of the used
+ * slots, column by column, with each string replaced by its number in the
+ * dictionary and the bytes of each column transposed, all first bytes,
+ * then all second bytes and so on, so that the high bytes of small numbers
+ * become runs of zeroes.  Empty slots are not stored and read back as
+ * zeroes.  Other pages are compressed as they are.
+ * <p>
+ * A page-offset index in a side file (the file name with ".idx" appended)
+ * gives the offset and length of each page, so any page can be read with a
+ * single read.  Pages are never overwritten in place: a page written is
+ * stored in free space, or at the end of the file, and its index entry is
+ * published only once it is on disk (see {@link #publish}), so that after a
+ * crash the index points at either the old or the new page, both whole.
+ * The space a page leaves is reused once the index no longer pointing at
+ * it is on disk, i.e. after the next {@link #force}.  Free space is not
+ * recorded: it is whatever the index does not point at.
+ *
+ * @Threadsafe
+ * @see HeapFile
+ */
+public class CompressedFile {
+    /** Bytes per index entry: offset, length and space of a page. */
+    static final int ENTRY_SIZE = 16;
+    /** Format of pages compressed as they are. */
+    static final byte PLAIN = 0;
+    /** Format of encoded row layout pages. */
+    static final byte ROWS = 1;
+
+    private final File f;
+    private final File indexFile;
+    private final int pageSize;
+    private final TupleDesc td;
+    /** Whether pages are in the row layout, and so are encoded. */
+    private final boolean rows;
+
+    // the index; protected by this, null until loaded
+    private long[] offsets;
+    private int[] lengths;
+    private int[] spaces;
+    private int numPages;       // protected by this
+    private long end;           // end of the stored pages; protected by this
+    /** Free extents, their lengths by offset; protected by this. */
+    private final TreeMap<Long, Integer> free = new TreeMap<Long, Integer>();
+    /** Extents left since the last force, as offset and length; protected by this. */
+    private final List<long[]> left = new ArrayList<long[]>();
+    // the index entries not yet published; protected by this
+    private int unpublishedFrom = Integer.MAX_VALUE;
+    private int unpublishedTo = -1;
+
+    /**
+     * @param f the file holding the compressed pages
+     * @param pageSize the size of a page once decompressed
+     * @param td the schema of the tuples on the pages
+     * @param layout the layout of the pages
+     */
+    public CompressedFile(File f, int pageSize, TupleDesc td, HeapFile.Layout layout) {
+        this.f = f;
+        this.indexFile = new File(f.getPath() + ".idx");
+        this.pageSize = pageSize;
+        this.td = td;
+        this.rows = layout == HeapFile.Layout.ROW;
+    }
+
+    /** @return the side file holding the page-offset index */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /** @return the number of pages stored */
+    public synchronized int numPages() throws IOException {
+        load();
+        return numPages;
+    }
+
+    /** @return the number of bytes page pageNo takes on disk */
+    public synchronized int storedSize(int pageNo) throws IOException {
+        load();
+        return lengths[pageNo];
+    }
+
+    /**
+     * @return the bytes of the file no page takes, free now or once the
+     *         file is next forced
+     */
+    public synchronized long freeBytes() throws IOException {
+        load();
+        long n = 0;
+        for (int length : free.values())
+            n += length;
+        for (long[] extent : left)
+            n += extent[1];
+        return n;
+    }
+
+    /**
+     * @return page pageNo, decompressed
+     * @throws IOException if the page is past the end of the file or is
+     *         corrupt
+     */
+    public byte[] read(int pageNo) throws IOException {
+        long offset;
+        int length;
+        synchronized (this) {
+            load();
+            if (pageNo < 0 || pageNo >= numPages)
+                throw new IOException("page " + pageNo + " is past the end of " + f);
+            offset = offsets[pageNo];
+            length = lengths[pageNo];
+        }
+        byte[] stored = new byte[length];
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            raf.seek(offset);
+            raf.readFully(stored);
+        } finally {
+            raf.close();
+        }
+        return decode(stored);
+    }
+
+    /** Writes page as page pageNo; see {@link #write(int, byte[])}. */
+    public byte[] write(int pageNo, Page page) throws IOException {
+        return write(pageNo, page.getPageData());
+    }
+
+    /**
+     * Compresses data and writes it as page pageNo, adding empty pages
+     * before it if it is past the end of the file.  The page is read back
+     * at once, but only survives a crash once published.
+     * @return the page as read will return it, which for row layout pages
+     *         has zeroes in empty slots whatever data had there
+     * @throws IllegalArgumentException if data is not exactly one page
+     */
+    public byte[] write(int pageNo, byte[] data) throws IOException {
+        if (data.length != pageSize)
+            throw new IllegalArgumentException("page of " + data.length
+                    + " bytes written to a file of " + pageSize + " byte pages");
+        byte[] stored = encode(data);
+        writeStored(pageNo, stored);
+        return readBack(data, stored);
+    }
+
+    /**
+     * @param data a page
+     * @param stored data, encoded
+     * @return the page as read will return it once stored is written
+     */
+    byte[] readBack(byte[] data, byte[] stored) throws IOException {
+        return stored[0] == PLAIN ? data : decode(stored);
+    }
+
+    /**
+     * Writes a page already encoded as page pageNo, adding empty pages
+     * before it if it is past the end of the file; see
+     * {@link #write(int, byte[])}.
+     */
+    synchronized void writeStored(int pageNo, byte[] stored) throws IOException {
+        load();
+        while (numPages < pageNo)
+            store(numPages, encode(new byte[pageSize]));
+        store(pageNo, stored);
+    }
+
+    /** Writes stored as page pageNo, into space no index entry on disk points at. */
+    private void store(int pageNo, byte[] stored) throws IOException {
+        if (pageNo == numPages) {
+            if (numPages == offsets.length) {
+                int n = Math.max(16, numPages * 2);
+                offsets = Arrays.copyOf(offsets, n);
+                lengths = Arrays.copyOf(lengths, n);
+                spaces = Arrays.copyOf(spaces, n);
+            }
+            numPages++;
+        } else {
+            left.add(new long[] { offsets[pageNo], spaces[pageNo] });
+        }
+        long offset = allocate(stored.length);
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.seek(offset);
+            raf.write(stored);
+        } finally {
+            raf.close();
+        }
+        offsets[pageNo] = offset;
+        lengths[pageNo] = stored.length;
+        spaces[pageNo] = stored.length;
+        unpublishedFrom = Math.min(unpublishedFrom, pageNo);
+        unpublishedTo = Math.max(unpublishedTo, pageNo);
+    }
+
+    /** @return the offset of length free bytes, the first that fit or at the end */
+    private long allocate(int length) {
+        for (Map.Entry<Long, Integer> extent : free.entrySet()) {
+            long offset = extent.getKey();
+            int space = extent.getValue();
+            if (space >= length) {
+                free.remove(offset);
+                if (space > length)
+                    free.put(offset + length, space - length);
+                return offset;
+            }
+        }
+        long offset = end;
+        end += length;
+        return offset;
+    }
+
+    /** Adds an extent to the free ones, merged with those next to it. */
+    private void release(long offset, long length) {
+        Map.Entry<Long, Integer> before = free.lowerEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            free.remove(before.getKey());
+            offset = before.getKey();
+            length += before.getValue();
+        }
+        Integer after = free.remove(offset + length);
+        if (after != null)
+            length += after;
+        free.put(offset, (int) length);
+    }
+
+    /**
+     * Forces the pages written since the last publish to disk, and then
+     * writes their index entries, so that an index entry never points at a
+     * page that is not on disk.
+     */
+    public synchronized void publish() throws IOException {
+        if (unpublishedTo < unpublishedFrom)
+            return;
+        forceFile(f);
+        ByteBuffer entries = ByteBuffer.allocate((unpublishedTo - unpublishedFrom + 1) * ENTRY_SIZE);
+        for (int i = unpublishedFrom; i <= unpublishedTo; i++)
+            entries.putLong(offsets[i]).putInt(lengths[i]).putInt(spaces[i]);
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+        try {
+            raf.seek((long) unpublishedFrom * ENTRY_SIZE);
+            raf.write(entries.array());
+        } finally {
+            raf.close();
+        }
+        unpublishedFrom = Integer.MAX_VALUE;
+        unpublishedTo = -1;
+    }
+
+    /**
+     * Publishes the pages written, forces the index to disk, and frees the
+     * space the pages written since the last force left.
+     */
+    public synchronized void force() throws IOException {
+        publish();
+        forceFile(f);
+        forceFile(indexFile);
+        for (long[] extent : left)
+            release(extent[0], extent[1]);
+        left.clear();
+    }
+
+    private static void forceFile(File file) throws IOException {
+        if (!file.exists())
+            return;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.getChannel().force(true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Reads the index, if there is one, on first use. */
+    private void load() throws IOException {
+        if (offsets != null)
+            return;
+        int n = indexFile.exists() ? (int) (indexFile.length() / ENTRY_SIZE) : 0;
+        long[] o = new long[Math.max(16, n)];
+        int[] l = new int[o.length];
+        int[] s = new int[o.length];
+        if (n > 0) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(indexFile)));
+            try {
+                for (int i = 0; i < n; i++) {
+                    o[i] = in.readLong();
+                    l[i] = in.readInt();
+                    s[i] = in.readInt();
+                    end = Math.max(end, o[i] + s[i]);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        offsets = o;
+        lengths = l;
+        spaces = s;
+        numPages = n;
+        // the space between the pages is free
+        Integer[] byOffset = new Integer[n];
+        for (int i = 0; i < n; i++)
+            byOffset[i] = i;
+        Arrays.sort(byOffset, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(offsets[a], offsets[b]);
+            }
+        });
+        long at = 0;
+        for (int i : byOffset) {
+            if (offsets[i] > at)
+                release(at, offsets[i] - at);
+            at = Math.max(at, offsets[i] + spaces[i]);
+        }
+    }
+
+    /** @return page data in its stored form */
+    byte[] encode(byte[] data) throws IOException {
+        byte format = PLAIN;
+        byte[] encoded = data;
+        if (rows) {
+            byte[] e = rowEncode(data);
+            if (e != null) {
+                format = ROWS;
+                encoded = e;
+            }
+        }
+        byte[] packed = LZCodec.compress(encoded, 0, encoded.length);
+        ByteBuffer stored = ByteBuffer.allocate(5 + packed.length);
+        stored.put(format).putInt(encoded.length).put(packed);
+        return stored.array();
+    }
+
+    /** @return the page data stored as stored */
+    byte[] decode(byte[] stored) throws IOException {
+        if (stored.length < 5)
+            throw new IOException("compressed page of " + f + " is truncated");
+        byte format = stored[0];
+        int length = Type.readInt(stored, 1);
+        if (length < 0 || length > 2 * pageSize)
+            throw new IOException("compressed page of " + f + " is corrupt");
+        byte[] encoded = new byte[length];
+        LZCodec.decompress(stored, 5, stored.length - 5, encoded);
+        if (format == PLAIN) {
+            if (encoded.length != pageSize)
+                throw new IOException("compressed page of " + f + " is " + encoded.length + " bytes");
+            return encoded;
+        }
+        if (format != ROWS)
+            throw new IOException("unknown page format " + format + " in " + f);
+        try {
+            return rowDecode(encoded);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("compressed page of " + f + " is corrupt");
+        }
+    }
+
+    /**
+     * @return a row layout page encoded for compression as described
+     *         above, or null if it cannot be, e.g. because a string is padded
+     *         with something other than zeroes
+     */
+    private byte[] rowEncode(byte[] data) throws IOException {
+        int numSlots = HeapPage.numSlots(pageSize, td);
+        int headerSize = (numSlots + 7) / 8;
+        int[] used = usedSlots(data, numSlots);
+        Map<ByteBuffer, Integer> ids = new HashMap<ByteBuffer, Integer>();
+        List<ByteBuffer> strings = new ArrayList<ByteBuffer>();
+        int[] stringIds = new int[used.length];
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(pageSize);
+        DataOutputStream out = new DataOutputStream(encoded);
+        out.write(data, 0, headerSize);
+        ByteArrayOutputStream planes = new ByteArrayOutputStream(pageSize);
+        for (int j = 0; j < td.numFields(); j++) {
+            int width = td.getFieldType(j).getLen();
+            int base = headerSize + td.getFieldOffset(j);
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                for (int k = 0; k < used.length; k++) {
+                    int p = base + used[k] * td.getSize();
+                    int len = Type.readInt(data, p);
+                    if (len < 0 || len > width - 4)
+                        return null;
+                    for (int b = p + 4 + len; b < p + width; b++) {
+                        if (data[b] != 0)
+                            return null;
+                    }
+                    ByteBuffer str = ByteBuffer.wrap(data, p + 4, len).slice();
+                    Integer id = ids.get(str);
+                    if (id == null) {
+                        if (strings.size() > 0xffff)
+                            return null;
+                        id = strings.size();
+                        ids.put(str, id);
+                        strings.add(str);
+                    }
+                    stringIds[k] = id;
+                }
+                for (int k = 0; k < used.length; k++)
+                    planes.write(stringIds[k] >>> 8);
+                for (int k = 0; k < used.length; k++)
+                    planes.write(stringIds[k]);
+            } else {
+                for (int b = 0; b < width; b++) {
+                    for (int k = 0; k < used.length; k++)
+                        planes.write(data[base + used[k] * td.getSize() + b]);
+                }
+            }
+        }
+        out.writeInt(strings.size());
+        for (ByteBuffer str : strings) {
+            out.writeShort(str.remaining());
+            out.write(data, str.arrayOffset(), str.remaining());
+        }
+        planes.writeTo(out);
+        return encoded.toByteArray();
+    }
+
+    /** @return the page a row layout page was encoded from */
+    private byte[] rowDecode(byte[] encoded) throws IOException {
+        int numSlots = HeapPage.numSlots(pageSize, td);
+        int headerSize = (numSlots + 7) / 8;
+        byte[] data = new byte[pageSize];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        in.readFully(data, 0, headerSize);
+        int[] used = usedSlots(data, numSlots);
+        byte[][] strings = new byte[in.readInt()][];
+        for (int k = 0; k < strings.length; k++) {
+            strings[k] = new byte[in.readUnsignedShort()];
+            in.readFully(strings[k]);
+        }
+        byte[] plane = new byte[used.length];
+        for (int j = 0; j < td.numFields(); j++) {
+            int width = td.getFieldType(j).getLen();
+            int base = headerSize + td.getFieldOffset(j);
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                byte[] high = new byte[used.length];
+                in.readFully(high);
+                in.readFully(plane);
+                for (int k = 0; k < used.length; k++) {
+                    byte[] str = strings[(high[k] & 0xff) << 8 | (plane[k] & 0xff)];
+                    int p = base + used[k] * td.getSize();
+                    Type.writeInt(data, p, str.length);
+                    System.arraycopy(str, 0, data, p + 4, str.length);
+                }
+            } else {
+                for (int b = 0; b < width; b++) {
+                    in.readFully(plane);
+                    for (int k = 0; k < used.length; k++)
+                        data[base + used[k] * td.getSize() + b] = plane[k];
+                }
+            }
+        }
+        return data;
+    }
+
+    /** @return the used slots of a row layout page, in order */
+    private static int[] usedSlots(byte[] data, int numSlots) {
+        int[] used = new int[numSlots];
+        int n = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if ((data[i / 8] & (1 << (i % 8))) != 0)
+                used[n++] = i;
+        }
+        return Arrays.copyOf(used, n);
+    }
+}
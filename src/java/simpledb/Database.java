@@ -32,6 +32,7 @@ public class Database {
             System.exit(1);
         }
         _logfile = tmp;
+        BufferPoolMonitor.register();
         // startControllerThread();
     }
 
@@ -55,11 +56,29 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, BufferPool.DEFAULT_EVICTION_POLICY);
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * that uses the specified eviction policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy.Kind evictionPolicy) {
+        return resetBufferPool(pages, evictionPolicy, false);
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * that uses the specified eviction policy and, if offHeap is set, keeps
+     * page contents outside the Java heap, and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy.Kind evictionPolicy,
+                                             boolean offHeap) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), new BufferPool(pages, evictionPolicy, offHeap));
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
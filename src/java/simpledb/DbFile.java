@@ -16,8 +16,9 @@ public interface DbFile {
      * Read the specified page from disk.
      *
      * @throws IllegalArgumentException if the page does not exist in this file.
+     * @throws DbException if the page is on disk but found to be corrupt
      */
-    public Page readPage(PageId id);
+    public Page readPage(PageId id) throws DbException;
 
     /**
      * Push the specified page to disk.
@@ -83,6 +84,13 @@ public interface DbFile {
      */
     public int getId();
     
+    /**
+     * Returns the size of the pages of this DbFile, in bytes.  Different
+     * files may use different page sizes; {@link BufferPool#getPageSize()}
+     * is only the default.
+     */
+    public int getPageSize();
+
     /**
      * Returns the TupleDesc of the table stored in this DbFile.
      * @return TupleDesc of this DbFile.
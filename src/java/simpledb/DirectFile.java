@@ -0,0 +1,154 @@
+package simpledb;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * DirectFile reads and writes the fixed-size pages of a file with direct
+ * I/O (O_DIRECT), bypassing the operating system's page cache, so that a
+ * page cached by the BufferPool is not also cached by the OS.
+ * <p>
+ * Direct I/O needs buffers, file positions and lengths that are multiples
+ * of the file system's block size; pages are read into and written from
+ * buffers aligned to it (see {@link #allocateAligned}).  It is only
+ * available through a JDK extension ({@link ExtendedOpenOption#DIRECT}) on
+ * file systems that support it, so {@link #open} returns null when it is
+ * not, and the caller falls back to ordinary I/O.
+ *
+ * @Threadsafe
+ * @see HeapFile
+ */
+public class DirectFile implements Closeable {
+    /** Alignment used when the file system does not say. */
+    static final int DEFAULT_ALIGNMENT = 4096;
+
+    private final File f;
+    private final int pageSize;
+    private final int blockSize;
+    private final FileChannel channel;
+    /** Aligned buffer of one page for each thread that reads. */
+    private final ThreadLocal<ByteBuffer> readBuffer = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue() {
+            return allocateAligned(pageSize, blockSize);
+        }
+    };
+
+    private DirectFile(File f, int pageSize, int blockSize, FileChannel channel) {
+        this.f = f;
+        this.pageSize = pageSize;
+        this.blockSize = blockSize;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens f for direct I/O, creating it if need be.
+     *
+     * @param f the file to open
+     * @param pageSize the size of a page of f, in bytes
+     * @return f opened for direct I/O, or null if the file system, or a
+     *         page size that is not a multiple of its block size, does not
+     *         allow it
+     */
+    public static DirectFile open(File f, int pageSize) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    ExtendedOpenOption.DIRECT);
+            int blockSize = blockSize(f.toPath());
+            if (pageSize % blockSize != 0) {
+                channel.close();
+                return null;
+            }
+            return new DirectFile(f, pageSize, blockSize, channel);
+        } catch (IOException e) {
+            close(channel);
+            return null;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            // nothing more to be done
+        }
+    }
+
+    /**
+     * @return a direct buffer of capacity bytes whose address is a multiple
+     *         of alignment
+     */
+    static ByteBuffer allocateAligned(int capacity, int alignment) {
+        // alignedSlice rounds both ends of the buffer in to the alignment
+        int rounded = (capacity + alignment - 1) / alignment * alignment;
+        ByteBuffer buf = ByteBuffer.allocateDirect(rounded + alignment);
+        ByteBuffer aligned = buf.alignedSlice(alignment);
+        aligned.limit(capacity);
+        return aligned.slice();
+    }
+
+    /** @return the size of a page of this file, in bytes */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /** @return the alignment direct I/O on this file needs, in bytes */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the channel through which this file is read and written;
+     *         buffers, positions and lengths used with it must be multiples
+     *         of the block size
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return a copy of page pageNo
+     * @throws IOException if the page is past the end of the file
+     */
+    public byte[] read(int pageNo) throws IOException {
+        ByteBuffer buf = readBuffer.get();
+        buf.clear();
+        long position = (long) pageNo * pageSize;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0)
+                throw new IOException("page " + pageNo + " is past the end of " + f);
+        }
+        buf.flip();
+        byte[] data = new byte[pageSize];
+        buf.get(data);
+        return data;
+    }
+
+    /** Forces every write to disk. */
+    public void force() throws IOException {
+        channel.force(true);
+    }
+
+    /**
+     * Closes the channel of this file; it cannot be read or written
+     * afterwards.  Writes not yet forced are not forced by closing.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** @return the block size of the file system of p */
+    private static int blockSize(Path p) throws IOException {
+        long size = Files.getFileStore(p).getBlockSize();
+        return size > 0 && size <= Integer.MAX_VALUE ? (int) size : DEFAULT_ALIGNMENT;
+    }
+}
@@ -0,0 +1,103 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool gives up when it
+ * needs room for a new one.  The BufferPool reports every page it admits,
+ * every cache hit and every page it discards, and asks the policy for a
+ * victim when it is full.
+ * <p>
+ * Implementations are not thread safe; the BufferPool serializes all calls
+ * into its policy.
+ *
+ * @see BufferPool
+ */
+public interface EvictionPolicy {
+
+    /** The available policies, used to pick one when creating a BufferPool. */
+    public enum Kind {
+        /** Least recently used. */
+        LRU() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new LruEvictionPolicy();
+            }
+        },
+        /** Uniformly random victim; a baseline for comparisons. */
+        RANDOM() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new RandomEvictionPolicy();
+            }
+        },
+        /** Scan-resistant 2Q (Johnson and Shasha, VLDB '94). */
+        TWO_QUEUE() {
+            @Override
+            public EvictionPolicy create(int numPages) {
+                return new TwoQueueEvictionPolicy(numPages);
+            }
+        };
+
+        /**
+         * @return a new, empty policy of this kind for a pool of numPages
+         *   pages.
+         */
+        public abstract EvictionPolicy create(int numPages);
+    }
+
+    /** Tells a policy whether a resident page may be evicted right now. */
+    public interface Filter {
+        /**
+         * @return true if pid can be evicted.  A true answer commits the
+         *   caller to evicting pid, so a policy must evict the first page
+         *   it is told it can.
+         */
+        public boolean canEvict(PageId pid);
+    }
+
+    /**
+     * Called when a page that was not resident is added to the pool.
+     * @param pid the page that became resident
+     */
+    public void pageAdmitted(PageId pid);
+
+    /**
+     * Called when a page is read into the pool ahead of any request for it
+     * (see {@link ReadAhead}).  Such a page has not been referenced yet, so
+     * it should not gain standing from having been used before; when it is
+     * first requested the BufferPool reports it again through
+     * {@link #pageAdmitted}.
+     * @param pid the page that became resident
+     */
+    public void pagePrefetched(PageId pid);
+
+    /**
+     * Called when a resident page is requested again.
+     * @param pid the page that was hit
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Called when a resident page leaves the pool for a reason other than
+     * eviction (e.g. {@link BufferPool#discardPage}).
+     * @param pid the page that is no longer resident
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Chooses a page to evict and stops tracking it as resident.  Pages the
+     * filter rejects (e.g. because they are pinned) are skipped and keep
+     * their place.
+     * @param filter decides whether a candidate may be evicted
+     * @return the victim, or null if no resident page can be evicted.
+     */
+    public PageId evict(Filter filter);
+
+    /**
+     * Called when the page last returned by {@link #evict} stays resident
+     * after all, e.g. because it could not be written out.  The page goes
+     * back where evict took it from, as if it had never been chosen; it
+     * gains no standing from the failed eviction.
+     * @param pid the victim that is still resident
+     */
+    public void evictFailed(PageId pid);
+}
@@ -14,6 +14,14 @@ public interface Field extends Serializable{
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the same bytes as {@link #serialize(DataOutputStream)} into data,
+     * starting at offset.
+     * @param data The array to write to, e.g. the bytes of a page.
+     * @param offset The index in data of the first byte to write.
+     */
+    void serialize(byte[] data, int offset);
+
     /**
      * Compare the value of this field object to the passed in value.
      * @param op The operator
@@ -0,0 +1,119 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameArena is a fixed number of fixed-size page frames kept outside the
+ * Java heap, in direct ByteBuffers.  The BufferPool uses it in off-heap mode
+ * to hold the serialized bytes of resident pages, so that a large pool does
+ * not put its pages on the garbage-collected heap.
+ * <p>
+ * A single direct buffer cannot exceed 2GB, so the arena is carved out of as
+ * many chunks as it needs; a frame never straddles two chunks.  Chunks are
+ * aligned to {@link DirectFile#DEFAULT_ALIGNMENT}, so frames of a multiple
+ * of that size are aligned too, as direct I/O wants.
+ *
+ * @Threadsafe; callers must not read and write the same slot concurrently.
+ * @see BufferPool
+ */
+public class FrameArena {
+    /** Largest chunk allocated with a single allocateDirect call. */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final int frameSize;
+    private final int framesPerChunk;
+    private final ByteBuffer[] chunks;
+
+    private final int[] freeSlots; // protected by this
+    private int numFree;           // protected by this
+
+    /**
+     * Allocates an arena of numFrames frames of frameSize bytes each.
+     *
+     * @param numFrames the number of frames
+     * @param frameSize the size of each frame, in bytes
+     */
+    public FrameArena(int numFrames, int frameSize) {
+        this.frameSize = frameSize;
+        this.framesPerChunk = Math.max(1, MAX_CHUNK_BYTES / frameSize);
+        int numChunks = (numFrames + framesPerChunk - 1) / framesPerChunk;
+        this.chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int frames = Math.min(framesPerChunk, numFrames - i * framesPerChunk);
+            chunks[i] = DirectFile.allocateAligned(frames * frameSize, DirectFile.DEFAULT_ALIGNMENT);
+        }
+        this.freeSlots = new int[numFrames];
+        // hand out low slots first
+        for (int i = 0; i < numFrames; i++)
+            freeSlots[i] = numFrames - 1 - i;
+        this.numFree = numFrames;
+    }
+
+    /** @return the size of a frame, in bytes */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /** @return the total number of frames in this arena */
+    public int capacity() {
+        return freeSlots.length;
+    }
+
+    /**
+     * Reserves a free frame.
+     * @return the slot number of the frame, or -1 if every frame is in use.
+     */
+    public synchronized int allocate() {
+        if (numFree == 0)
+            return -1;
+        return freeSlots[--numFree];
+    }
+
+    /** Returns a frame obtained from {@link #allocate} to the arena. */
+    public synchronized void free(int slot) {
+        freeSlots[numFree++] = slot;
+    }
+
+    /**
+     * Copies data into the frame at slot.
+     * @throws IllegalArgumentException if data does not fit in a frame.
+     */
+    public void write(int slot, byte[] data) {
+        if (data.length > frameSize)
+            throw new IllegalArgumentException("page of " + data.length
+                    + " bytes does not fit in a " + frameSize + " byte frame");
+        frame(slot).put(data);
+    }
+
+    /**
+     * Serializes page into the frame at slot, without an intermediate copy.
+     * @throws IllegalArgumentException if the page does not fit in a frame.
+     */
+    public void write(int slot, Page page) {
+        try {
+            page.getPageData(frame(slot));
+        } catch (java.nio.BufferOverflowException e) {
+            throw new IllegalArgumentException("page " + page.getId()
+                    + " does not fit in a " + frameSize + " byte frame");
+        }
+    }
+
+    /** @return a copy of the bytes of the frame at slot. */
+    public byte[] read(int slot) {
+        byte[] data = new byte[frameSize];
+        frame(slot).get(data);
+        return data;
+    }
+
+    /** @return a buffer positioned at the start of the frame at slot. */
+    private ByteBuffer frame(int slot) {
+        if (slot < 0 || slot >= freeSlots.length)
+            throw new IllegalArgumentException("no frame " + slot);
+        // duplicate so that concurrent callers do not share a position
+        ByteBuffer buf = chunks[slot / framesPerChunk].duplicate();
+        int offset = (slot % framesPerChunk) * frameSize;
+        buf.limit(offset + frameSize);
+        buf.position(offset);
+        return buf;
+    }
+}
@@ -0,0 +1,120 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap records, for each page of a HeapFile, roughly how much of
+ * the page is free, so that an insert can go straight to a page with room
+ * instead of fetching pages from the start of the file.
+ * <p>
+ * Free space is counted in the units of the file's page layout: slots for
+ * fixed-size tuples, bytes for variable-length ones (see
+ * {@link HeapFile.Layout}).  Each page has a one-byte fill class: 0 if the
+ * page is full, otherwise between 1 and {@link #CLASSES} in proportion to
+ * its free space, rounded up.  The classes are kept in a side file next to the heap file, one
+ * byte per page, which is loaded on first use and written back whenever
+ * the heap file is forced.
+ * <p>
+ * The map is a hint.  Pages it has no entry for, e.g. because the side
+ * file is missing or older than the heap file, are of unknown class and
+ * are checked by the first insert that comes across them; a page that
+ * turns out to be full is simply updated and skipped.
+ *
+ * @Threadsafe
+ * @see HeapFile#insertTuple
+ */
+public class FreeSpaceMap extends SideFile {
+    /** Number of fill classes of pages with free slots. */
+    public static final int CLASSES = 15;
+    /** Class of pages whose free space is not known. */
+    public static final int UNKNOWN = -1;
+
+    private final int unitsPerPage;
+
+    private byte[] classes = new byte[0]; // protected by this
+    /** Every page before this one is full; protected by this. */
+    private int firstCandidate;
+
+    /**
+     * @param file the side file holding the map; created when first written
+     * @param unitsPerPage the free space of an empty page
+     */
+    public FreeSpaceMap(File file, int unitsPerPage) {
+        super(file, 1);
+        this.unitsPerPage = Math.max(1, unitsPerPage);
+    }
+
+    /** @return the fill class of a page with free units of free space */
+    int classOf(int free) {
+        if (free <= 0)
+            return 0;
+        return (int) Math.min(CLASSES, ((long) free * CLASSES + unitsPerPage - 1) / unitsPerPage);
+    }
+
+    /** @return the fill class of page pageNo, or UNKNOWN */
+    public synchronized int getFillClass(int pageNo) {
+        load();
+        return pageNo < size() ? classes[pageNo] : UNKNOWN;
+    }
+
+    /** Records that page pageNo has free units of free space. */
+    public synchronized void update(int pageNo, int free) {
+        load();
+        byte c = (byte) classOf(free);
+        if (pageNo < size() && classes[pageNo] == c)
+            return;
+        grow(pageNo);
+        classes[pageNo] = c;
+        if (c != 0)
+            firstCandidate = Math.min(firstCandidate, pageNo);
+        dirty(pageNo);
+    }
+
+    /**
+     * @param numPages the number of pages in the heap file
+     * @return the lowest numbered page that may have a free slot: one with
+     *         free slots or of unknown class, or -1 if every page is full
+     */
+    public int findPage(int numPages) {
+        return findPage(numPages, 0, 1);
+    }
+
+    /**
+     * @param numPages the number of pages in the heap file
+     * @param from the first page to consider
+     * @param needed the free space wanted
+     * @return the lowest numbered page from from on that may have needed
+     *         units free, or -1 if there is none.  Pages of a lower fill
+     *         class than needed itself have less free space than needed, so
+     *         only those are skipped.
+     */
+    public synchronized int findPage(int numPages, int from, int needed) {
+        load();
+        int minClass = Math.max(1, classOf(needed));
+        for (int p = Math.max(from, firstCandidate); p < numPages; p++) {
+            if (p >= size() || classes[p] == UNKNOWN || classes[p] >= minClass)
+                return p;
+            if (classes[p] == 0 && p == firstCandidate)
+                firstCandidate = p + 1;
+        }
+        return -1;
+    }
+
+    // see SideFile.java for javadocs
+    protected void allocate(int capacity) {
+        int n = classes.length;
+        classes = Arrays.copyOf(classes, capacity);
+        // pages without an entry are unknown, not full
+        Arrays.fill(classes, n, capacity, (byte) UNKNOWN);
+    }
+
+    protected void encode(int i, ByteBuffer buf) {
+        buf.put(classes[i]);
+    }
+
+    protected void decode(int i, ByteBuffer buf) {
+        classes[i] = buf.get();
+    }
+}
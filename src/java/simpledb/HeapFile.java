@@ -1,6 +1,8 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -9,11 +11,149 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * How a HeapFile reaches its backing store is given by its {@link Storage}.
+ * A HeapFile can be memory mapped (see {@link MappedFile}), which
+ * suits read-mostly tables: pages are then copied out of and back into the
+ * mapping instead of being read and written with a system call each.
+ * Either way readPage hands the BufferPool a private copy of the page, so
+ * in-memory changes and the page's before-image are unaffected by the
+ * backing store until the page is written back with writePage.
+ * <p>
+ * A HeapFile can instead be compressed (see {@link CompressedFile}): each
+ * page is stored compressed and found through a page-offset index, and is
+ * decompressed by readPage and compressed by writePage.  This suits
+ * tables that are scanned more than they are updated; pages of such files
+ * are mostly empty slots and string padding.
+ * <p>
+ * A HeapFile can also use direct I/O (see {@link DirectFile}), so that
+ * pages cached in the BufferPool are not cached a second time by the
+ * operating system.  Where direct I/O is not available the file quietly
+ * uses ordinary reads and writes; {@link #isDirectIO} tells which.
+ * <p>
+ * Inserts find a page with room through a {@link FreeSpaceMap} kept in a
+ * side file next to the heap file (the file name with ".fsm" appended).
+ * The map is updated as tuples are inserted and deleted, resynchronized
+ * with every page read or written, and saved when the file is forced.
+ * <p>
+ * Every page written is stamped with a checksum, kept in another side file
+ * (".crc", see {@link PageChecksums}), which readPage verifies, so that a
+ * torn or corrupt page is refused rather than decoded.  {@link #verifyPage}
+ * checks a page on disk without reading it into the BufferPool, for the
+ * background {@link Scrubber}.
+ * <p>
+ * A third side file (".zone", see {@link ZoneMap}) keeps the bounds of the
+ * int fields of each page, which filtered scans consult to pass over pages
+ * that cannot hold a match without reading them.
+ * <p>
+ * Each HeapFile has a page {@link Layout}: fixed-size rows in a HeapPage by
+ * default, variable-length records in a SlottedPage, which suits tables
+ * of short strings, or fixed-size values column by column in a PaxPage,
+ * which suits scans of a few fields of wide tables.
  * 
  * @see simpledb.HeapPage#HeapPage
+ * @see simpledb.SlottedPage
+ * @see simpledb.PaxPage
  * @author Sam Madden
  */
-public class HeapFile implements DbFile {
+public class HeapFile implements DbFile, BatchWritable, RawPageReadable, Closeable {
+
+    /**
+     * The formats the pages of a HeapFile can be in.  All layouts read a
+     * page of zeroes as an empty page.
+     */
+    public enum Layout {
+        /** Fixed-size tuples in the slots of a {@link HeapPage}. */
+        ROW {
+            public TuplePage newPage(HeapPageId pid, byte[] data) throws IOException {
+                return new HeapPage(pid, data);
+            }
+
+            public int capacity(int pageSize, TupleDesc td) {
+                return HeapPage.numSlots(pageSize, td);
+            }
+
+            public int spaceFor(Tuple t) {
+                return 1;
+            }
+        },
+
+        /** Variable-length records in a {@link SlottedPage}. */
+        SLOTTED {
+            public TuplePage newPage(HeapPageId pid, byte[] data) throws IOException {
+                return new SlottedPage(pid, data);
+            }
+
+            public int capacity(int pageSize, TupleDesc td) {
+                return pageSize - SlottedPage.HEADER_SIZE;
+            }
+
+            public int spaceFor(Tuple t) {
+                return SlottedPage.recordSize(t) + SlottedPage.SLOT_SIZE;
+            }
+        },
+
+        /** Fixed-size tuples stored column by column in a {@link PaxPage}. */
+        PAX {
+            public TuplePage newPage(HeapPageId pid, byte[] data) throws IOException {
+                return new PaxPage(pid, data);
+            }
+
+            public int capacity(int pageSize, TupleDesc td) {
+                return HeapPage.numSlots(pageSize, td);
+            }
+
+            public int spaceFor(Tuple t) {
+                return 1;
+            }
+        };
+
+        /** @return the page with the given id and bytes, in this layout */
+        public abstract TuplePage newPage(HeapPageId pid, byte[] data) throws IOException;
+
+        /** @return the free space of an empty page, in the units of getFreeSpace */
+        public abstract int capacity(int pageSize, TupleDesc td);
+
+        /** @return the free space it takes to insert t */
+        public abstract int spaceFor(Tuple t);
+    }
+
+    /**
+     * How a HeapFile reads and writes the pages of its file.
+     */
+    public enum Storage {
+        /** Pages are read and written with a system call each. */
+        PLAIN,
+        /** Pages are copied out of and into a mapping of the file (see {@link MappedFile}). */
+        MAPPED,
+        /** Pages are stored compressed, behind an index (see {@link CompressedFile}). */
+        COMPRESSED,
+        /**
+         * Pages are read and written with direct I/O, bypassing the
+         * operating system's cache, where available (see {@link DirectFile}).
+         */
+        DIRECT
+    }
+
+    /** Most bytes gathered into a single write by writePages. */
+    private static final int MAX_WRITE_BYTES = 1 << 20;
+
+    private final File f;
+    private final TupleDesc td;
+    private final int pageSize;
+    private final Storage storage;
+    private final Layout layout;
+    /** The mapping of f in memory-mapped mode, null otherwise. */
+    private final MappedFile mapped;
+    /** The compressed pages of f in compressed mode, null otherwise. */
+    private final CompressedFile compressed;
+    /** f opened for direct I/O in direct mode, null otherwise. */
+    private final DirectFile direct;
+    /** Pages are copied into this to be written; protected by this. */
+    private ByteBuffer writeBuffer;
+    private final FreeSpaceMap freeSpace;
+    private final PageChecksums checksums;
+    private final ZoneMap zones;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -23,7 +163,116 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
-        // some code goes here
+        this(f, td, Storage.PLAIN);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, accessed as the
+     * given storage mode says.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param storage
+     *            how to read and write the pages of f.
+     */
+    public HeapFile(File f, TupleDesc td, Storage storage) {
+        this(f, td, BufferPool.getPageSize(), storage);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * pageSize bytes long rather than the default page size.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param pageSize
+     *            the size of the pages of f, in bytes.
+     * @param storage
+     *            how to read and write the pages of f.
+     */
+    public HeapFile(File f, TupleDesc td, int pageSize, Storage storage) {
+        this(f, td, pageSize, storage, Layout.ROW);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * in the given layout.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param pageSize
+     *            the size of the pages of f, in bytes.
+     * @param storage
+     *            how to read and write the pages of f.
+     * @param layout
+     *            the format of the pages of f.
+     * @throws IllegalArgumentException if pages of pageSize bytes cannot be
+     *            in the given layout
+     */
+    public HeapFile(File f, TupleDesc td, int pageSize, Storage storage, Layout layout) {
+        if (layout == Layout.SLOTTED && pageSize > SlottedPage.MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("slotted pages can be at most "
+                    + SlottedPage.MAX_PAGE_SIZE + " bytes");
+        this.f = f;
+        this.td = td;
+        this.pageSize = pageSize;
+        this.storage = storage;
+        this.layout = layout;
+        this.mapped = storage == Storage.MAPPED ? new MappedFile(f, pageSize) : null;
+        this.compressed = storage == Storage.COMPRESSED ? new CompressedFile(f, pageSize, td, layout) : null;
+        this.direct = storage == Storage.DIRECT ? DirectFile.open(f, pageSize) : null;
+        this.freeSpace = new FreeSpaceMap(new File(f.getPath() + ".fsm"),
+                layout.capacity(pageSize, td));
+        this.checksums = new PageChecksums(new File(f.getPath() + ".crc"));
+        this.zones = new ZoneMap(new File(f.getPath() + ".zone"), td);
+    }
+
+    /** @return how this file's pages are read and written */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /** @return the layout of the pages of this file */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /** @return the map of the free space on the pages of this file */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpace;
+    }
+
+    /** @return the checksums of the pages of this file */
+    public PageChecksums getChecksums() {
+        return checksums;
+    }
+
+    /** @return the bounds of the int fields of the pages of this file */
+    public ZoneMap getZoneMap() {
+        return zones;
+    }
+
+    // see DbFile.java for javadocs
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /** @return true if this file is accessed through memory mappings */
+    public boolean isMemoryMapped() {
+        return mapped != null;
+    }
+
+    /** @return true if this file is read and written with direct I/O */
+    public boolean isDirectIO() {
+        return direct != null;
+    }
+
+    /** @return the compressed pages of this file, or null if it is not compressed */
+    public CompressedFile getCompressedFile() {
+        return compressed;
     }
 
     /**
@@ -32,8 +281,7 @@ public class HeapFile implements DbFile {
      * @return the File backing this HeapFile on disk.
      */
     public File getFile() {
-        // some code goes here
-        return null;
+        return f;
     }
 
     /**
@@ -46,8 +294,7 @@ public class HeapFile implements DbFile {
      * @return an ID uniquely identifying this HeapFile.
      */
     public int getId() {
-        // some code goes here
-        throw new UnsupportedOperationException("implement this");
+        return f.getAbsoluteFile().hashCode();
     }
 
     /**
@@ -56,50 +303,486 @@ public class HeapFile implements DbFile {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc() {
-        // some code goes here
-        throw new UnsupportedOperationException("implement this");
+        return td;
     }
 
     // see DbFile.java for javadocs
-    public Page readPage(PageId pid) {
-        // some code goes here
-        return null;
+    public Page readPage(PageId pid) throws DbException {
+        return newPage(pid, readPageBytes(pid));
+    }
+
+    // see RawPageReadable.java for javadocs
+    public byte[] readPageBytes(PageId pid) throws DbException {
+        if (pid.getTableId() != getId() || pid.pageNumber() < 0
+                || pid.pageNumber() >= numPages())
+            throw new IllegalArgumentException("page " + pid.pageNumber() + " is not in this file");
+        byte[] data;
+        try {
+            data = readPageData(pid.pageNumber());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read page " + pid.pageNumber()
+                    + " of " + f + ": " + e.getMessage());
+        }
+        if (!checksums.verify(pid.pageNumber(), data))
+            throw new DbException("page " + pid.pageNumber() + " of " + f
+                    + " does not match its checksum: it is torn or corrupt");
+        return data;
+    }
+
+    // see RawPageReadable.java for javadocs
+    public Page newPage(PageId pid, byte[] data) {
+        try {
+            TuplePage page = layout.newPage((HeapPageId) pid, data);
+            freeSpace.update(pid.pageNumber(), page.getFreeSpace());
+            return page;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not decode page " + pid.pageNumber()
+                    + " of " + f + ": " + e.getMessage());
+        }
+    }
+
+    /** @return the bytes of page pageNo as they are on disk */
+    private byte[] readPageData(int pageNo) throws IOException {
+        if (compressed != null)
+            return compressed.read(pageNo);
+        if (mapped != null)
+            return mapped.read(pageNo);
+        if (direct != null)
+            return direct.read(pageNo);
+        byte[] data = new byte[pageSize];
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            raf.seek((long) pageNo * pageSize);
+            raf.readFully(data);
+        } finally {
+            raf.close();
+        }
+        return data;
+    }
+
+    /**
+     * Checks page pageNo on disk against its checksum, without going
+     * through the BufferPool.
+     * @return false if the page has a checksum that it does not match
+     */
+    public boolean verifyPage(int pageNo) throws IOException {
+        return checksums.verify(pageNo, readPageData(pageNo));
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        writePages(Collections.singletonList(page));
+    }
+
+    // see BatchWritable.java for javadocs
+    public synchronized void writePages(List<Page> pages) throws IOException {
+        // a page written twice since the last force may be on disk as any
+        // of its writes, but only the settled checksum and the last one are
+        // kept for it
+        for (Page page : pages) {
+            if (checksums.isPending(page.getId().pageNumber())) {
+                force();
+                break;
+            }
+        }
+        byte[][] data = new byte[pages.size()][];
+        byte[][] stored = new byte[pages.size()][];
+        for (int i = 0; i < pages.size(); i++) {
+            data[i] = pages.get(i).getPageData();
+            byte[] written = data[i];
+            if (compressed != null) {
+                // readPage checks the page as decompressed, not as it was given
+                stored[i] = compressed.encode(data[i]);
+                written = compressed.readBack(data[i], stored[i]);
+            }
+            checksums.stamp(pages.get(i).getId().pageNumber(),
+                    PageChecksums.checksum(written, 0, written.length));
+            if (pages.get(i) instanceof TuplePage)
+                zones.update(pages.get(i).getId().pageNumber(), (TuplePage) pages.get(i));
+        }
+        // the new checksums and bounds are on disk before any page they cover
+        checksums.flush();
+        zones.flush();
+        if (compressed != null) {
+            for (int i = 0; i < pages.size(); i++)
+                compressed.writeStored(pages.get(i).getId().pageNumber(), stored[i]);
+            compressed.publish();
+        } else if (mapped != null) {
+            for (int i = 0; i < pages.size(); i++)
+                mapped.write(pages.get(i).getId().pageNumber(), data[i]);
+        } else {
+            writeRuns(pages, data);
+        }
+        for (Page page : pages) {
+            if (page instanceof TuplePage)
+                freeSpace.update(page.getId().pageNumber(), ((TuplePage) page).getFreeSpace());
+        }
+    }
+
+    /**
+     * Writes pages, sorted by page number, in runs of consecutive pages.
+     * @param data the bytes of each page
+     */
+    private void writeRuns(List<Page> pages, byte[][] data) throws IOException {
+        if (direct != null) {
+            writeRuns(direct.getChannel(), pages, data);
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            writeRuns(raf.getChannel(), pages, data);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Writes pages to channel, sorted by page number, in runs. */
+    private synchronized void writeRuns(FileChannel channel, List<Page> pages, byte[][] data)
+            throws IOException {
+        ByteBuffer buf = writeBuffer();
+        int maxRun = buf.capacity() / pageSize;
+        int start = 0;
+        while (start < pages.size()) {
+            // gather a run of consecutive pages into one write
+            int first = pages.get(start).getId().pageNumber();
+            int end = start + 1;
+            while (end < pages.size() && end - start < maxRun
+                    && pages.get(end).getId().pageNumber() == first + (end - start))
+                end++;
+            buf.clear();
+            for (int i = start; i < end; i++)
+                buf.put(data[i]);
+            buf.flip();
+            write(channel, buf, (long) first * pageSize);
+            start = end;
+        }
+    }
+
+    /**
+     * @return the buffer pages are copied into for writing, cleared;
+     *         allocated on first use, aligned for direct I/O in direct mode
+     */
+    private ByteBuffer writeBuffer() {
+        if (writeBuffer == null) {
+            int size = Math.max(1, MAX_WRITE_BYTES / pageSize) * pageSize;
+            writeBuffer = direct != null ? DirectFile.allocateAligned(size, direct.getBlockSize())
+                    : ByteBuffer.allocateDirect(size);
+        }
+        writeBuffer.clear();
+        return writeBuffer;
+    }
+
+    /** Writes all of buf to channel at position. */
+    private static void write(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining())
+            position += channel.write(buf, position);
+    }
+
+    // see BatchWritable.java for javadocs
+    public synchronized void force() throws IOException {
+        if (compressed != null) {
+            compressed.force();
+        } else if (mapped != null) {
+            mapped.force();
+        } else if (direct != null) {
+            direct.force();
+        } else {
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try {
+                raf.getChannel().force(true);
+            } finally {
+                raf.close();
+            }
+        }
+        // the map is only a hint, so it need not be forced
+        freeSpace.write();
+        // only now are the pages written known to be on disk as written
+        checksums.settle();
+        checksums.flush();
+        zones.settle();
+        zones.flush();
+    }
+
+    /**
+     * Releases the files this HeapFile keeps open: the mapping in
+     * memory-mapped mode and the channel in direct mode.  Pages written but
+     * not forced are not forced by closing.  A memory-mapped file is mapped
+     * again if used afterwards; one in direct mode cannot be used again.
+     */
+    public synchronized void close() throws IOException {
+        if (mapped != null)
+            mapped.close();
+        if (direct != null)
+            direct.close();
     }
 
     /**
      * Returns the number of pages in this HeapFile.
      */
     public int numPages() {
-        // some code goes here
-        return 0;
+        if (compressed != null) {
+            try {
+                return compressed.numPages();
+            } catch (IOException e) {
+                throw new RuntimeException("could not read the page index of " + f, e);
+            }
+        }
+        return (int) (f.length() / pageSize);
     }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-        // some code goes here
-        return null;
-        // not necessary for lab1|lab2
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("tuple does not match the schema of " + f);
+        int needed = layout.spaceFor(t);
+        if (needed > layout.capacity(pageSize, td))
+            throw new DbException("tuple is too large for a page of " + f);
+        BufferPool pool = Database.getBufferPool();
+        int from = 0;
+        for (;;) {
+            int pageNo = freeSpace.findPage(numPages(), from, needed);
+            if (pageNo < 0)
+                pageNo = appendEmptyPage();
+            TuplePage page = (TuplePage) pool.getPage(tid, new HeapPageId(getId(), pageNo),
+                    Permissions.READ_WRITE);
+            int free = page.getFreeSpace();
+            if (free < needed) {
+                // the map was stale, another insert got here first, or the
+                // page has room, but not for t
+                freeSpace.update(pageNo, free);
+                from = pageNo + 1;
+                continue;
+            }
+            page.insertTuple(t);
+            freeSpace.update(pageNo, page.getFreeSpace());
+            zones.widen(pageNo, t);
+            ArrayList<Page> modified = new ArrayList<Page>();
+            modified.add(page);
+            return modified;
+        }
+    }
+
+    /**
+     * Adds an empty page at the end of the file.
+     * @return the number of the new page
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        int pageNo = numPages();
+        writePage(layout.newPage(new HeapPageId(getId(), pageNo), new byte[pageSize]));
+        return pageNo;
     }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
-        // some code goes here
-        return null;
-        // not necessary for lab1|lab2
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId())
+            throw new DbException("tuple is not in " + f);
+        TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, rid.getPageId(),
+                Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        freeSpace.update(page.getId().pageNumber(), page.getFreeSpace());
+        ArrayList<Page> modified = new ArrayList<Page>();
+        modified.add(page);
+        return modified;
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
-        // some code goes here
-        return null;
+        return new HeapFileIterator(tid, CompiledPredicate.TRUE, null);
+    }
+
+    /**
+     * @return an iterator over the tuples of this file that match filter.
+     *         The filter is evaluated on the bytes of each page, so a tuple
+     *         that does not match is never built (except on SLOTTED pages,
+     *         which must decode a tuple to find its fields), and pages the
+     *         ZoneMap rules out are not read at all.
+     */
+    public DbFileIterator iterator(TransactionId tid, CompiledPredicate filter) {
+        return new HeapFileIterator(tid, filter, null);
+    }
+
+    /**
+     * @return an iterator over the tuples of this file that match filter,
+     *         holding only the fields numbered in columns, in that order;
+     *         only those fields are decoded from the pages.  filter refers
+     *         to the fields of the file's TupleDesc.
+     * @param columns the fields to return, or null for all of them
+     * @see TupleDesc#project
+     */
+    public DbFileIterator iterator(TransactionId tid, CompiledPredicate filter, int[] columns) {
+        return new HeapFileIterator(tid, filter, columns);
+    }
+
+    /**
+     * @return an iterator over the tuples of this file in batches of up to
+     *         capacity rows, read in the same order as by {@link #iterator}
+     *         but without building a Tuple per row
+     */
+    public BatchIterator batchIterator(TransactionId tid, int capacity) {
+        return new HeapFileBatchIterator(tid, capacity, CompiledPredicate.TRUE, null);
+    }
+
+    /**
+     * @return an iterator over the tuples of this file that match filter,
+     *         in batches of up to capacity rows; see {@link #iterator(TransactionId, CompiledPredicate)}
+     */
+    public BatchIterator batchIterator(TransactionId tid, int capacity, CompiledPredicate filter) {
+        return new HeapFileBatchIterator(tid, capacity, filter, null);
+    }
+
+    /**
+     * @return an iterator over the fields numbered in columns of the tuples
+     *         of this file that match filter, in batches of up to capacity
+     *         rows; see {@link #iterator(TransactionId, CompiledPredicate, int[])}
+     */
+    public BatchIterator batchIterator(TransactionId tid, int capacity, CompiledPredicate filter,
+                                       int[] columns) {
+        return new HeapFileBatchIterator(tid, capacity, filter, columns);
+    }
+
+    /** @return true if the ZoneMap shows no tuple of page pageNo matches filter */
+    private boolean skip(int pageNo, CompiledPredicate filter) {
+        return filter != CompiledPredicate.TRUE && !zones.mayMatch(pageNo, filter);
+    }
+
+    /** @return a ReadAhead for a scan that skips pages as skip does */
+    private ReadAhead readAhead(final CompiledPredicate filter) {
+        ReadAhead.PageFilter wanted = null;
+        if (filter != CompiledPredicate.TRUE) {
+            wanted = new ReadAhead.PageFilter() {
+                public boolean wanted(int pgNo) {
+                    return !skip(pgNo, filter);
+                }
+            };
+        }
+        return new ReadAhead(Database.getBufferPool(), getId(), numPages(), wanted);
+    }
+
+    /**
+     * Iterates over the tuples of this file page by page through the
+     * BufferPool, reading ahead of itself once it is clearly scanning.
+     */
+    private class HeapFileIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final CompiledPredicate filter;
+        private final int[] columns;
+        private ReadAhead readAhead;
+        private Iterator<Tuple> tuples;
+        private int nextPage;
+
+        HeapFileIterator(TransactionId tid, CompiledPredicate filter, int[] columns) {
+            this.tid = tid;
+            this.filter = filter;
+            this.columns = columns;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            readAhead = readAhead(filter);
+            nextPage = 0;
+            tuples = null;
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (readAhead == null)
+                return null;
+            while (tuples == null || !tuples.hasNext()) {
+                if (nextPage >= numPages())
+                    return null;
+                if (skip(nextPage, filter)) {
+                    readAhead.pageSkipped(nextPage++);
+                    continue;
+                }
+                readAhead.pageRequested(nextPage);
+                HeapPageId pid = new HeapPageId(getId(), nextPage++);
+                TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                tuples = page.iterator(filter, columns);
+            }
+            return tuples.next();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            readAhead = null;
+            tuples = null;
+        }
+    }
+
+    /** Fills batches straight from the pages, a page at a time. */
+    private class HeapFileBatchIterator implements BatchIterator {
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+        private final int capacity;
+        private final CompiledPredicate filter;
+        private final int[] columns;
+        private transient TupleBatch batch;
+        private transient ReadAhead readAhead;
+        private transient TuplePage page;
+        private transient int nextPage;
+        private transient int nextSlot; // in page, or -1 for the next page
+
+        HeapFileBatchIterator(TransactionId tid, int capacity, CompiledPredicate filter,
+                              int[] columns) {
+            this.tid = tid;
+            this.capacity = capacity;
+            this.filter = filter;
+            this.columns = columns;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            readAhead = readAhead(filter);
+            nextPage = 0;
+            page = null;
+            nextSlot = -1;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+            if (readAhead == null)
+                throw new IllegalStateException("iterator is not open");
+            if (batch == null)
+                batch = new TupleBatch(getTupleDesc(), capacity);
+            batch.clear();
+            int numPages = numPages();
+            while (!batch.isFull()) {
+                if (nextSlot < 0) {
+                    if (nextPage >= numPages)
+                        break;
+                    if (skip(nextPage, filter)) {
+                        readAhead.pageSkipped(nextPage++);
+                        continue;
+                    }
+                    readAhead.pageRequested(nextPage);
+                    HeapPageId pid = new HeapPageId(getId(), nextPage++);
+                    page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                    nextSlot = 0;
+                }
+                nextSlot = page.readBatch(nextSlot, batch, filter, columns);
+            }
+            return batch.size() == 0 ? null : batch;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            if (readAhead == null)
+                throw new IllegalStateException("iterator is not open");
+            open();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return columns == null ? td : td.project(columns);
+        }
+
+        public void close() {
+            readAhead = null;
+            page = null;
+        }
     }
 
 }
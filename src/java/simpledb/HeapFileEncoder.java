@@ -1,7 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -106,6 +109,22 @@ public class HeapFileEncoder {
 
     BufferedReader br = new BufferedReader(new FileReader(inFile));
     FileOutputStream os = new FileOutputStream(outFile);
+    // a free-space map of an earlier file of that name no longer applies
+    new File(outFile.getPath() + ".fsm").delete();
+    File crcFile = new File(outFile.getPath() + ".crc");
+    crcFile.delete();
+    PageChecksums checksums = new PageChecksums(crcFile);
+
+    // the bounds of the int fields of each page, for its zone map
+    File zoneFile = new File(outFile.getPath() + ".zone");
+    zoneFile.delete();
+    TupleDesc td = new TupleDesc(Arrays.copyOf(typeAr, numFields));
+    ZoneMap zones = new ZoneMap(zoneFile, td);
+    int[] intFields = ZoneMap.intFields(td);
+    int[] min = new int[numFields];
+    int[] max = new int[numFields];
+    Arrays.fill(min, Integer.MAX_VALUE);
+    Arrays.fill(max, Integer.MIN_VALUE);
 
     // our numbers probably won't be much larger than 1024 digits
     char buf[] = new char[1024];
@@ -140,7 +159,10 @@ public class HeapFileEncoder {
             String s = new String(buf, 0, curpos);
             if (typeAr[fieldNo] == Type.INT_TYPE) {
                 try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
+                    int v = Integer.parseInt(s.trim());
+                    pageStream.writeInt(v);
+                    min[fieldNo] = Math.min(min[fieldNo], v);
+                    max[fieldNo] = Math.max(max[fieldNo], v);
                 } catch (NumberFormatException e) {
                     System.out.println ("BAD LINE : " + s);
                 }
@@ -209,12 +231,27 @@ public class HeapFileEncoder {
             headerBAOS.writeTo(os);
             pageStream.flush();
             pageBAOS.writeTo(os);
+            byte[] header = headerBAOS.toByteArray();
+            byte[] body = pageBAOS.toByteArray();
+            byte[] pageBytes = Arrays.copyOf(header, header.length + body.length);
+            System.arraycopy(body, 0, pageBytes, header.length, body.length);
+            checksums.stamp(npages, PageChecksums.checksum(pageBytes, 0, pageBytes.length));
             
             // reset header and body for next page
             headerBAOS = new ByteArrayOutputStream(nheaderbytes);
             headerStream = new DataOutputStream(headerBAOS);
             pageBAOS = new ByteArrayOutputStream(npagebytes);
             pageStream = new DataOutputStream(pageBAOS);
+
+            int[] pageMin = new int[intFields.length];
+            int[] pageMax = new int[intFields.length];
+            for (int k = 0; k < intFields.length; k++) {
+                pageMin[k] = min[intFields[k]];
+                pageMax[k] = max[intFields[k]];
+            }
+            zones.set(npages, recordcount, pageMin, pageMax);
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
             
             recordcount = 0;
             npages++;
@@ -222,5 +259,52 @@ public class HeapFileEncoder {
     }
     br.close();
     os.close();
+    zones.write();
+    // a new file has no earlier version of its pages
+    checksums.settle();
+    checksums.write();
+  }
+
+  /** Compress a binary page file written by convert into the format of a
+   * compressed HeapFile (see {@link CompressedFile}).
+   *
+   * @param inFile The page file to read pages from
+   * @param outFile The output file to write compressed pages to; its
+   *        page-offset index is written next to it
+   * @param npagebytes The number of bytes per page in the input file
+   * @param td the schema of the tuples in the input file
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void compress(File inFile, File outFile, int npagebytes, TupleDesc td)
+      throws IOException {
+      CompressedFile out = new CompressedFile(outFile, npagebytes, td, HeapFile.Layout.ROW);
+      outFile.delete();
+      out.getIndexFile().delete();
+      new File(outFile.getPath() + ".fsm").delete();
+      File crcFile = new File(outFile.getPath() + ".crc");
+      crcFile.delete();
+      PageChecksums checksums = new PageChecksums(crcFile);
+      // compressing leaves the pages as they were, and so their bounds
+      File zones = new File(inFile.getPath() + ".zone");
+      File outZones = new File(outFile.getPath() + ".zone");
+      if (zones.exists())
+          Files.copy(zones.toPath(), outZones.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      else
+          outZones.delete();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(inFile)));
+      try {
+          long npages = inFile.length() / npagebytes;
+          byte[] page = new byte[npagebytes];
+          for (int i = 0; i < npages; i++) {
+              in.readFully(page);
+              byte[] data = out.write(i, page);
+              checksums.stamp(i, PageChecksums.checksum(data, 0, data.length));
+          }
+      } finally {
+          in.close();
+      }
+      out.force();
+      checksums.settle();
+      checksums.write();
   }
 }
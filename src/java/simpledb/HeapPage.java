@@ -2,63 +2,93 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage is a flyweight over the bytes it was read from: the
+ * constructor does not parse them, the Tuple of a slot is only created when
+ * the slot is first iterated over, and its fields are decoded in place from
+ * the page bytes when first asked for (see {@link Tuple}).
+ * <p>
+ * The before-image is copy-on-write: setBeforeImage only records that the
+ * current bytes are the before-image, and they are copied aside the first
+ * time the page is modified after that.
  *
  * @see HeapFile
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
+    /** The page's bytes: the header, then numSlots fixed-size tuples. */
+    final byte data[];
+    /** Tuples of the slots handed out so far, null for the others. */
     final Tuple tuples[];
     final int numSlots;
-
+    final int headerSize;
+    /**
+     * The header as 64-bit words, kept in step with the header bytes:
+     * slot i is used if bit i % 64 of word i / 64 is set.
+     */
+    final long[] usedSlots;
+    /** Every slot of the words before this one is used. */
+    private int firstFreeWord;
+    /** Size of this page in bytes; that of the data it was read from. */
+    final int pageSize;
+    /** Field j of slot i is at fieldBase[j] + i * fieldStride[j] in data. */
+    final int[] fieldBase;
+    final int[] fieldStride;
+
+    /** The before-image; the same array as data until data changes. */
     byte[] oldData;
     private final Byte oldDataLock=new Byte((byte)0);
 
+    private volatile TransactionId dirtier;
+
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
      *  Specifically, the number of tuples is equal to: <p>
-     *          floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1))
+     *          floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
      * database table, which can be determined via {@link Catalog#getTupleDesc}.
      * The number of 8-bit header words is equal to:
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The page size is the length of data, which is normally the page size
+     * of the HeapFile the page belongs to.  The page keeps data rather than
+     * a copy of it, so the caller must not change the array afterwards.
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#getPageSize()
+     * @see HeapFile#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
         this.pid = id;
+        this.pageSize = data.length;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        this.headerSize = getHeaderSize();
+        this.data = data;
+        this.tuples = new Tuple[numSlots];
+        this.usedSlots = new long[(numSlots + 63) / 64];
+        // header byte i holds bits 8*i .. 8*i+7, low bit first
+        for (int i = 0; i < headerSize; i++)
+            usedSlots[i >>> 3] |= (data[i] & 0xffL) << ((i & 7) * 8);
+        if (numSlots % 64 != 0)
+            usedSlots[usedSlots.length - 1] &= (1L << numSlots) - 1;
+        this.fieldBase = new int[td.numFields()];
+        this.fieldStride = new int[td.numFields()];
+        for (int j = 0; j < fieldBase.length; j++) {
+            fieldBase[j] = fieldBase(j);
+            fieldStride[j] = fieldStride(j);
         }
-        dis.close();
-
         setBeforeImage();
     }
 
@@ -66,9 +96,15 @@ public class HeapPage implements Page {
         @return the number of tuples on this page
     */
     private int getNumTuples() {        
-        // some code goes here
-        return 0;
+        return numSlots(pageSize, td);
+    }
 
+    /**
+     * @return the number of tuple slots on a page of pageSize bytes holding
+     *         tuples of schema td
+     */
+    static int numSlots(int pageSize, TupleDesc td) {
+        return (pageSize * 8) / (td.getSize() * 8 + 1);
     }
 
     /**
@@ -76,10 +112,7 @@ public class HeapPage implements Page {
      * @return the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
      */
     private int getHeaderSize() {        
-        
-        // some code goes here
-        return 0;
-                 
+        return (numSlots + 7) / 8;
     }
     
     /** Return a view of this page before it was modified
@@ -91,7 +124,8 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid,oldDataRef);
+            // the page's own bytes may still be the before-image
+            return newPage(oldDataRef.clone());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -100,10 +134,27 @@ public class HeapPage implements Page {
         return null;
     }
     
+    /** @return a page of this class with the given bytes and this id */
+    HeapPage newPage(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        oldData = data;
+        }
+    }
+
+    /**
+     * Copies the before-image aside if it is still shared with the page's
+     * bytes; must be called before every change to data.
+     */
+    private void beforeWrite() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == data)
+            oldData = data.clone();
         }
     }
 
@@ -111,44 +162,68 @@ public class HeapPage implements Page {
      * @return the PageId associated with this page.
      */
     public HeapPageId getId() {
-    // some code goes here
-    throw new UnsupportedOperationException("implement this");
+        return pid;
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the tuple in slot i, which must be used, decoding lazily from
+     *         the page bytes
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    private Tuple getTuple(int i) {
+        Tuple t = tuples[i];
+        if (t == null) {
+            // racing threads may both build one; either will do
+            t = readTuple(i);
+            t.setRecordId(new RecordId(pid, i));
+            tuples[i] = t;
         }
+        return t;
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
-        }
+    /** @return the offset in data of field j of slot 0 */
+    int fieldBase(int j) {
+        return headerSize + td.getFieldOffset(j);
+    }
+
+    /** @return the distance in data between field j of two adjacent slots */
+    int fieldStride(int j) {
+        return td.getSize();
+    }
+
+    /**
+     * @return true if the tuple in used slot i matches p, which is
+     *         evaluated on the page's bytes without building the tuple
+     */
+    public boolean matches(int i, CompiledPredicate p) {
+        return p.matches(data, i, fieldBase, fieldStride);
+    }
+
+    /** @return a new Tuple of the values in slot i */
+    Tuple readTuple(int i) {
+        return new Tuple(td, data, headerSize + i * td.getSize());
+    }
 
+    /**
+     * @return a new Tuple of schema projected, of the fields numbered in
+     *         columns of slot i, decoded now
+     */
+    Tuple readTuple(int i, TupleDesc projected, int[] columns) {
+        Tuple t = new Tuple(projected);
+        for (int k = 0; k < columns.length; k++) {
+            int j = columns[k];
+            t.setField(k, td.getFieldType(j).parse(data, fieldBase[j] + i * fieldStride[j]));
+        }
+        t.setRecordId(new RecordId(pid, i));
         return t;
     }
 
+    /** Writes the values of t to slot i of data. */
+    void writeTuple(int i, Tuple t) {
+        int offset = headerSize + i * td.getSize();
+        for (int j = 0; j < td.numFields(); j++)
+            t.getField(j).serialize(data, offset + td.getFieldOffset(j));
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -161,64 +236,12 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return data.clone();
+    }
 
-        return baos.toByteArray();
+    // see Page.java for javadocs
+    public void getPageData(ByteBuffer dest) {
+        dest.put(data);
     }
 
     /**
@@ -231,8 +254,17 @@ public class HeapPage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.getPageSize();
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * Generates the bytes of an empty HeapPage of the given size, for files
+     * whose pages are not of the default size.
+     *
+     * @param pageSize the page size of the file, in bytes
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -243,8 +275,19 @@ public class HeapPage implements Page {
      * @param t The tuple to delete
      */
     public void deleteTuple(Tuple t) throws DbException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("tuple is not on page " + pid);
+        int slot = rid.tupleno();
+        if (!isSlotUsed(slot))
+            throw new DbException("slot " + slot + " of page " + pid + " is already empty");
+        // tuples handed out may still decode from the slot once it is reused
+        Tuple old = tuples[slot];
+        if (old != null)
+            old.decodeAll();
+        tuples[slot] = null;
+        markSlotUsed(slot, false);
+        t.setRecordId(null);
     }
 
     /**
@@ -255,8 +298,15 @@ public class HeapPage implements Page {
      * @param t The tuple to add.
      */
     public void insertTuple(Tuple t) throws DbException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("tuple does not match the schema of page " + pid);
+        int slot = firstFreeSlot();
+        if (slot < 0)
+            throw new DbException("page " + pid + " is full");
+        beforeWrite();
+        writeTuple(slot, t);
+        markSlotUsed(slot, true);
+        t.setRecordId(new RecordId(pid, slot));
     }
 
     /**
@@ -264,41 +314,101 @@ public class HeapPage implements Page {
      * that did the dirtying
      */
     public void markDirty(boolean dirty, TransactionId tid) {
-        // some code goes here
-	// not necessary for lab1|lab2
+        this.dirtier = dirty ? tid : null;
     }
 
     /**
      * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
      */
     public TransactionId isDirty() {
-        // some code goes here
-	// Not necessary for lab1
-        return null;      
+        return dirtier;
+    }
+
+    /** @return the number of empty slots on this page */
+    public int getFreeSpace() {
+        return getNumEmptySlots();
     }
 
     /**
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        // some code goes here
-        return 0;
+        int used = 0;
+        for (long word : usedSlots)
+            used += Long.bitCount(word);
+        return numSlots - used;
     }
 
     /**
      * Returns true if associated slot on this page is filled.
      */
     public boolean isSlotUsed(int i) {
-        // some code goes here
-        return false;
+        if (i < 0 || i >= numSlots)
+            return false;
+        return (usedSlots[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return the first used slot at or after from, or numSlots if there
+     *         is none
+     */
+    int nextUsedSlot(int from) {
+        if (from >= numSlots)
+            return numSlots;
+        int w = from >>> 6;
+        long word = usedSlots[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == usedSlots.length)
+                return numSlots;
+            word = usedSlots[w];
+        }
+        return w * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    /** @return the lowest empty slot, or -1 if the page is full */
+    private int firstFreeSlot() {
+        for (int w = firstFreeWord; w < usedSlots.length; w++) {
+            long free = ~usedSlots[w];
+            if (w == usedSlots.length - 1 && numSlots % 64 != 0)
+                free &= (1L << numSlots) - 1;
+            if (free != 0)
+                return w * 64 + Long.numberOfTrailingZeros(free);
+            firstFreeWord = w + 1;
+        }
+        return -1;
     }
 
     /**
      * Abstraction to fill or clear a slot on this page.
      */
     private void markSlotUsed(int i, boolean value) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        beforeWrite();
+        if (value) {
+            data[i / 8] |= 1 << (i % 8);
+            usedSlots[i >>> 6] |= 1L << i;
+        } else {
+            data[i / 8] &= ~(1 << (i % 8));
+            usedSlots[i >>> 6] &= ~(1L << i);
+            firstFreeWord = Math.min(firstFreeWord, i >>> 6);
+        }
+    }
+
+    public int readBatch(int from, TupleBatch batch, CompiledPredicate filter, int[] columns) {
+        int tupleSize = td.getSize();
+        for (int i = nextUsedSlot(from); i < numSlots; i = nextUsedSlot(i + 1)) {
+            if (filter != CompiledPredicate.TRUE && !matches(i, filter))
+                continue;
+            if (batch.isFull())
+                return i;
+            int row = batch.addRow(pid, i);
+            if (columns == null) {
+                batch.readRow(row, data, headerSize + i * tupleSize);
+            } else {
+                for (int k = 0; k < columns.length; k++)
+                    batch.read(k, row, data, fieldBase[columns[k]] + i * fieldStride[columns[k]]);
+            }
+        }
+        return -1;
     }
 
     /**
@@ -306,8 +416,44 @@ public class HeapPage implements Page {
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
     public Iterator<Tuple> iterator() {
-        // some code goes here
-        return null;
+        return iterator(CompiledPredicate.TRUE, null);
+    }
+
+    /**
+     * Evaluates filter on the page's bytes, before a tuple is built.  The
+     * narrow tuples built for columns are not kept by the page.
+     */
+    public Iterator<Tuple> iterator(final CompiledPredicate filter, final int[] columns) {
+        final TupleDesc projected = columns == null ? null : td.project(columns);
+        return new Iterator<Tuple>() {
+            private int next = advance(0);
+
+            /** @return the first used slot at or after from that matches */
+            private int advance(int from) {
+                int i = nextUsedSlot(from);
+                if (filter != CompiledPredicate.TRUE) {
+                    while (i < numSlots && !matches(i, filter))
+                        i = nextUsedSlot(i + 1);
+                }
+                return i;
+            }
+
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            public Tuple next() {
+                if (next >= numSlots)
+                    throw new NoSuchElementException();
+                Tuple t = columns == null ? getTuple(next) : readTuple(next, projected, columns);
+                next = advance(next + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
 }
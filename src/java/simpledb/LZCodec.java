@@ -0,0 +1,138 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZCodec is a small, fast LZ77 block compressor in the style of LZ4, used
+ * to compress pages on disk (see {@link CompressedFile}).
+ * <p>
+ * A compressed block is a series of sequences.  Each sequence starts with
+ * a token byte whose high four bits are the number of literal bytes and
+ * whose low four bits are the length of the match minus {@link #MIN_MATCH};
+ * a nibble of 15 is followed by further length bytes, added up until one
+ * is less than 255.  Then come the literals, and then the match: a two
+ * byte little-endian offset back into the output and the extra length
+ * bytes, if any.  The last sequence has literals only.
+ * <p>
+ * Matches are found through a table of the last position each hash of
+ * four bytes was seen at, so compression does a single pass and runs of
+ * zeroes, such as empty slots and string padding, collapse to a few bytes.
+ */
+public class LZCodec {
+    /** Shortest match worth encoding. */
+    static final int MIN_MATCH = 4;
+    /** Farthest back a match can start. */
+    static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 12;
+
+    private LZCodec() {
+    }
+
+    private static int hash(byte[] b, int p) {
+        int v = (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 | b[p + 3] << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /** @return src[off, off+len) compressed */
+    public static byte[] compress(byte[] src, int off, int len) {
+        byte[] out = new byte[len + len / 255 + 16];
+        int op = 0;
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int end = off + len;
+        int anchor = off;
+        int p = off;
+        while (p + MIN_MATCH <= end) {
+            int h = hash(src, p);
+            int ref = table[h];
+            table[h] = p;
+            if (ref < 0 || p - ref > MAX_OFFSET || src[ref] != src[p] || src[ref + 1] != src[p + 1]
+                    || src[ref + 2] != src[p + 2] || src[ref + 3] != src[p + 3]) {
+                p++;
+                continue;
+            }
+            int match = MIN_MATCH;
+            while (p + match < end && src[ref + match] == src[p + match])
+                match++;
+            op = sequence(out, op, src, anchor, p - anchor, match - MIN_MATCH);
+            out[op++] = (byte) (p - ref);
+            out[op++] = (byte) ((p - ref) >>> 8);
+            op = length(out, op, match - MIN_MATCH);
+            p += match;
+            anchor = p;
+        }
+        op = sequence(out, op, src, anchor, end - anchor, 0);
+        return Arrays.copyOf(out, op);
+    }
+
+    /** Writes a token and literals; @return the new output position */
+    private static int sequence(byte[] out, int op, byte[] src, int lit, int litLen, int matchLen) {
+        out[op++] = (byte) (Math.min(litLen, 15) << 4 | Math.min(matchLen, 15));
+        op = length(out, op, litLen);
+        System.arraycopy(src, lit, out, op, litLen);
+        return op + litLen;
+    }
+
+    /** Writes the extra length bytes of a nibble; @return the new position */
+    private static int length(byte[] out, int op, int len) {
+        if (len < 15)
+            return op;
+        for (len -= 15; len >= 255; len -= 255)
+            out[op++] = (byte) 255;
+        out[op++] = (byte) len;
+        return op;
+    }
+
+    /**
+     * Decompresses src[off, off+len) into dest, which must be exactly as
+     * long as the data that was compressed.
+     * @throws IOException if src is not a well-formed block of that length
+     */
+    public static void decompress(byte[] src, int off, int len, byte[] dest) throws IOException {
+        int ip = off;
+        int end = off + len;
+        int op = 0;
+        try {
+            for (;;) {
+                int token = src[ip++] & 0xff;
+                int litLen = token >>> 4;
+                if (litLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        litLen += b;
+                    } while (b == 255);
+                }
+                if (ip + litLen > end)
+                    throw new IOException("compressed block overruns its input");
+                System.arraycopy(src, ip, dest, op, litLen);
+                ip += litLen;
+                op += litLen;
+                if (ip == end)
+                    break;
+                int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int matchLen = token & 0xf;
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLen > dest.length)
+                    throw new IOException("compressed block has a bad match");
+                // byte by byte: the match may overlap what it copies
+                for (int i = 0; i < matchLen; i++)
+                    dest[op++] = dest[ref++];
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("compressed block is truncated");
+        }
+        if (op != dest.length)
+            throw new IOException("compressed block is " + op + " bytes, not " + dest.length);
+    }
+}
@@ -4,6 +4,8 @@ package simpledb;
 import java.io.*;
 import java.util.*;
 import java.lang.reflect.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
 LogFile implements the recovery subsystem of SimpleDb.  This class is
@@ -75,6 +77,8 @@ public class LogFile {
 
     final File logFile;
     private RandomAccessFile raf;
+    /** Page images are serialized into this; protected by this. */
+    private byte[] pageBuffer = new byte[BufferPool.getPageSize()];
     Boolean recoveryUndecided; // no call to recover() and no append to log
 
     static final int ABORT_RECORD = 1;
@@ -240,9 +244,19 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        // serialize into a buffer kept across records, grown as needed
+        ByteBuffer buf = ByteBuffer.wrap(pageBuffer);
+        for (;;) {
+            try {
+                p.getPageData(buf);
+                break;
+            } catch (BufferOverflowException e) {
+                pageBuffer = new byte[pageBuffer.length * 2];
+                buf = ByteBuffer.wrap(pageBuffer);
+            }
+        }
+        raf.writeInt(buf.position());
+        raf.write(pageBuffer, 0, buf.position());
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -0,0 +1,56 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Evicts the least recently used page.  A single large scan will push every
+ * other page out of the pool under this policy; it is kept as a baseline.
+ *
+ * @see EvictionPolicy
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    /** Resident pages, least recently used first. */
+    private final LinkedHashSet<PageId> lru = new LinkedHashSet<PageId>();
+
+    public void pageAdmitted(PageId pid) {
+        lru.remove(pid);
+        lru.add(pid);
+    }
+
+    public void pagePrefetched(PageId pid) {
+        lru.add(pid);
+    }
+
+    public void pageAccessed(PageId pid) {
+        if (lru.remove(pid))
+            lru.add(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        lru.remove(pid);
+    }
+
+    public void evictFailed(PageId pid) {
+        addFirst(lru, pid);
+    }
+
+    public PageId evict(Filter filter) {
+        for (Iterator<PageId> it = lru.iterator(); it.hasNext(); ) {
+            PageId pid = it.next();
+            if (filter.canEvict(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    /** Puts pid at the head of queue, the position evictions take from. */
+    static void addFirst(LinkedHashSet<PageId> queue, PageId pid) {
+        ArrayList<PageId> rest = new ArrayList<PageId>(queue);
+        queue.clear();
+        queue.add(pid);
+        queue.addAll(rest);
+    }
+}
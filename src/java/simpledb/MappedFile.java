@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedFile serves fixed-size pages of a file out of memory mappings of
+ * that file, so reading or writing a page is a memory copy rather than a
+ * seek and a system call.
+ * <p>
+ * The file is mapped in chunks of whole pages.  A chunk is only ever
+ * mapped up to the current end of the file; when a page past the mapped
+ * part of a chunk is requested (because the file has grown), that chunk is
+ * mapped again at the new length.  Writes past the end of the file go
+ * through the channel and extend it.
+ * <p>
+ * Page bytes are always copied in and out: callers never see the mapping
+ * itself, so a page being modified in memory cannot reach the file before
+ * it is written back explicitly.
+ *
+ * @Threadsafe
+ * @see HeapFile
+ */
+public class MappedFile implements Closeable {
+    /** Target size of each mapped chunk. */
+    private static final int CHUNK_BYTES = 1 << 26;
+
+    private final File f;
+    private final int pageSize;
+    private final int chunkPages;
+
+    private RandomAccessFile raf;       // protected by this
+    private FileChannel channel;        // protected by this
+    private FileChannel.MapMode mode;   // protected by this
+    /** Current mappings; replaced, never modified, once published. */
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    /**
+     * @param f the file to map; it is opened on first use
+     * @param pageSize the size of a page of f, in bytes
+     */
+    public MappedFile(File f, int pageSize) {
+        this.f = f;
+        this.pageSize = pageSize;
+        this.chunkPages = Math.max(1, CHUNK_BYTES / pageSize);
+    }
+
+    /** @return the size of a page of this file, in bytes */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return a copy of page pageNo
+     * @throws IOException if the page is past the end of the file
+     */
+    public byte[] read(int pageNo) throws IOException {
+        ByteBuffer page = page(pageNo);
+        if (page == null)
+            throw new IOException("page " + pageNo + " is past the end of " + f);
+        byte[] data = new byte[pageSize];
+        page.get(data);
+        return data;
+    }
+
+    /**
+     * Copies data over page pageNo, extending the file if the page is past
+     * its end.
+     * @throws IllegalArgumentException if data is not exactly one page
+     */
+    public void write(int pageNo, byte[] data) throws IOException {
+        if (data.length != pageSize)
+            throw new IllegalArgumentException("page of " + data.length
+                    + " bytes written to a file of " + pageSize + " byte pages");
+        ByteBuffer page = page(pageNo);
+        if (page != null) {
+            page.put(data);
+            return;
+        }
+        synchronized (this) {
+            open();
+            if (mode != FileChannel.MapMode.READ_WRITE)
+                throw new IOException(f + " is read-only");
+            channel.write(ByteBuffer.wrap(data), (long) pageNo * pageSize);
+        }
+    }
+
+    /** Forces every write made through the mappings or past the end of
+     * the file to disk. */
+    public void force() throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            if (chunk != null)
+                chunk.force();
+        }
+        synchronized (this) {
+            if (channel != null)
+                channel.force(true);
+        }
+    }
+
+    /**
+     * Closes the file and drops the mappings, which the JVM unmaps once
+     * they are garbage collected.  Writes made through the mappings reach
+     * the file even if they are not forced.  The file is opened and mapped
+     * again if it is used afterwards.
+     */
+    public synchronized void close() throws IOException {
+        chunks = new MappedByteBuffer[0];
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * @return a buffer over page pageNo of the mapping, or null if the page
+     *   is past the end of the file.
+     */
+    private ByteBuffer page(int pageNo) throws IOException {
+        if (pageNo < 0)
+            throw new IllegalArgumentException("no page " + pageNo);
+        int c = pageNo / chunkPages;
+        int offset = (pageNo % chunkPages) * pageSize;
+        MappedByteBuffer[] mapped = chunks;
+        MappedByteBuffer chunk = c < mapped.length ? mapped[c] : null;
+        if (chunk == null || chunk.capacity() < offset + pageSize) {
+            chunk = remap(c, offset + pageSize);
+            if (chunk == null)
+                return null;
+        }
+        // duplicate so that concurrent callers do not share a position
+        ByteBuffer page = chunk.duplicate();
+        page.limit(offset + pageSize);
+        page.position(offset);
+        return page;
+    }
+
+    /**
+     * Maps chunk c up to the current end of the file.
+     * @return the new mapping, or null if it would be shorter than needed.
+     */
+    private synchronized MappedByteBuffer remap(int c, int needed) throws IOException {
+        open();
+        long start = (long) c * chunkPages * pageSize;
+        long length = Math.min((long) chunkPages * pageSize, channel.size() - start);
+        // only whole pages are mapped
+        length -= length % pageSize;
+        if (length < needed)
+            return null;
+        MappedByteBuffer[] mapped = chunks;
+        if (c < mapped.length && mapped[c] != null && mapped[c].capacity() >= needed)
+            return mapped[c]; // remapped by another thread meanwhile
+        MappedByteBuffer chunk = channel.map(mode, start, length);
+        MappedByteBuffer[] grown = java.util.Arrays.copyOf(mapped, Math.max(mapped.length, c + 1));
+        grown[c] = chunk;
+        chunks = grown;
+        return chunk;
+    }
+
+    private void open() throws IOException {
+        if (channel != null)
+            return;
+        boolean writable = !f.exists() || f.canWrite();
+        raf = new RandomAccessFile(f, writable ? "rw" : "r");
+        channel = raf.getChannel();
+        mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+    }
+}
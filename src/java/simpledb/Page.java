@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -46,6 +48,16 @@ public interface Page {
 
     public byte[] getPageData();
 
+    /**
+     * Copies the bytes {@link #getPageData()} would return into dest,
+     * starting at its position and advancing it, so that callers with a
+     * buffer of their own can serialize the page without allocating.
+     *
+     * @throws java.nio.BufferOverflowException if the page does not fit in
+     *         the remaining bytes of dest
+     */
+    public void getPageData(ByteBuffer dest);
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
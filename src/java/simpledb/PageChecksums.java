@@ -0,0 +1,141 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * PageChecksums keeps a CRC32C checksum of each page of a HeapFile, so that
+ * a page that was torn by a crash in the middle of its write, or corrupted
+ * on disk, is noticed when it is read rather than decoded as garbage.
+ * <p>
+ * The checksums are kept in a side file next to the heap file rather than
+ * in the pages themselves, so that every page layout keeps the whole page
+ * and files written by HeapFileEncoder stay readable.  Since the side file
+ * and the page cannot be written at once, a page is stamped, and the side
+ * file written and forced, before the heap file writes the page; until the
+ * heap file is next forced the page may be on disk as it was or as it was
+ * written, so each entry keeps the page's settled checksum, from the last
+ * force, along with the new one, and either is accepted (see
+ * {@link #settle}).  A page with no checksum, e.g. one never written since
+ * the side file was created, is not checked.
+ *
+ * @Threadsafe
+ * @see HeapFile#readPage
+ * @see Scrubber
+ */
+public class PageChecksums extends SideFile {
+    /** Stored for pages that have no checksum. */
+    public static final int NONE = 0;
+
+    private int[] sums = new int[0];           // protected by this
+    /** The checksum of each page as of the last settle; protected by this. */
+    private int[] settled = new int[0];
+
+    /**
+     * @param file the side file holding the checksums; created when first
+     *        written
+     */
+    public PageChecksums(File file) {
+        super(file, 8);
+    }
+
+    /** @return the checksum of data[off, off+len), never NONE */
+    public static int checksum(byte[] data, int off, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, off, len);
+        return nonZero((int) crc.getValue());
+    }
+
+    /** @return the checksum of the remaining bytes of buf, never NONE */
+    public static int checksum(ByteBuffer buf) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf);
+        return nonZero((int) crc.getValue());
+    }
+
+    private static int nonZero(int sum) {
+        return sum == NONE ? 1 : sum;
+    }
+
+    /** @return the checksum recorded for page pageNo, or NONE */
+    public synchronized int getChecksum(int pageNo) {
+        load();
+        return pageNo < size() ? sums[pageNo] : NONE;
+    }
+
+    /**
+     * Records sum as the checksum of page pageNo, which is about to be
+     * written.  Its settled checksum is accepted too, until the next settle.
+     */
+    public synchronized void stamp(int pageNo, int sum) {
+        load();
+        if (pageNo < size() && sums[pageNo] == sum)
+            return;
+        grow(pageNo);
+        sums[pageNo] = sum;
+        dirty(pageNo);
+    }
+
+    /**
+     * @return true if page pageNo has been stamped since the last settle,
+     *         and so may be on disk as it was before or after its write
+     */
+    public synchronized boolean isPending(int pageNo) {
+        load();
+        return pageNo < size() && sums[pageNo] != settled[pageNo];
+    }
+
+    /**
+     * @return false if page pageNo has a checksum and data matches neither
+     *         it nor its settled checksum, true otherwise
+     */
+    public boolean verify(int pageNo, byte[] data) {
+        int sum;
+        int prior;
+        synchronized (this) {
+            load();
+            if (pageNo >= size())
+                return true;
+            sum = sums[pageNo];
+            prior = settled[pageNo];
+        }
+        // a page not settled before it was stamped may be anything
+        if (sum == NONE || prior == NONE)
+            return true;
+        int actual = checksum(data, 0, data.length);
+        return actual == sum || actual == prior;
+    }
+
+    /**
+     * Records that the pages stamped so far are on disk as they were
+     * written, so that only their new checksums are accepted from now on.
+     * The entries changed are saved by the next write.
+     */
+    public synchronized void settle() {
+        load();
+        for (int i = 0; i < size(); i++) {
+            if (settled[i] != sums[i]) {
+                settled[i] = sums[i];
+                dirty(i);
+            }
+        }
+    }
+
+    // see SideFile.java for javadocs
+    protected void allocate(int capacity) {
+        sums = Arrays.copyOf(sums, capacity);
+        settled = Arrays.copyOf(settled, capacity);
+    }
+
+    protected void encode(int i, ByteBuffer buf) {
+        buf.putInt(sums[i]);
+        buf.putInt(settled[i]);
+    }
+
+    protected void decode(int i, ByteBuffer buf) {
+        sums[i] = buf.getInt();
+        settled[i] = buf.getInt();
+    }
+}
@@ -0,0 +1,300 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelSeqScan is a sequential scan that reads a table with several
+ * threads at once.  The pages of a HeapFile are split into morsels of
+ * {@link #MORSEL_PAGES} consecutive pages; workers running on a
+ * ForkJoinPool claim morsels one at a time until none are left, so a worker
+ * that gets fast (cached) pages simply claims more of them.  Each worker
+ * hands the tuples of a page to the consumer through a bounded queue, which
+ * keeps workers from running arbitrarily far ahead of the operator above.
+ * A worker waiting for room in the queue tells its pool it is blocked, so
+ * that the pool can run other tasks meanwhile; otherwise a scan nested in
+ * the consumer of another, e.g. the inner side of a join, could find every
+ * thread of a shared pool taken by the outer scan's waiting workers.
+ * <p>
+ * Like SeqScan, tuples are returned in no particular order; unlike it, the
+ * order differs from one run to the next.  A table that is not a HeapFile
+ * is scanned by a single worker through its DbFileIterator.
+ *
+ * @see SeqScan
+ */
+public class ParallelSeqScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of consecutive pages a worker claims at a time. */
+    public static final int MORSEL_PAGES = 16;
+    /** Page batches the queue holds for each worker. */
+    private static final int BATCHES_PER_WORKER = 4;
+    /** How long a blocked worker waits before checking for cancellation. */
+    private static final long OFFER_MILLIS = 10;
+    /** Put on the queue once, by the first worker to fail or the last to finish. */
+    private static final List<Tuple> END = Collections.emptyList();
+
+    private static ForkJoinPool sharedPool; // protected by ParallelSeqScan.class
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final int parallelism;
+    private transient ForkJoinPool pool;
+
+    private transient Scan scan;
+    private transient Iterator<Tuple> batch;
+
+    /**
+     * Creates a parallel scan of the specified table, with one worker per
+     * processor, on a pool shared by all parallel scans.
+     *
+     * @param tid the transaction this scan is running as a part of
+     * @param tableid the table to scan
+     * @param tableAlias the alias of this table, as for SeqScan
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Creates a parallel scan of the specified table.
+     *
+     * @param tid the transaction this scan is running as a part of
+     * @param tableid the table to scan
+     * @param tableAlias the alias of this table, as for SeqScan
+     * @param parallelism the number of workers to scan with
+     * @param pool the pool to run the workers on, or null for the pool
+     *        shared by all parallel scans
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias,
+                           int parallelism, ForkJoinPool pool) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.parallelism = parallelism;
+        this.pool = pool;
+    }
+
+    /** @return the pool parallel scans run on unless given another */
+    static synchronized ForkJoinPool sharedPool() {
+        if (sharedPool == null)
+            sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sharedPool;
+    }
+
+    /** @return the table name of the table the operator scans */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    /** @return the number of workers this scan uses */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (scan != null)
+            scan.cancel();
+        if (pool == null)
+            pool = sharedPool();
+        scan = new Scan(Database.getCatalog().getDatabaseFile(tableid));
+        batch = null;
+    }
+
+    /**
+     * Returns the TupleDesc of the table, with field names prefixed with
+     * the tableAlias, as SeqScan does.
+     */
+    public TupleDesc getTupleDesc() {
+        return SeqScan.aliased(Database.getCatalog().getTupleDesc(tableid), tableAlias);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (scan == null)
+            throw new IllegalStateException("ParallelSeqScan is not open");
+        while (batch == null || !batch.hasNext()) {
+            List<Tuple> next = scan.take();
+            if (next == END)
+                return false;
+            batch = next.iterator();
+        }
+        return true;
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return batch.next();
+    }
+
+    public void close() {
+        if (scan != null)
+            scan.cancel();
+        scan = null;
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (scan == null)
+            throw new IllegalStateException("ParallelSeqScan is not open");
+        open();
+    }
+
+    /**
+     * One run of the scan: the workers, the queue they fill, and the first
+     * error any of them hit.
+     */
+    private class Scan {
+        private final BlockingQueue<List<Tuple>> queue;
+        private final AtomicInteger nextMorsel = new AtomicInteger();
+        private final AtomicInteger running;
+        /** Set by the one worker that queues END. */
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private final List<Future<?>> workers = new ArrayList<Future<?>>();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private boolean done;
+
+        Scan(final DbFile file) {
+            int workerCount = file instanceof HeapFile ? parallelism : 1;
+            queue = new ArrayBlockingQueue<List<Tuple>>(workerCount * BATCHES_PER_WORKER + 1);
+            running = new AtomicInteger(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(pool.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            if (file instanceof HeapFile)
+                                scanMorsels((HeapFile) file);
+                            else
+                                scanFile(file);
+                        } catch (Throwable e) {
+                            // reported by take, on the consumer's thread
+                            if (error == null)
+                                error = e;
+                        } finally {
+                            // the first to fail or the last to finish ends
+                            // the scan; a second END could wait for room forever
+                            if ((running.decrementAndGet() == 0 || error != null)
+                                    && ended.compareAndSet(false, true))
+                                offer(END);
+                        }
+                    }
+                }));
+            }
+        }
+
+        /** Claims and scans morsels of f until there are none left. */
+        private void scanMorsels(HeapFile f) throws DbException, TransactionAbortedException {
+            int numPages = f.numPages();
+            BufferPool bp = Database.getBufferPool();
+            while (!cancelled && error == null) {
+                int from = nextMorsel.getAndIncrement() * MORSEL_PAGES;
+                if (from >= numPages)
+                    return;
+                int to = Math.min(numPages, from + MORSEL_PAGES);
+                for (int p = from; p < to && !cancelled; p++) {
+                    HeapPageId pid = new HeapPageId(f.getId(), p);
+                    TuplePage page = (TuplePage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+                    List<Tuple> tuples = new ArrayList<Tuple>();
+                    for (Iterator<Tuple> it = page.iterator(); it.hasNext(); )
+                        tuples.add(it.next());
+                    if (!tuples.isEmpty())
+                        offer(tuples);
+                }
+            }
+        }
+
+        /** Scans all of f, a page's worth of tuples at a time. */
+        private void scanFile(DbFile f) throws DbException, TransactionAbortedException {
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            try {
+                List<Tuple> tuples = new ArrayList<Tuple>();
+                while (!cancelled && it.hasNext()) {
+                    tuples.add(it.next());
+                    if (tuples.size() == 256) {
+                        offer(tuples);
+                        tuples = new ArrayList<Tuple>();
+                    }
+                }
+                if (!tuples.isEmpty())
+                    offer(tuples);
+            } finally {
+                it.close();
+            }
+        }
+
+        /**
+         * Queues tuples, waiting for room unless the scan is cancelled.  The
+         * wait is a managed block, so the pool may add a thread while it
+         * lasts.
+         */
+        private void offer(final List<Tuple> tuples) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private boolean queued;
+
+                    public boolean block() throws InterruptedException {
+                        while (!queued && !cancelled)
+                            queued = queue.offer(tuples, OFFER_MILLIS, TimeUnit.MILLISECONDS);
+                        return true;
+                    }
+
+                    public boolean isReleasable() {
+                        if (!queued && !cancelled)
+                            queued = queue.offer(tuples);
+                        return queued || cancelled;
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** @return the next batch of tuples, or END once all are returned */
+        List<Tuple> take() throws DbException, TransactionAbortedException {
+            if (done)
+                return END;
+            List<Tuple> next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new DbException("parallel scan interrupted");
+            }
+            if (next == END) {
+                done = true;
+                Throwable e = error;
+                if (e instanceof Error)
+                    throw (Error) e;
+                if (e instanceof TransactionAbortedException)
+                    throw (TransactionAbortedException) e;
+                if (e instanceof DbException)
+                    throw (DbException) e;
+                if (e != null)
+                    throw new DbException("parallel scan failed: " + e);
+            }
+            return next;
+        }
+
+        /** Stops the workers and drops whatever they queued. */
+        void cancel() {
+            cancelled = true;
+            for (Future<?> w : workers)
+                w.cancel(false);
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * PaxPage is a page of a HeapFile in the {@link HeapFile.Layout#PAX} layout.
+ * It has the same header and number of slots as a {@link HeapPage}, but
+ * stores the tuples column by column: the values of field 0 of every slot,
+ * then those of field 1, and so on.  Slot i of field j is at
+ * <p>
+ *      header size + numSlots * (offset of field j in a tuple) + i * (size of field j)
+ * <p>
+ * so that an operator reading a few fields of a wide table touches only
+ * their columns, each a contiguous array of fixed-size values (see
+ * {@link #columnOffset} and {@link #getInt}).  RecordIds are slot numbers
+ * as on a HeapPage.
+ *
+ * @see HeapFile
+ */
+public class PaxPage extends HeapPage {
+
+    /**
+     * Create a PaxPage from the bytes of a page, in the format described
+     * above.  The page keeps data rather than a copy of it, so the caller
+     * must not change the array afterwards.
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+    }
+
+    /** @return the offset in the page of slot 0 of field j */
+    int columnOffset(int j) {
+        return headerSize + numSlots * td.getFieldOffset(j);
+    }
+
+    int fieldBase(int j) {
+        return columnOffset(j);
+    }
+
+    int fieldStride(int j) {
+        return td.getFieldType(j).getLen();
+    }
+
+    /**
+     * @return the value of int field j in slot i, read straight from the
+     *         column; the slot should be used
+     */
+    public int getInt(int j, int i) {
+        return Type.readInt(data, columnOffset(j) + i * Type.INT_TYPE.getLen());
+    }
+
+    /** @return the value of field j in slot i; the slot should be used */
+    public Field getField(int j, int i) {
+        Type type = td.getFieldType(j);
+        return type.parse(data, columnOffset(j) + i * type.getLen());
+    }
+
+    /** Adds the slots first, then copies their values a column at a time. */
+    public int readBatch(int from, TupleBatch batch, CompiledPredicate filter, int[] columns) {
+        int first = batch.size();
+        int i = nextUsedSlot(from);
+        for (; i < numSlots && !batch.isFull(); i = nextUsedSlot(i + 1)) {
+            if (filter == CompiledPredicate.TRUE || matches(i, filter))
+                batch.addRow(pid, i);
+        }
+        int end = batch.size();
+        int n = columns == null ? td.numFields() : columns.length;
+        for (int k = 0; k < n; k++) {
+            int j = columns == null ? k : columns[k];
+            int column = columnOffset(j);
+            int len = td.getFieldType(j).getLen();
+            for (int row = first; row < end; row++)
+                batch.read(k, row, data, column + batch.getSlot(row) * len);
+        }
+        return i < numSlots ? i : -1;
+    }
+
+    Tuple readTuple(int i) {
+        Tuple t = new Tuple(td);
+        for (int j = 0; j < td.numFields(); j++)
+            t.setField(j, getField(j, i));
+        return t;
+    }
+
+    void writeTuple(int i, Tuple t) {
+        for (int j = 0; j < td.numFields(); j++)
+            t.getField(j).serialize(data, columnOffset(j) + i * td.getFieldType(j).getLen());
+    }
+
+    HeapPage newPage(byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+}
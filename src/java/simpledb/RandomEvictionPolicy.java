@@ -0,0 +1,64 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Evicts a resident page chosen uniformly at random.
+ *
+ * @see EvictionPolicy
+ */
+public class RandomEvictionPolicy implements EvictionPolicy {
+
+    private final Random random = new Random();
+    /** Resident pages, in no particular order. */
+    private final ArrayList<PageId> resident = new ArrayList<PageId>();
+    /** Position of each resident page in resident, for O(1) removal. */
+    private final HashMap<PageId, Integer> positions = new HashMap<PageId, Integer>();
+
+    public void pageAdmitted(PageId pid) {
+        if (positions.containsKey(pid))
+            return;
+        positions.put(pid, resident.size());
+        resident.add(pid);
+    }
+
+    public void pagePrefetched(PageId pid) {
+        pageAdmitted(pid);
+    }
+
+    public void pageAccessed(PageId pid) {
+        // access history is irrelevant to a random choice
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer pos = positions.remove(pid);
+        if (pos == null)
+            return;
+        // move the last entry into the hole
+        PageId last = resident.remove(resident.size() - 1);
+        if (pos < resident.size()) {
+            resident.set(pos, last);
+            positions.put(last, pos);
+        }
+    }
+
+    public void evictFailed(PageId pid) {
+        pageAdmitted(pid);
+    }
+
+    public PageId evict(Filter filter) {
+        int n = resident.size();
+        if (n == 0)
+            return null;
+        // probe from a random position so pinned pages are skipped fairly
+        int start = random.nextInt(n);
+        for (int i = 0; i < n; i++) {
+            PageId pid = resident.get((start + i) % n);
+            if (filter.canEvict(pid)) {
+                pageRemoved(pid);
+                return pid;
+            }
+        }
+        return null;
+    }
+}
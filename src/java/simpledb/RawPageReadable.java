@@ -0,0 +1,33 @@
+package simpledb;
+
+/**
+ * Optional interface for DbFiles whose pages can be read as bytes and
+ * decoded separately.  An off-heap BufferPool reads the bytes of such a
+ * file's pages straight into its {@link FrameArena} and builds a Page only
+ * when one is requested, so a prefetched page is never built on the heap,
+ * and a page read on demand is not serialized again to fill its frame.
+ * Files that do not implement it are read with {@link DbFile#readPage}.
+ *
+ * @see BufferPool
+ */
+public interface RawPageReadable {
+    /**
+     * Reads the bytes of a page, checked as {@link DbFile#readPage} checks
+     * them, without decoding them.
+     *
+     * @param pid the page to read
+     * @return the bytes of the page, as newPage takes them
+     * @throws IllegalArgumentException if the page does not exist or cannot
+     *         be read, as readPage does
+     * @throws DbException if the page is found to be corrupt, as readPage does
+     */
+    public byte[] readPageBytes(PageId pid) throws DbException;
+
+    /**
+     * @param pid the page the bytes are of
+     * @param data bytes returned by readPageBytes, or by getPageData of a
+     *        page of this file
+     * @return the page held in data
+     */
+    public Page newPage(PageId pid, byte[] data);
+}
@@ -0,0 +1,126 @@
+package simpledb;
+
+/**
+ * ReadAhead watches the pages one reader requests from a file and, once
+ * the requests look sequential, asks the BufferPool to prefetch the pages
+ * just ahead of the reader so that their I/O overlaps with the reader's
+ * processing of the pages it already has.
+ * <p>
+ * The distance read ahead (the window) adapts to how useful prefetching
+ * turns out to be.  It starts small and doubles every time the reader
+ * consumes half of it, up to a quarter of the table's pool, so short scans do not
+ * drag in pages they never use.  If a prefetched page has left the pool
+ * again by the time the reader gets to it, the prefetch was wasted (the
+ * pool is too contended to hold that much ahead of the reader) and the
+ * window is halved.  A request that breaks the sequence starts over.
+ * <p>
+ * A reader that passes over pages, e.g. those a filtered scan rules out by
+ * their zone map, gives a {@link PageFilter} saying which pages it will
+ * read, so that only those are prefetched, and reports the pages it passes
+ * over so that they do not break the sequence.
+ * <p>
+ * A ReadAhead belongs to a single reader and is not thread safe.
+ *
+ * @see BufferPool#prefetchPage
+ */
+public class ReadAhead {
+    /** Window used when a sequential run is first detected. */
+    public static final int MIN_WINDOW = 4;
+    /** Upper bound on the window, regardless of the pool size. */
+    public static final int MAX_WINDOW = 64;
+    /** Consecutive page requests that make a run sequential. */
+    private static final int SEQUENTIAL_TRIGGER = 2;
+
+    /** Tells a ReadAhead which pages its reader is going to request. */
+    public interface PageFilter {
+        /** @return false if the reader will pass over page pgNo */
+        public boolean wanted(int pgNo);
+    }
+
+    private final BufferPool pool;
+    private final int tableId;
+    private final int numPages;
+    private final int maxWindow;
+    private final PageFilter filter;        // null if every page is wanted
+
+    private int lastPage = -1;
+    private int run = 0;
+    private int window = MIN_WINDOW;
+    /** Pages of the current run below this have been prefetched. */
+    private int prefetchedTo = 0;
+
+    /**
+     * @param pool the pool to prefetch into
+     * @param tableId the id of the file being read
+     * @param numPages the number of pages in the file; nothing at or beyond
+     *   this page number is prefetched
+     */
+    public ReadAhead(BufferPool pool, int tableId, int numPages) {
+        this(pool, tableId, numPages, null);
+    }
+
+    /**
+     * @param pool the pool to prefetch into
+     * @param tableId the id of the file being read
+     * @param numPages the number of pages in the file; nothing at or beyond
+     *   this page number is prefetched
+     * @param filter the pages the reader will request, or null for all
+     */
+    public ReadAhead(BufferPool pool, int tableId, int numPages, PageFilter filter) {
+        this.pool = pool;
+        this.tableId = tableId;
+        this.numPages = numPages;
+        this.maxWindow = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, pool.capacityFor(tableId) / 4));
+        this.filter = filter;
+    }
+
+    /** @return the current read-ahead distance, in pages */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Records that the reader is about to request page pgNo, and issues
+     * prefetches if the reader is scanning.
+     *
+     * @param pgNo the page number about to be requested
+     */
+    public void pageRequested(int pgNo) {
+        if (pgNo != lastPage + 1 || lastPage < 0) {
+            // a new run: forget what was prefetched for the old one
+            run = 0;
+            window = MIN_WINDOW;
+            prefetchedTo = pgNo + 1;
+        } else if (pgNo < prefetchedTo) {
+            PageId pid = new HeapPageId(tableId, pgNo);
+            if (!pool.isResident(pid) && !pool.isPrefetching(pid))
+                window = Math.max(MIN_WINDOW, window / 2);
+        }
+        lastPage = pgNo;
+        run++;
+
+        if (run < SEQUENTIAL_TRIGGER || prefetchedTo - pgNo > window / 2)
+            return;
+        if (prefetchedTo > pgNo + 1)
+            // the previous window is half consumed: the reader keeps going
+            window = Math.min(maxWindow, window * 2);
+        int from = Math.max(prefetchedTo, pgNo + 1);
+        int to = Math.min(numPages, pgNo + 1 + window);
+        for (int p = from; p < to; p++) {
+            if (filter == null || filter.wanted(p))
+                pool.prefetchPage(new HeapPageId(tableId, p));
+        }
+        prefetchedTo = Math.max(prefetchedTo, to);
+    }
+
+    /**
+     * Records that the reader passed over page pgNo without requesting it;
+     * the sequence it was reading in goes on past it.
+     *
+     * @param pgNo the page number passed over
+     */
+    public void pageSkipped(int pgNo) {
+        if (lastPage >= 0 && pgNo == lastPage + 1)
+            lastPage = pgNo;
+    }
+}
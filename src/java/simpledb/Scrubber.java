@@ -0,0 +1,113 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Scrubber checks the pages of every HeapFile in the catalog against their
+ * checksums (see {@link PageChecksums}), in a background thread, so that a
+ * corrupt page is found even if no query reads it.  Pages are read from
+ * disk, not through the BufferPool, so scrubbing does not disturb the pages
+ * cached there.
+ * <p>
+ * A page that fails is checked again before it is reported, in case it was
+ * being written as it was read.  Pages found corrupt are logged and kept in
+ * {@link #getCorruptPages}.
+ *
+ * @Threadsafe
+ * @see HeapFile#verifyPage
+ */
+public class Scrubber {
+    private final long interval;
+    private final Set<HeapPageId> corrupt = Collections.synchronizedSet(new LinkedHashSet<HeapPageId>());
+    private Thread thread; // protected by this
+
+    /**
+     * @param interval the time, in milliseconds, between the end of one
+     *        pass over the catalog and the start of the next
+     */
+    public Scrubber(long interval) {
+        this.interval = interval;
+    }
+
+    /** Starts scrubbing in a background thread, if not started already. */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                runScrubber();
+            }
+        }, "HeapFile scrubber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops the background thread after the page it is checking. */
+    public synchronized void stop() {
+        if (thread != null)
+            thread.interrupt();
+        thread = null;
+    }
+
+    /** @return the pages found corrupt so far */
+    public Set<HeapPageId> getCorruptPages() {
+        synchronized (corrupt) {
+            return new LinkedHashSet<HeapPageId>(corrupt);
+        }
+    }
+
+    /**
+     * Checks every page of every HeapFile in the catalog once.
+     * @return the pages found corrupt in this pass
+     */
+    public List<HeapPageId> scrub() {
+        List<HeapPageId> found = new ArrayList<HeapPageId>();
+        Catalog catalog = Database.getCatalog();
+        for (Iterator<Integer> it = catalog.tableIdIterator(); it.hasNext(); ) {
+            DbFile file;
+            try {
+                file = catalog.getDatabaseFile(it.next());
+            } catch (NoSuchElementException e) {
+                continue; // dropped meanwhile
+            }
+            if (!(file instanceof HeapFile))
+                continue;
+            HeapFile hf = (HeapFile) file;
+            int numPages = hf.numPages();
+            for (int p = 0; p < numPages; p++) {
+                if (Thread.currentThread().isInterrupted())
+                    return found;
+                if (!check(hf, p) && !check(hf, p)) {
+                    HeapPageId pid = new HeapPageId(hf.getId(), p);
+                    Debug.log("scrubber: page %d of %s is corrupt", p, hf.getFile());
+                    found.add(pid);
+                    corrupt.add(pid);
+                }
+            }
+        }
+        return found;
+    }
+
+    /** @return true if page p of hf matches its checksum */
+    private static boolean check(HeapFile hf, int p) {
+        try {
+            return hf.verifyPage(p);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Body of the background thread. */
+    private void runScrubber() {
+        Thread self = Thread.currentThread();
+        while (!self.isInterrupted()) {
+            scrub();
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -6,11 +6,29 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * SeqScan is also a BatchIterator: nextBatch returns the tuples of a
+ * HeapFile column by column, decoded straight from its pages.  A scan
+ * should be read with either next or nextBatch between rewinds, not both.
+ * <p>
+ * A scan can be given a filter, which is pushed down into the HeapFile:
+ * it is evaluated on the bytes of each page, and tuples that fail it are
+ * never built.  It can also be given the columns to return, in which case
+ * its tuples hold just those fields and nothing else is decoded.
  */
-public class SeqScan implements DbIterator {
+public class SeqScan implements DbIterator, BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
+    private final TransactionId tid;
+    private final CompiledPredicate filter;
+    private final int[] columns; // null for every field
+    private int tableid;
+    private String tableAlias;
+    private transient DbFileIterator it;
+    private transient BatchIterator batches; // null unless a HeapFile
+    private transient TupleBatch batch;      // for other files
+
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -28,7 +46,48 @@ public class SeqScan implements DbIterator {
      *            tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
-        // some code goes here
+        this(tid, tableid, tableAlias, CompiledPredicate.TRUE);
+    }
+
+    /**
+     * Creates a sequential scan that returns only the tuples of the table
+     * that match filter, e.g. {@code p.compile()} for a Predicate p, or
+     * {@link CompiledPredicate#and} of several.
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, CompiledPredicate filter) {
+        this(tid, tableid, tableAlias, filter, null);
+    }
+
+    /**
+     * Creates a sequential scan that returns, of the tuples of the table
+     * that match filter, only the fields numbered in columns, in that
+     * order.  filter refers to the fields of the table, whether they are
+     * returned or not.
+     *
+     * @param columns the fields of the table to return, or null for all
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, CompiledPredicate filter,
+                   int[] columns) {
+        this.tid = tid;
+        this.filter = filter;
+        this.columns = columns == null ? null : columns.clone();
+        reset(tableid, tableAlias);
+    }
+
+    /** @return the filter tuples are returned only if they match */
+    public CompiledPredicate getFilter() {
+        return filter;
+    }
+
+    /** @return the fields of the table this scan returns, or null for all */
+    public int[] getColumns() {
+        return columns == null ? null : columns.clone();
+    }
+
+    /** @return the TupleDesc of the tuples this scan returns, unaliased */
+    private TupleDesc tableDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        return columns == null ? td : td.project(columns);
     }
 
     /**
@@ -37,7 +96,7 @@ public class SeqScan implements DbIterator {
      *       be the actual name of the table in the catalog of the database
      * */
     public String getTableName() {
-        return null;
+        return Database.getCatalog().getTableName(tableid);
     }
 
     /**
@@ -45,8 +104,7 @@ public class SeqScan implements DbIterator {
      * */
     public String getAlias()
     {
-        // some code goes here
-        return null;
+        return tableAlias;
     }
 
     /**
@@ -62,7 +120,10 @@ public class SeqScan implements DbIterator {
      *            tableAlias.null, or null.null).
      */
     public void reset(int tableid, String tableAlias) {
-        // some code goes here
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.it = null;
+        this.batches = null;
     }
 
     public SeqScan(TransactionId tid, int tableid) {
@@ -70,7 +131,18 @@ public class SeqScan implements DbIterator {
     }
 
     public void open() throws DbException, TransactionAbortedException {
-        // some code goes here
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof HeapFile) {
+            HeapFile hf = (HeapFile) file;
+            it = hf.iterator(tid, filter, columns);
+            batches = hf.batchIterator(tid, TupleBatch.DEFAULT_CAPACITY, filter, columns);
+            batches.open();
+        } else if (filter != CompiledPredicate.TRUE || columns != null) {
+            it = new FilteredIterator(file.iterator(tid), filter, columns, tableDesc());
+        } else {
+            it = file.iterator(tid);
+        }
+        it.open();
     }
 
     /**
@@ -84,27 +156,108 @@ public class SeqScan implements DbIterator {
      *         prefixed with the tableAlias string from the constructor.
      */
     public TupleDesc getTupleDesc() {
-        // some code goes here
-        return null;
+        return aliased(tableDesc(), tableAlias);
+    }
+
+    /** @return td with each field name prefixed with "tableAlias." */
+    static TupleDesc aliased(TupleDesc td, String tableAlias) {
+        int n = td.numFields();
+        Type[] types = new Type[n];
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tableAlias + "." + td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
     }
 
     public boolean hasNext() throws TransactionAbortedException, DbException {
-        // some code goes here
-        return false;
+        if (it == null)
+            throw new IllegalStateException("SeqScan is not open");
+        return it.hasNext();
     }
 
     public Tuple next() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        // some code goes here
-        return null;
+        if (it == null)
+            throw new IllegalStateException("SeqScan is not open");
+        return it.next();
+    }
+
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (it == null)
+            throw new IllegalStateException("SeqScan is not open");
+        if (batches != null)
+            return batches.nextBatch();
+        if (batch == null)
+            batch = new TupleBatch(tableDesc(), TupleBatch.DEFAULT_CAPACITY);
+        batch.clear();
+        while (!batch.isFull() && it.hasNext())
+            batch.addTuple(it.next());
+        return batch.size() == 0 ? null : batch;
     }
 
     public void close() {
-        // some code goes here
+        if (it != null)
+            it.close();
+        if (batches != null)
+            batches.close();
+        it = null;
+        batches = null;
     }
 
     public void rewind() throws DbException, NoSuchElementException,
             TransactionAbortedException {
-        // some code goes here
+        if (it == null)
+            throw new IllegalStateException("SeqScan is not open");
+        it.rewind();
+        if (batches != null)
+            batches.rewind();
+    }
+
+    /** Filters and projects the tuples of a DbFile that cannot itself. */
+    private static class FilteredIterator extends AbstractDbFileIterator {
+        private final DbFileIterator child;
+        private final CompiledPredicate filter;
+        private final int[] columns;
+        private final TupleDesc projected;
+
+        FilteredIterator(DbFileIterator child, CompiledPredicate filter, int[] columns,
+                         TupleDesc projected) {
+            this.child = child;
+            this.filter = filter;
+            this.columns = columns;
+            this.projected = projected;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                if (!filter.matches(t))
+                    continue;
+                if (columns == null)
+                    return t;
+                Tuple narrow = new Tuple(projected);
+                for (int k = 0; k < columns.length; k++)
+                    narrow.setField(k, t.getField(columns[k]));
+                narrow.setRecordId(t.getRecordId());
+                return narrow;
+            }
+            return null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            super.close();
+            child.rewind();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
     }
 }
@@ -0,0 +1,168 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A side file kept next to a HeapFile, holding one fixed-size entry per
+ * page of the heap file, e.g. its free space ({@link FreeSpaceMap}) or its
+ * checksum ({@link PageChecksums}).  Subclasses keep the entries in memory,
+ * in whatever arrays suit them, and say how one is encoded; SideFile reads
+ * the file on first use and writes back the entries changed since the last
+ * write, as one range, along with any entries between the end of the file
+ * and that range.
+ * <p>
+ * Subclasses call {@link #load} at the start of every access, and
+ * {@link #grow} and {@link #dirty} when they change an entry, all while
+ * holding the monitor of this object.
+ *
+ * @Threadsafe
+ */
+public abstract class SideFile {
+    /** Entries made room for when the file is first loaded. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final File file;
+    private final int entryBytes;
+
+    private boolean loaded;                    // protected by this
+    private int capacity;                      // protected by this
+    private int size;                          // entries in use; protected by this
+    private int stored;                        // entries in the file; protected by this
+    private int dirtyFrom = Integer.MAX_VALUE; // protected by this
+    private int dirtyTo = -1;                  // protected by this
+
+    /**
+     * @param file the side file; created when first written
+     * @param entryBytes the bytes of one entry in the file
+     */
+    protected SideFile(File file, int entryBytes) {
+        this.file = file;
+        this.entryBytes = entryBytes;
+    }
+
+    /** @return the side file */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Makes room for capacity entries, keeping those there are; entries
+     * made room for must read as the subclass's "no entry".
+     */
+    protected abstract void allocate(int capacity);
+
+    /** Appends entry i, in its file format, to buf. */
+    protected abstract void encode(int i, ByteBuffer buf);
+
+    /** Sets entry i from its file format, read from buf. */
+    protected abstract void decode(int i, ByteBuffer buf);
+
+    /** @return the number of entries in use */
+    protected final int size() {
+        return size;
+    }
+
+    /**
+     * Makes room for an entry for page pageNo.  Entries skipped over keep
+     * the value allocate gave them, and are written out as such once an
+     * entry after them is.
+     */
+    protected final void grow(int pageNo) {
+        if (pageNo < size)
+            return;
+        if (pageNo >= capacity) {
+            capacity = Math.max(pageNo + 1, capacity * 2);
+            allocate(capacity);
+        }
+        size = pageNo + 1;
+    }
+
+    /** Marks entry pageNo to be written by the next write. */
+    protected final void dirty(int pageNo) {
+        dirtyFrom = Math.min(dirtyFrom, pageNo);
+        dirtyTo = Math.max(dirtyTo, pageNo);
+    }
+
+    /**
+     * Writes the entries changed since the last write to the side file.
+     */
+    public synchronized void write() throws IOException {
+        if (dirtyTo < dirtyFrom)
+            return;
+        // leave no hole in the file
+        dirtyFrom = Math.min(dirtyFrom, stored);
+        ByteBuffer buf = ByteBuffer.allocate((dirtyTo - dirtyFrom + 1) * entryBytes);
+        for (int i = dirtyFrom; i <= dirtyTo; i++)
+            encode(i, buf);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek((long) dirtyFrom * entryBytes);
+            raf.write(buf.array());
+        } finally {
+            raf.close();
+        }
+        stored = Math.max(stored, dirtyTo + 1);
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
+    }
+
+    /**
+     * Forces the side file to disk, so that the entries written so far
+     * survive a crash.
+     */
+    public synchronized void force() throws IOException {
+        if (!file.exists())
+            return;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.getChannel().force(true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the entries changed since the last write, if any, and forces
+     * them to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if (dirtyTo < dirtyFrom)
+            return;
+        write();
+        force();
+    }
+
+    /**
+     * Reads the side file, if there is one, on first use.  A file that
+     * cannot be read counts as empty: every page is without an entry.
+     */
+    protected final void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        byte[] data = new byte[0];
+        if (file.exists()) {
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    // a torn last entry is ignored
+                    data = new byte[(int) (raf.length() / entryBytes * entryBytes)];
+                    raf.readFully(data);
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                data = new byte[0];
+            }
+        }
+        int n = data.length / entryBytes;
+        capacity = Math.max(INITIAL_CAPACITY, n);
+        allocate(capacity);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        for (int i = 0; i < n; i++)
+            decode(i, buf);
+        size = n;
+        stored = n;
+    }
+}
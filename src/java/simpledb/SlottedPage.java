@@ -0,0 +1,420 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * SlottedPage is a page of a HeapFile in the {@link HeapFile.Layout#SLOTTED}
+ * layout: tuples are stored as variable-length records, found through a
+ * directory of slots, so that a string takes only as many bytes as it has
+ * characters rather than {@link Type#STRING_LEN}.
+ * <p>
+ * The page starts with two ints, the number of directory entries and the
+ * offset of the start of the record area, followed by the directory.  Each
+ * entry is an unsigned short offset and an unsigned short length, with
+ * offset 0 marking an empty slot.  Records are packed at the end of the page
+ * and grow towards the directory.  An int field takes 4 bytes and a string
+ * field 1 length byte plus its characters.  A page of all zeroes is an empty
+ * page, so pages can be no larger than 64KB.
+ * <p>
+ * Deleting a tuple leaves a hole in the record area; holes are squeezed out
+ * when an insert needs the space.  A slot keeps its number, and so the
+ * RecordIds of the other tuples stay valid, for as long as it is used.
+ *
+ * @see HeapFile
+ * @see HeapPage
+ */
+public class SlottedPage implements TuplePage {
+    /** Bytes before the slot directory. */
+    static final int HEADER_SIZE = 8;
+    /** Bytes per directory entry. */
+    static final int SLOT_SIZE = 4;
+    /** Largest page whose offsets fit in a directory entry. */
+    public static final int MAX_PAGE_SIZE = 1 << 16;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    /** The page's bytes; kept up to date by every change. */
+    final byte data[];
+    final int pageSize;
+    private int numSlots;    // directory entries
+    private int recordStart; // first byte of the record area
+    private int usedBytes;   // bytes of live records
+
+    /** The before-image; the same array as data until data changes. */
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    private volatile TransactionId dirtier;
+
+    /**
+     * Create a SlottedPage from the bytes of a page, in the format
+     * described above.  The page keeps data rather than a copy of it, so
+     * the caller must not change the array afterwards.
+     *
+     * @throws IOException if data is not a well-formed slotted page
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        if (data.length > MAX_PAGE_SIZE)
+            throw new IOException("slotted pages can be at most " + MAX_PAGE_SIZE + " bytes");
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.data = data;
+        this.pageSize = data.length;
+        this.numSlots = Type.readInt(data, 0);
+        int start = Type.readInt(data, 4);
+        this.recordStart = start == 0 ? pageSize : start;
+        if (numSlots < 0 || directoryEnd(numSlots) > recordStart || recordStart > pageSize)
+            throw new IOException("page " + id + " is not a slotted page");
+        for (int i = 0; i < numSlots; i++)
+            usedBytes += length(i);
+        setBeforeImage();
+    }
+
+    /**
+     * @return the bytes t takes in the record area of a slotted page
+     */
+    static int recordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE)
+                size += 1 + ((StringField) t.getField(j)).getValue().length();
+            else
+                size += td.getFieldType(j).getLen();
+        }
+        return size;
+    }
+
+    /** @return the end of a directory of n entries */
+    private static int directoryEnd(int n) {
+        return HEADER_SIZE + n * SLOT_SIZE;
+    }
+
+    private int offset(int slot) {
+        int p = HEADER_SIZE + slot * SLOT_SIZE;
+        return ((data[p] & 0xff) << 8) | (data[p + 1] & 0xff);
+    }
+
+    private int length(int slot) {
+        int p = HEADER_SIZE + slot * SLOT_SIZE + 2;
+        return ((data[p] & 0xff) << 8) | (data[p + 1] & 0xff);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        int p = HEADER_SIZE + slot * SLOT_SIZE;
+        data[p] = (byte) (offset >>> 8);
+        data[p + 1] = (byte) offset;
+        data[p + 2] = (byte) (length >>> 8);
+        data[p + 3] = (byte) length;
+    }
+
+    private void writeHeader() {
+        Type.writeInt(data, 0, numSlots);
+        Type.writeInt(data, 4, recordStart);
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of directory entries, used or not */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots && offset(i) != 0;
+    }
+
+    /**
+     * @return the number of free bytes on this page, counting the holes
+     *         left by deleted tuples.  A new tuple needs its
+     *         {@link #recordSize} plus a directory entry.
+     */
+    public int getFreeSpace() {
+        return pageSize - directoryEnd(numSlots) - usedBytes;
+    }
+
+    /**
+     * Adds the specified tuple to the page, in the first empty slot or a
+     * new one.
+     * @throws DbException if the page does not have room for the tuple or
+     *         tupledesc is mismatch.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("tuple does not match the schema of page " + pid);
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE
+                    && ((StringField) t.getField(j)).getValue().length() > 0xff)
+                throw new DbException("strings of more than 255 characters cannot be stored");
+        }
+        int len = recordSize(t);
+        int slot = 0;
+        while (slot < numSlots && offset(slot) != 0)
+            slot++;
+        int entries = Math.max(numSlots, slot + 1);
+        if (len > pageSize - directoryEnd(entries) - usedBytes)
+            throw new DbException("page " + pid + " has no room for a " + len + " byte tuple");
+        beforeWrite();
+        if (recordStart - len < directoryEnd(entries))
+            compact();
+        recordStart -= len;
+        int pos = recordStart;
+        for (int j = 0; j < td.numFields(); j++) {
+            Field f = t.getField(j);
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                data[pos++] = (byte) s.length();
+                for (int i = 0; i < s.length(); i++)
+                    data[pos++] = (byte) s.charAt(i);
+            } else {
+                f.serialize(data, pos);
+                pos += td.getFieldType(j).getLen();
+            }
+        }
+        setSlot(slot, recordStart, len);
+        numSlots = entries;
+        usedBytes += len;
+        writeHeader();
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Moves the live records to the end of the page, squeezing out the
+     * holes left by deletes.
+     */
+    private void compact() {
+        byte[] copy = data.clone();
+        int pos = pageSize;
+        for (int i = 0; i < numSlots; i++) {
+            int off = offset(i);
+            if (off == 0)
+                continue;
+            int len = length(i);
+            pos -= len;
+            System.arraycopy(copy, off, data, pos, len);
+            setSlot(i, pos, len);
+        }
+        Arrays.fill(data, directoryEnd(numSlots), pos, (byte) 0);
+        recordStart = pos;
+    }
+
+    /**
+     * Delete the specified tuple from the page; the tuple's RecordId is
+     * cleared.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("tuple is not on page " + pid);
+        int slot = rid.tupleno();
+        if (!isSlotUsed(slot))
+            throw new DbException("slot " + slot + " of page " + pid + " is already empty");
+        beforeWrite();
+        int off = offset(slot);
+        int len = length(slot);
+        if (off == recordStart)
+            recordStart += len;
+        usedBytes -= len;
+        setSlot(slot, 0, 0);
+        // trailing empty entries can go; no tuple refers to them
+        while (numSlots > 0 && offset(numSlots - 1) == 0)
+            numSlots--;
+        writeHeader();
+        t.setRecordId(null);
+    }
+
+    /** @return the tuple in used slot i, decoded from its record */
+    private Tuple readTuple(int i) {
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, i));
+        int pos = offset(i);
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                int len = data[pos] & 0xff;
+                t.setField(j, new StringField(new String(data, pos + 1, len), Type.STRING_LEN));
+                pos += 1 + len;
+            } else {
+                t.setField(j, td.getFieldType(j).parse(data, pos));
+                pos += td.getFieldType(j).getLen();
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Records have no fixed offsets to find a field at, so with a filter or
+     * columns each tuple is decoded to evaluate and project it.
+     */
+    public int readBatch(int from, TupleBatch batch, CompiledPredicate filter, int[] columns) {
+        if (filter == CompiledPredicate.TRUE && columns == null)
+            return fill(from, batch);
+        for (int i = from; i < numSlots; i++) {
+            if (offset(i) == 0)
+                continue;
+            Tuple t = readTuple(i);
+            if (!filter.matches(t))
+                continue;
+            if (batch.isFull())
+                return i;
+            int row = batch.addRow(pid, i);
+            for (int k = 0; k < batch.getTupleDesc().numFields(); k++)
+                batch.setField(k, row, t.getField(columns == null ? k : columns[k]));
+        }
+        return -1;
+    }
+
+    /** Adds the tuples in used slots from on to batch until it is full. */
+    private int fill(int from, TupleBatch batch) {
+        for (int i = from; i < numSlots; i++) {
+            if (offset(i) == 0)
+                continue;
+            if (batch.isFull())
+                return i;
+            int row = batch.addRow(pid, i);
+            int pos = offset(i);
+            for (int j = 0; j < td.numFields(); j++) {
+                if (td.getFieldType(j) == Type.STRING_TYPE) {
+                    int len = data[pos] & 0xff;
+                    batch.getStrings(j)[row] = new String(data, pos + 1, len);
+                    pos += 1 + len;
+                } else {
+                    batch.read(j, row, data, pos);
+                    pos += td.getFieldType(j).getLen();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on
+     *         this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return iterator(CompiledPredicate.TRUE, null);
+    }
+
+    /** Each tuple is decoded to evaluate filter on, then projected. */
+    public Iterator<Tuple> iterator(final CompiledPredicate filter, final int[] columns) {
+        final TupleDesc projected = columns == null ? null : td.project(columns);
+        return new Iterator<Tuple>() {
+            private int slot = 0;
+            private Tuple next = advance();
+
+            /** @return the next tuple that matches, or null */
+            private Tuple advance() {
+                while (slot < numSlots) {
+                    int i = slot++;
+                    if (offset(i) == 0)
+                        continue;
+                    Tuple t = readTuple(i);
+                    if (filter.matches(t))
+                        return columns == null ? t : project(t);
+                }
+                return null;
+            }
+
+            private Tuple project(Tuple t) {
+                Tuple narrow = new Tuple(projected);
+                for (int k = 0; k < columns.length; k++)
+                    narrow.setField(k, t.getField(columns[k]));
+                narrow.setRecordId(t.getRecordId());
+                return narrow;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Tuple next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Tuple t = next;
+                next = advance();
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page, in
+     * the format the constructor reads.
+     */
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    // see Page.java for javadocs
+    public void getPageData(ByteBuffer dest) {
+        dest.put(data);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedPage getBeforeImage() {
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData;
+            }
+            // the page's own bytes may still be the before-image
+            return new SlottedPage(pid, oldDataRef.clone());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        oldData = data;
+        }
+    }
+
+    /**
+     * Copies the before-image aside if it is still shared with the page's
+     * bytes; must be called before every change to data.
+     */
+    private void beforeWrite() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == data)
+            oldData = data.clone();
+        }
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtier = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+}
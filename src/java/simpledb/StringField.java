@@ -66,6 +66,16 @@ public class StringField implements Field {
 			dos.write((byte) 0);
 	}
 
+	public void serialize(byte[] data, int offset) {
+		// value is never longer than maxSize
+		int len = value.length();
+		Type.writeInt(data, offset, len);
+		offset += 4;
+		for (int i = 0; i < len; i++)
+			data[offset + i] = (byte) value.charAt(i);
+		java.util.Arrays.fill(data, offset + len, offset + maxSize, (byte) 0);
+	}
+
 	/**
 	 * Compare the specified field to the value of this Field. Return semantics
 	 * are as specified by Field.compare
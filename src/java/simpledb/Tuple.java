@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -8,11 +10,22 @@ import java.util.Iterator;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * A tuple read from a page can be backed by the page's bytes: its fields
+ * are then only decoded when first asked for, so that operators that look
+ * at a few columns do not pay for decoding the rest.
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private TupleDesc td;
+    private Field[] fields;
+    private RecordId rid;
+    /** Serialized tuple that unset fields are decoded from, or null. */
+    private transient byte[] data;
+    private transient int offset;
+
     /**
      * Create a new tuple with the specified schema (type).
      *
@@ -21,15 +34,27 @@ public class Tuple implements Serializable {
      *            instance with at least one field.
      */
     public Tuple(TupleDesc td) {
-        // some code goes here
+        this.td = td;
+        this.fields = new Field[td.numFields()];
+    }
+
+    /**
+     * Create a tuple whose fields are decoded lazily from the tuple
+     * serialized at data[offset], in the format of
+     * {@link HeapPage#getPageData}.  The array is not copied, so it must not
+     * change while the tuple may still decode from it.
+     */
+    Tuple(TupleDesc td, byte[] data, int offset) {
+        this(td);
+        this.data = data;
+        this.offset = offset;
     }
 
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
     public TupleDesc getTupleDesc() {
-        // some code goes here
-        return null;
+        return td;
     }
 
     /**
@@ -37,8 +62,7 @@ public class Tuple implements Serializable {
      *         be null.
      */
     public RecordId getRecordId() {
-        // some code goes here
-        return null;
+        return rid;
     }
 
     /**
@@ -48,7 +72,7 @@ public class Tuple implements Serializable {
      *            the new RecordId for this tuple.
      */
     public void setRecordId(RecordId rid) {
-        // some code goes here
+        this.rid = rid;
     }
 
     /**
@@ -60,7 +84,7 @@ public class Tuple implements Serializable {
      *            new value for the field.
      */
     public void setField(int i, Field f) {
-        // some code goes here
+        fields[i] = f;
     }
 
     /**
@@ -70,8 +94,23 @@ public class Tuple implements Serializable {
      *            field index to return. Must be a valid index.
      */
     public Field getField(int i) {
-        // some code goes here
-        return null;
+        Field f = fields[i];
+        byte[] d = data;
+        if (f == null && d != null) {
+            // racing decodes produce equal, immutable fields
+            f = td.getFieldType(i).parse(d, offset + td.getFieldOffset(i));
+            fields[i] = f;
+        }
+        return f;
+    }
+
+    /** Decodes every field not decoded yet and lets go of the bytes. */
+    void decodeAll() {
+        if (data == null)
+            return;
+        for (int i = 0; i < fields.length; i++)
+            getField(i);
+        data = null;
     }
 
     /**
@@ -83,8 +122,13 @@ public class Tuple implements Serializable {
      * where \t is any whitespace (except a newline)
      */
     public String toString() {
-        // some code goes here
-        throw new UnsupportedOperationException("Implement this");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0)
+                sb.append('\t');
+            sb.append(getField(i));
+        }
+        return sb.toString();
     }
 
     /**
@@ -93,8 +137,8 @@ public class Tuple implements Serializable {
      * */
     public Iterator<Field> fields()
     {
-        // some code goes here
-        return null;
+        decodeAll();
+        return Arrays.asList(fields).iterator();
     }
 
     /**
@@ -102,6 +146,13 @@ public class Tuple implements Serializable {
      * */
     public void resetTupleDesc(TupleDesc td)
     {
-        // some code goes here
+        decodeAll();
+        this.td = td;
+        this.fields = Arrays.copyOf(fields, td.numFields());
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        decodeAll();
+        out.defaultWriteObject();
     }
 }
@@ -0,0 +1,216 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * TupleBatch holds up to a fixed number of rows of a schema column by
+ * column, for operators that process a batch of rows per call rather than
+ * a tuple at a time (see {@link BatchIterator}).  Each int field is an
+ * {@code int[]} and each string field a {@code String[]}, indexed by row,
+ * so that an operator can loop over a column without a Field or Tuple per
+ * value.
+ * <p>
+ * The selection vector lists, in increasing order, the rows that are part
+ * of the batch; a filter narrows a batch by rewriting it rather than by
+ * moving values.  Rows are appended selected, after the rows selected so
+ * far, so the selection stays in order.
+ * <p>
+ * Rows read from a page remember their page and slot, so that the tuples
+ * {@link #getTuple} builds for them have RecordIds.
+ */
+public class TupleBatch {
+    /** Rows per batch used by producers that are not told otherwise. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    private final int[][] ints;       // null for string fields
+    private final String[][] strings; // null for int fields
+    private final int[] fieldOffsets;
+    private final PageId[] pages;
+    private final int[] slots;
+    private final int[] selection;
+    private int size;
+    private int selected;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param td the schema of the rows of the batch
+     * @param capacity the maximum number of rows in the batch
+     */
+    public TupleBatch(TupleDesc td, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1");
+        this.td = td;
+        this.capacity = capacity;
+        int n = td.numFields();
+        this.ints = new int[n][];
+        this.strings = new String[n][];
+        this.fieldOffsets = new int[n];
+        for (int j = 0; j < n; j++) {
+            if (td.getFieldType(j) == Type.INT_TYPE)
+                ints[j] = new int[capacity];
+            else
+                strings[j] = new String[capacity];
+            fieldOffsets[j] = td.getFieldOffset(j);
+        }
+        this.pages = new PageId[capacity];
+        this.slots = new int[capacity];
+        this.selection = new int[capacity];
+    }
+
+    /** @return the schema of the rows of this batch */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the maximum number of rows in this batch */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return the number of rows in this batch, selected or not */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if no more rows can be added */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /** Removes every row. */
+    public void clear() {
+        size = 0;
+        selected = 0;
+        Arrays.fill(pages, null);
+        for (String[] column : strings)
+            if (column != null)
+                Arrays.fill(column, null);
+    }
+
+    /**
+     * @return the values of int field j, indexed by row
+     * @throws IllegalArgumentException if field j is not an int field
+     */
+    public int[] getInts(int j) {
+        if (ints[j] == null)
+            throw new IllegalArgumentException("field " + j + " is not an int field");
+        return ints[j];
+    }
+
+    /**
+     * @return the values of string field j, indexed by row
+     * @throws IllegalArgumentException if field j is not a string field
+     */
+    public String[] getStrings(int j) {
+        if (strings[j] == null)
+            throw new IllegalArgumentException("field " + j + " is not a string field");
+        return strings[j];
+    }
+
+    /**
+     * @return the selection vector: its first {@link #numSelected} entries
+     *         are the selected rows, in increasing order
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /** @return the number of selected rows */
+    public int numSelected() {
+        return selected;
+    }
+
+    /**
+     * Narrows the selection to the first n entries of the selection
+     * vector, which the caller has rewritten.
+     */
+    public void setNumSelected(int n) {
+        if (n < 0 || n > size)
+            throw new IllegalArgumentException("cannot select " + n + " of " + size + " rows");
+        selected = n;
+    }
+
+    /**
+     * Appends a selected row whose values the caller then sets through
+     * {@link #getInts}, {@link #getStrings} or {@link #read}.
+     *
+     * @param pid the page the row was read from, or null
+     * @param slot the slot of the row on pid
+     * @return the index of the new row
+     */
+    public int addRow(PageId pid, int slot) {
+        if (size == capacity)
+            throw new IllegalStateException("batch is full");
+        int row = size++;
+        pages[row] = pid;
+        slots[row] = slot;
+        selection[selected++] = row;
+        return row;
+    }
+
+    /** Appends the values of t as a selected row. */
+    public void addTuple(Tuple t) {
+        RecordId rid = t.getRecordId();
+        int row = rid == null ? addRow(null, 0) : addRow(rid.getPageId(), rid.tupleno());
+        for (int j = 0; j < ints.length; j++)
+            setField(j, row, t.getField(j));
+    }
+
+    /** Sets field j of row to the value of f. */
+    public void setField(int j, int row, Field f) {
+        if (ints[j] != null)
+            ints[j][row] = ((IntField) f).getValue();
+        else
+            strings[j][row] = ((StringField) f).getValue();
+    }
+
+    /**
+     * Sets field j of row from the value serialized at data[offset], in
+     * the format of {@link Field#serialize}.
+     */
+    public void read(int j, int row, byte[] data, int offset) {
+        if (ints[j] != null)
+            ints[j][row] = Type.readInt(data, offset);
+        else
+            strings[j][row] = Type.readString(data, offset);
+    }
+
+    /**
+     * Sets every field of row from the tuple serialized at data[offset],
+     * in the format of {@link HeapPage#getPageData}.
+     */
+    public void readRow(int row, byte[] data, int offset) {
+        for (int j = 0; j < fieldOffsets.length; j++)
+            read(j, row, data, offset + fieldOffsets[j]);
+    }
+
+    /** @return the page of the slot row was read from, or null */
+    public PageId getPageId(int row) {
+        return pages[row];
+    }
+
+    /** @return the slot row was read from; valid if it has a page */
+    public int getSlot(int row) {
+        return slots[row];
+    }
+
+    /** @return field j of row, as a Field */
+    public Field getField(int j, int row) {
+        if (ints[j] != null)
+            return new IntField(ints[j][row]);
+        return new StringField(strings[j][row], Type.STRING_LEN);
+    }
+
+    /** @return a new Tuple of the values of row */
+    public Tuple getTuple(int row) {
+        Tuple t = new Tuple(td);
+        for (int j = 0; j < ints.length; j++)
+            t.setField(j, getField(j, row));
+        if (pages[row] != null)
+            t.setRecordId(new RecordId(pages[row], slots[row]));
+        return t;
+    }
+}
@@ -41,12 +41,16 @@ public class TupleDesc implements Serializable {
      *        that are included in this TupleDesc
      * */
     public Iterator<TDItem> iterator() {
-        // some code goes here
-        return null;
+        return Collections.unmodifiableList(Arrays.asList(items)).iterator();
     }
 
     private static final long serialVersionUID = 1L;
 
+    private final TDItem[] items;
+    private final int size;
+    /** Byte offset of each field within a serialized tuple. */
+    private final int[] offsets;
+
     /**
      * Create a new TupleDesc with typeAr.length fields with fields of the
      * specified types, with associated named fields.
@@ -59,7 +63,17 @@ public class TupleDesc implements Serializable {
      *            be null.
      */
     public TupleDesc(Type[] typeAr, String[] fieldAr) {
-        // some code goes here
+        if (typeAr == null || typeAr.length == 0)
+            throw new IllegalArgumentException("a TupleDesc needs at least one field");
+        items = new TDItem[typeAr.length];
+        offsets = new int[typeAr.length];
+        int sz = 0;
+        for (int i = 0; i < typeAr.length; i++) {
+            items[i] = new TDItem(typeAr[i], fieldAr == null ? null : fieldAr[i]);
+            offsets[i] = sz;
+            sz += typeAr[i].getLen();
+        }
+        size = sz;
     }
 
     /**
@@ -71,15 +85,14 @@ public class TupleDesc implements Serializable {
      *            TupleDesc. It must contain at least one entry.
      */
     public TupleDesc(Type[] typeAr) {
-        // some code goes here
+        this(typeAr, null);
     }
 
     /**
      * @return the number of fields in this TupleDesc
      */
     public int numFields() {
-        // some code goes here
-        return 0;
+        return items.length;
     }
 
     /**
@@ -92,8 +105,7 @@ public class TupleDesc implements Serializable {
      *             if i is not a valid field reference.
      */
     public String getFieldName(int i) throws NoSuchElementException {
-        // some code goes here
-        return null;
+        return item(i).fieldName;
     }
 
     /**
@@ -107,8 +119,13 @@ public class TupleDesc implements Serializable {
      *             if i is not a valid field reference.
      */
     public Type getFieldType(int i) throws NoSuchElementException {
-        // some code goes here
-        return null;
+        return item(i).fieldType;
+    }
+
+    private TDItem item(int i) throws NoSuchElementException {
+        if (i < 0 || i >= items.length)
+            throw new NoSuchElementException("no field " + i);
+        return items[i];
     }
 
     /**
@@ -121,8 +138,13 @@ public class TupleDesc implements Serializable {
      *             if no field with a matching name is found.
      */
     public int fieldNameToIndex(String name) throws NoSuchElementException {
-        // some code goes here
-        return 0;
+        if (name != null) {
+            for (int i = 0; i < items.length; i++) {
+                if (name.equals(items[i].fieldName))
+                    return i;
+            }
+        }
+        throw new NoSuchElementException("no field named " + name);
     }
 
     /**
@@ -130,8 +152,19 @@ public class TupleDesc implements Serializable {
      *         Note that tuples from a given TupleDesc are of a fixed size.
      */
     public int getSize() {
-        // some code goes here
-        return 0;
+        return size;
+    }
+
+    /**
+     * @return the offset in bytes of the ith field from the start of a
+     *         serialized tuple; fields are fixed size, so this is the sum
+     *         of the sizes of the fields before it.
+     * @throws NoSuchElementException
+     *             if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        item(i);
+        return offsets[i];
     }
 
     /**
@@ -145,8 +178,34 @@ public class TupleDesc implements Serializable {
      * @return the new TupleDesc
      */
     public static TupleDesc merge(TupleDesc td1, TupleDesc td2) {
-        // some code goes here
-        return null;
+        int n1 = td1.numFields();
+        int n2 = td2.numFields();
+        Type[] types = new Type[n1 + n2];
+        String[] names = new String[n1 + n2];
+        for (int i = 0; i < n1; i++) {
+            types[i] = td1.items[i].fieldType;
+            names[i] = td1.items[i].fieldName;
+        }
+        for (int i = 0; i < n2; i++) {
+            types[n1 + i] = td2.items[i].fieldType;
+            names[n1 + i] = td2.items[i].fieldName;
+        }
+        return new TupleDesc(types, names);
+    }
+
+    /**
+     * @return a TupleDesc of the fields of this one numbered in columns, in
+     *         that order, keeping their names
+     * @throws NoSuchElementException if a column is not a valid field index
+     */
+    public TupleDesc project(int[] columns) {
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            types[k] = getFieldType(columns[k]);
+            names[k] = getFieldName(columns[k]);
+        }
+        return new TupleDesc(types, names);
     }
 
     /**
@@ -159,14 +218,25 @@ public class TupleDesc implements Serializable {
      * @return true if the object is equal to this TupleDesc.
      */
     public boolean equals(Object o) {
-        // some code goes here
-        return false;
+        if (this == o)
+            return true;
+        if (!(o instanceof TupleDesc))
+            return false;
+        TupleDesc other = (TupleDesc) o;
+        if (other.items.length != items.length)
+            return false;
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].fieldType != other.items[i].fieldType)
+                return false;
+        }
+        return true;
     }
 
     public int hashCode() {
-        // If you want to use TupleDesc as keys for HashMap, implement this so
-        // that equal objects have equals hashCode() results
-        throw new UnsupportedOperationException("unimplemented");
+        int h = 1;
+        for (TDItem item : items)
+            h = 31 * h + item.fieldType.hashCode();
+        return h;
     }
 
     /**
@@ -177,7 +247,12 @@ public class TupleDesc implements Serializable {
      * @return String describing this descriptor.
      */
     public String toString() {
-        // some code goes here
-        return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < items.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(items[i].fieldType).append("(").append(items[i].fieldName).append(")");
+        }
+        return sb.toString();
     }
 }
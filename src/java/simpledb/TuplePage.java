@@ -0,0 +1,60 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is a Page holding tuples of a HeapFile, in one of the page
+ * layouts of {@link HeapFile.Layout}.  It is what HeapFile needs of a page
+ * to scan it and to insert and delete tuples on it.
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * @return an iterator over the tuples on this page, in slot order
+     *         (calling remove on it throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * @return an iterator over the tuples on this page that match filter,
+     *         in slot order; tuples that do not match are not built if the
+     *         layout can evaluate filter on the page's bytes
+     * @param columns if not null, the returned tuples hold only the fields
+     *        numbered in columns, in that order, with the TupleDesc
+     *        {@link TupleDesc#project} gives, and only those are decoded;
+     *        filter still refers to the fields of the page's TupleDesc
+     */
+    public Iterator<Tuple> iterator(CompiledPredicate filter, int[] columns);
+
+    /**
+     * Adds the specified tuple to the page and sets its RecordId.
+     * @throws DbException if the tuple does not fit on the page or its
+     *         TupleDesc does not match that of the page.
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page and clears its RecordId.
+     * @throws DbException if the tuple is not on this page.
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return the free space on this page, in the units of its layout (see
+     *         {@link HeapFile.Layout#spaceFor})
+     */
+    public int getFreeSpace();
+
+    /**
+     * Appends the tuples in the used slots numbered from on that match
+     * filter to batch, until the batch is full, decoding their values
+     * straight from the page.  Tuples that do not match are either never
+     * added or added unselected.
+     *
+     * @param columns if not null, the fields of the page's TupleDesc that
+     *        the fields of batch are, in order
+     * @return the slot to continue from, or -1 if every tuple on the page
+     *         has been added
+     */
+    public int readBatch(int from, TupleBatch batch, CompiledPredicate filter, int[] columns);
+}
@@ -0,0 +1,134 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Scan-resistant "full 2Q" replacement (Johnson and Shasha, VLDB '94).
+ * <p>
+ * A page enters the pool on a FIFO probation queue (A1in).  Hits while it is
+ * on probation are treated as correlated references and ignored.  When a
+ * probationary page is evicted its id is remembered on a ghost queue
+ * (A1out); if it is requested again while still remembered it is readmitted
+ * to the main LRU queue (Am).  Pages touched only once, such as those of a
+ * sequential scan, therefore cycle through A1in without displacing the
+ * pages in Am.
+ * <p>
+ * The queue sizes follow the paper's recommendation: A1in holds about a
+ * quarter of the pool and A1out remembers about half a pool's worth of ids.
+ * <p>
+ * Prefetched pages wait on A1in without consulting A1out; their first real
+ * request is what decides whether they are promoted.
+ *
+ * @see EvictionPolicy
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    private final int kIn;
+    private final int kOut;
+
+    /** Resident probationary pages, oldest first. */
+    private final LinkedHashSet<PageId> a1in = new LinkedHashSet<PageId>();
+    /** Ids of recently evicted probationary pages, oldest first. */
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<PageId>();
+    /** Resident hot pages, least recently used first. */
+    private final LinkedHashSet<PageId> am = new LinkedHashSet<PageId>();
+
+    /** The last victim, the queue it came from, and the id it pushed off A1out. */
+    private PageId lastVictim;
+    private LinkedHashSet<PageId> lastQueue;
+    private PageId lastForgotten;
+
+    /**
+     * @param numPages the capacity of the pool this policy serves.
+     */
+    public TwoQueueEvictionPolicy(int numPages) {
+        this.kIn = Math.max(1, numPages / 4);
+        this.kOut = Math.max(1, numPages / 2);
+    }
+
+    public void pageAdmitted(PageId pid) {
+        if (a1out.remove(pid)) {
+            a1in.remove(pid);
+            am.add(pid);
+        } else if (!am.contains(pid)) {
+            // a prefetched page starts its probation at its first request
+            a1in.remove(pid);
+            a1in.add(pid);
+        }
+    }
+
+    public void pagePrefetched(PageId pid) {
+        if (!am.contains(pid))
+            a1in.add(pid);
+    }
+
+    public void pageAccessed(PageId pid) {
+        if (am.remove(pid))
+            am.add(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        if (!a1in.remove(pid))
+            am.remove(pid);
+    }
+
+    public PageId evict(Filter filter) {
+        lastForgotten = null;
+        PageId victim;
+        if (a1in.size() > kIn || am.isEmpty()) {
+            victim = evictProbationary(filter);
+            if (victim == null)
+                victim = evictHot(filter);
+        } else {
+            victim = evictHot(filter);
+            if (victim == null)
+                victim = evictProbationary(filter);
+        }
+        lastVictim = victim;
+        return victim;
+    }
+
+    public void evictFailed(PageId pid) {
+        if (!pid.equals(lastVictim)) {
+            pageAdmitted(pid);
+            return;
+        }
+        if (lastQueue == a1in) {
+            // it never really left probation: forget that it was evicted
+            a1out.remove(pid);
+            if (lastForgotten != null)
+                LruEvictionPolicy.addFirst(a1out, lastForgotten);
+        }
+        LruEvictionPolicy.addFirst(lastQueue, pid);
+        lastVictim = null;
+        lastForgotten = null;
+    }
+
+    private PageId evictHot(Filter filter) {
+        lastQueue = am;
+        return removeFirst(am, filter);
+    }
+
+    private PageId evictProbationary(Filter filter) {
+        lastQueue = a1in;
+        PageId victim = removeFirst(a1in, filter);
+        if (victim != null) {
+            a1out.add(victim);
+            if (a1out.size() > kOut)
+                lastForgotten = removeFirst(a1out, null);
+        }
+        return victim;
+    }
+
+    /** Removes and returns the oldest entry of queue the filter accepts. */
+    private static PageId removeFirst(LinkedHashSet<PageId> queue, Filter filter) {
+        for (Iterator<PageId> it = queue.iterator(); it.hasNext(); ) {
+            PageId pid = it.next();
+            if (filter == null || filter.canEvict(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
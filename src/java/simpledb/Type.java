@@ -24,6 +24,11 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new IntField(readInt(data, offset));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +47,11 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new StringField(readString(data, offset), STRING_LEN);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +70,33 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object whose contents
+   *   are decoded in place from data, in the format {@link #parse(DataInputStream)}
+   *   reads, without copying or wrapping the array.
+   * @param data the bytes to decode from, e.g. those of a page
+   * @param offset the index in data of the first byte of the field
+   */
+    public abstract Field parse(byte[] data, int offset);
+
+    /** Stores value as a big-endian int at data[offset..offset+3]. */
+    static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    /** @return the big-endian int at data[offset..offset+3] */
+    static int readInt(byte[] data, int offset) {
+        return (data[offset] << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    /** @return the string serialized by a StringField at data[offset] */
+    static String readString(byte[] data, int offset) {
+        int strLen = Math.max(0, Math.min(STRING_LEN, readInt(data, offset)));
+        return new String(data, offset + 4, strLen);
+    }
+
 }
@@ -0,0 +1,267 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ZoneMap keeps, for each page of a HeapFile, the smallest and largest value
+ * of each INT_TYPE field of the tuples on it, so that a filtered scan can
+ * skip a page no tuple of which can match without reading it.  On tables
+ * whose rows arrive roughly in the order of some field, e.g. a timestamp, a
+ * range on that field rules out most pages.
+ * <p>
+ * The bounds are kept in a side file next to the heap file.  The entry of
+ * a page is set whenever the heap file writes it, and widened when a tuple
+ * is inserted into it, so that it also covers the page as it is in the
+ * BufferPool; deletes leave it wider than it need be until the page is next
+ * written.  A page with no entry, e.g. one never written since the side
+ * file was created, is never skipped.
+ * <p>
+ * After a crash a page may be on disk as it was before or after any write
+ * since the last {@link HeapFile#force}, so the side file must cover all of
+ * them: before a page is written, its entry in the file is widened, and
+ * written and forced, if it does not cover the page as written, and only
+ * once the pages are forced is the exact entry saved (see
+ * {@link #settle}).  Appending pages, which have no entry in the file yet,
+ * costs no write before the pages.
+ *
+ * @Threadsafe
+ * @see HeapFile#iterator(TransactionId, CompiledPredicate)
+ * @see CompiledPredicate#mayMatch
+ */
+public class ZoneMap extends SideFile {
+    /** The state of a page with no entry. */
+    private static final int UNKNOWN = 0;
+    /** The state of a page with no tuples. */
+    private static final int EMPTY = 1;
+    /** The state of a page with tuples, whose bounds are set. */
+    private static final int BOUNDED = 2;
+
+    private final int numFields;
+    private final int[] intFields;             // the INT_TYPE fields, in order
+    private final TupleDesc intDesc;           // of just those fields, if any
+
+    private int[] states = new int[0];         // protected by this
+    private int[] bounds = new int[0];         // min and max of each int field of each page
+    // the entries as the side file has them, or will once written
+    private int[] savedStates = new int[0];    // protected by this
+    private int[] savedBounds = new int[0];    // protected by this
+
+    /**
+     * @param file the side file holding the entries; created when first
+     *        written
+     * @param td the schema of the tuples of the heap file
+     */
+    public ZoneMap(File file, TupleDesc td) {
+        this(file, td, intFields(td));
+    }
+
+    private ZoneMap(File file, TupleDesc td, int[] intFields) {
+        super(file, 4 + intFields.length * 8);
+        this.numFields = td.numFields();
+        this.intFields = intFields;
+        this.intDesc = intFields.length == 0 ? null : td.project(intFields);
+    }
+
+    /** @return the INT_TYPE fields of td, in order */
+    static int[] intFields(TupleDesc td) {
+        int n = 0;
+        int[] fields = new int[td.numFields()];
+        for (int j = 0; j < fields.length; j++)
+            if (td.getFieldType(j) == Type.INT_TYPE)
+                fields[n++] = j;
+        return Arrays.copyOf(fields, n);
+    }
+
+    /**
+     * Sets the entry of page pageNo to the bounds of the tuples on page,
+     * which is about to be written, and widens its saved entry to cover
+     * them if it does not.  The caller flushes the side file before it
+     * writes the page.
+     */
+    public void update(int pageNo, TuplePage page) {
+        int[] min = new int[intFields.length];
+        int[] max = new int[intFields.length];
+        int rows = summarize(page, min, max);
+        synchronized (this) {
+            load();
+            grow(pageNo);
+            setEntry(states, bounds, pageNo, rows, min, max);
+            if (!covers(pageNo, rows, min, max)) {
+                // an empty page matches nothing, so the new bounds cover it
+                boolean empty = savedStates[pageNo] == EMPTY;
+                savedStates[pageNo] = BOUNDED;
+                for (int c = 0; c < intFields.length; c++) {
+                    int b = bound(pageNo, c);
+                    savedBounds[b] = empty ? min[c] : Math.min(savedBounds[b], min[c]);
+                    savedBounds[b + 1] = empty ? max[c] : Math.max(savedBounds[b + 1], max[c]);
+                }
+                dirty(pageNo);
+            }
+        }
+    }
+
+    /**
+     * Sets the entry of page pageNo, both in memory and as saved, for a
+     * page that is known to be on disk as it is described.
+     *
+     * @param rows the number of tuples on the page
+     * @param min the smallest value of each INT_TYPE field, in field order
+     * @param max the largest value of each INT_TYPE field, in field order
+     */
+    public synchronized void set(int pageNo, int rows, int[] min, int[] max) {
+        load();
+        grow(pageNo);
+        setEntry(states, bounds, pageNo, rows, min, max);
+        setEntry(savedStates, savedBounds, pageNo, rows, min, max);
+        dirty(pageNo);
+    }
+
+    /**
+     * Records that the pages written so far are on disk as they were
+     * written, so that their exact entries can be saved.  The entries
+     * changed are saved by the next write.
+     */
+    public synchronized void settle() {
+        load();
+        int width = intFields.length * 2;
+        for (int i = 0; i < size(); i++) {
+            boolean same = savedStates[i] == states[i];
+            for (int b = i * width; same && b < (i + 1) * width; b++)
+                same = savedBounds[b] == bounds[b];
+            if (!same) {
+                savedStates[i] = states[i];
+                System.arraycopy(bounds, i * width, savedBounds, i * width, width);
+                dirty(i);
+            }
+        }
+    }
+
+    /** @return true if the saved entry of page pageNo covers the given bounds */
+    private boolean covers(int pageNo, int rows, int[] min, int[] max) {
+        if (savedStates[pageNo] == UNKNOWN || rows == 0)
+            return true;
+        if (savedStates[pageNo] == EMPTY)
+            return false;
+        for (int c = 0; c < intFields.length; c++) {
+            if (min[c] < savedBounds[bound(pageNo, c)] || max[c] > savedBounds[bound(pageNo, c) + 1])
+                return false;
+        }
+        return true;
+    }
+
+    private void setEntry(int[] states, int[] bounds, int pageNo, int rows, int[] min, int[] max) {
+        states[pageNo] = rows == 0 ? EMPTY : BOUNDED;
+        for (int c = 0; c < intFields.length; c++) {
+            bounds[bound(pageNo, c)] = rows == 0 ? 0 : min[c];
+            bounds[bound(pageNo, c) + 1] = rows == 0 ? 0 : max[c];
+        }
+    }
+
+    /**
+     * Widens the entry of page pageNo, if it has one, to cover t, which is
+     * being inserted into the page in the BufferPool.  Only the entry in
+     * memory is widened: the page on disk does not hold t.
+     */
+    public synchronized void widen(int pageNo, Tuple t) {
+        load();
+        if (pageNo >= size() || states[pageNo] == UNKNOWN)
+            return;
+        boolean empty = states[pageNo] == EMPTY;
+        states[pageNo] = BOUNDED;
+        for (int c = 0; c < intFields.length; c++) {
+            int v = ((IntField) t.getField(intFields[c])).getValue();
+            int b = bound(pageNo, c);
+            if (empty || v < bounds[b])
+                bounds[b] = v;
+            if (empty || v > bounds[b + 1])
+                bounds[b + 1] = v;
+        }
+    }
+
+    /**
+     * @return false if page pageNo has an entry and no tuple within its
+     *         bounds can match filter, true otherwise
+     */
+    public boolean mayMatch(int pageNo, CompiledPredicate filter) {
+        int[] min = new int[numFields];
+        int[] max = new int[numFields];
+        Arrays.fill(min, Integer.MIN_VALUE);
+        Arrays.fill(max, Integer.MAX_VALUE);
+        synchronized (this) {
+            load();
+            if (pageNo >= size() || states[pageNo] == UNKNOWN)
+                return true;
+            if (states[pageNo] == EMPTY)
+                return false;
+            for (int c = 0; c < intFields.length; c++) {
+                min[intFields[c]] = bounds[bound(pageNo, c)];
+                max[intFields[c]] = bounds[bound(pageNo, c) + 1];
+            }
+        }
+        return filter.mayMatch(min, max);
+    }
+
+    /**
+     * Computes the bounds of the INT_TYPE fields of the tuples on page,
+     * decoding only those fields.
+     *
+     * @return the number of tuples on page
+     */
+    private int summarize(TuplePage page, int[] min, int[] max) {
+        if (intFields.length == 0)
+            return page.iterator().hasNext() ? 1 : 0;
+        Arrays.fill(min, Integer.MAX_VALUE);
+        Arrays.fill(max, Integer.MIN_VALUE);
+        TupleBatch batch = new TupleBatch(intDesc, TupleBatch.DEFAULT_CAPACITY);
+        int rows = 0;
+        int from = 0;
+        while (from >= 0) {
+            batch.clear();
+            from = page.readBatch(from, batch, CompiledPredicate.TRUE, intFields);
+            int[] sel = batch.getSelection();
+            for (int c = 0; c < intFields.length; c++) {
+                int[] values = batch.getInts(c);
+                for (int k = 0; k < batch.numSelected(); k++) {
+                    int v = values[sel[k]];
+                    if (v < min[c])
+                        min[c] = v;
+                    if (v > max[c])
+                        max[c] = v;
+                }
+            }
+            rows += batch.numSelected();
+        }
+        return rows;
+    }
+
+    private int bound(int pageNo, int c) {
+        return (pageNo * intFields.length + c) * 2;
+    }
+
+    // see SideFile.java for javadocs
+    protected void allocate(int capacity) {
+        // entries made room for are UNKNOWN
+        states = Arrays.copyOf(states, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * intFields.length * 2);
+        savedStates = Arrays.copyOf(savedStates, capacity);
+        savedBounds = Arrays.copyOf(savedBounds, capacity * intFields.length * 2);
+    }
+
+    protected void encode(int i, ByteBuffer buf) {
+        buf.putInt(savedStates[i]);
+        for (int c = 0; c < intFields.length; c++) {
+            buf.putInt(savedBounds[bound(i, c)]);
+            buf.putInt(savedBounds[bound(i, c) + 1]);
+        }
+    }
+
+    protected void decode(int i, ByteBuffer buf) {
+        states[i] = savedStates[i] = buf.getInt();
+        for (int c = 0; c < intFields.length; c++) {
+            bounds[bound(i, c)] = savedBounds[bound(i, c)] = buf.getInt();
+            bounds[bound(i, c) + 1] = savedBounds[bound(i, c) + 1] = buf.getInt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BufferPoolCleanerTest extends SimpleDbTestBase {
+
+    private static final int TABLE = 1;
+    private static final int POOL = 10;
+
+    private CountingFile file;
+    private BufferPool bp;
+
+    @Before public void setUp() {
+        file = new CountingFile(TABLE);
+        Database.getCatalog().addTable(file, "counting");
+        bp = Database.resetBufferPool(POOL);
+    }
+
+    @After public void stopCleaner() {
+        bp.setCleanTarget(0);
+    }
+
+    private void dirty(TransactionId tid, int from, int to) throws Exception {
+        for (int i = from; i < to; i++)
+            bp.getPage(tid, new HeapPageId(TABLE, i), Permissions.READ_WRITE).markDirty(true, tid);
+    }
+
+    /**
+     * Without a cleaner, every dirty victim is written by the thread that
+     * needs the frame.
+     */
+    @Test public void evictionWritesWithoutCleaner() throws Exception {
+        dirty(new TransactionId(), 0, POOL);
+        for (int i = POOL; i < 2 * POOL; i++)
+            bp.getPage(new TransactionId(), new HeapPageId(TABLE, i), Permissions.READ_ONLY);
+        assertEquals(POOL, bp.getStats().getEvictionWrites());
+        assertEquals(0, bp.getStats().getCleanerWrites());
+        assertEquals(POOL, file.writeCount);
+    }
+
+    /**
+     * The cleaner writes just enough pages to bring the pool up to its
+     * target of clean frames, after which evictions need not write.
+     */
+    @Test public void cleanerKeepsFramesClean() throws Exception {
+        TransactionId tid = new TransactionId();
+        dirty(tid, 0, POOL - 2);
+        bp.setCleanTarget(0.5);
+        bp.transactionComplete(tid);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bp.getStats().getCleanerWrites() < 3 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        // two frames were free already, so three more are needed
+        assertEquals(3, bp.getStats().getCleanerWrites());
+        assertEquals(0, bp.getStats().getEvictionWrites());
+
+        bp.setCleanTarget(0);
+        assertEquals(0, bp.cleanRound());
+    }
+
+    /**
+     * Pages of a transaction that is still running, whether or not it has
+     * logged its start, or that has aborted, are left alone.
+     */
+    @Test public void cleanerSkipsActiveTransactions() throws Exception {
+        TransactionId active = new TransactionId();
+        dirty(active, 0, POOL / 2);
+        TransactionId logged = new TransactionId();
+        Database.getLogFile().logXactionBegin(logged);
+        dirty(logged, POOL / 2, POOL);
+        bp.setCleanTarget(1.0);
+        assertEquals(0, bp.cleanRound());
+        assertEquals(active, bp.getPage(active, new HeapPageId(TABLE, 0), Permissions.READ_ONLY).isDirty());
+
+        bp.transactionComplete(logged, false);
+        assertEquals(0, bp.cleanRound());
+
+        // once committed, its pages can be cleaned
+        bp.transactionComplete(active);
+        assertEquals(POOL / 2, bp.cleanRound());
+        assertNull(bp.getPage(active, new HeapPageId(TABLE, 0), Permissions.READ_ONLY).isDirty());
+        assertEquals(POOL / 2, file.writeCount);
+    }
+
+    /**
+     * Without a cleaner, committed transactions are not remembered, however
+     * many commit with pages left dirty.
+     */
+    @Test public void committedBoundedWithoutCleaner() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            TransactionId tid = new TransactionId();
+            dirty(tid, i % (2 * POOL), i % (2 * POOL) + 1);
+            bp.transactionComplete(tid);
+        }
+        assertEquals(0, bp.committedTransactions());
+
+        // nor are those from before the cleaner stopped
+        TransactionId tid = new TransactionId();
+        dirty(tid, 0, 1);
+        bp.setCleanTarget(0.5);
+        bp.transactionComplete(tid);
+        bp.setCleanTarget(0);
+        assertEquals(0, bp.committedTransactions());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolCleanerTest.class);
+    }
+}
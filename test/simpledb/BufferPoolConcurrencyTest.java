@@ -0,0 +1,111 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BufferPoolConcurrencyTest extends SimpleDbTestBase {
+
+    private static final int TABLE = 1;
+
+    private CountingFile file;
+
+    @Before public void addTable() {
+        file = new CountingFile(TABLE);
+        Database.getCatalog().addTable(file, "counting");
+    }
+
+    /**
+     * A cache hit must not wait for the pool's monitor, which flushes and
+     * checkpoints hold for a long time.
+     */
+    @Test public void hitDoesNotTakeMonitor() throws Exception {
+        final BufferPool bp = Database.resetBufferPool(4);
+        final TransactionId tid = new TransactionId();
+        final HeapPageId pid = new HeapPageId(TABLE, 0);
+        final Page resident = bp.getPage(tid, pid, Permissions.READ_ONLY);
+
+        final AtomicReference<Page> hit = new AtomicReference<Page>();
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    hit.set(bp.getPage(tid, pid, Permissions.READ_ONLY));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        synchronized (bp) {
+            reader.start();
+            reader.join(10000);
+        }
+        assertSame(resident, hit.get());
+        assertEquals(1, file.readCount);
+    }
+
+    /**
+     * Hammers a small pool from several threads with a mix of hits and
+     * misses; every fetch must return the requested page and the pool must
+     * never hold more than its capacity.
+     */
+    @Test public void concurrentMissesAndEvictions() throws Exception {
+        final int poolPages = 8;
+        final BufferPool bp = Database.resetBufferPool(poolPages);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            HeapPageId pid = new HeapPageId(TABLE, r.nextInt(3 * poolPages));
+                            Page p = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                            if (!pid.equals(p.getId()))
+                                throw new AssertionError("asked for " + pid + ", got " + p.getId());
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertNull(String.valueOf(error.get()), error.get());
+
+        // everything still resident is served from the pool
+        int before = file.readCount;
+        int hits = 0;
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3 * poolPages; i++) {
+            bp.getPage(tid, new HeapPageId(TABLE, i), Permissions.READ_ONLY);
+            if (file.readCount == before)
+                hits++;
+            before = file.readCount;
+        }
+        assertTrue("more hits than frames: " + hits, hits <= poolPages);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolConcurrencyTest.class);
+    }
+}
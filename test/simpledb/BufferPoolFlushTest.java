@@ -0,0 +1,141 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.TestUtil.MockPage;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolFlushTest extends SimpleDbTestBase {
+
+    /** Records the batches the BufferPool writes. */
+    private static class BatchFile extends CountingFile implements BatchWritable {
+        final ArrayList<List<Integer>> batches = new ArrayList<List<Integer>>();
+        int forceCount = 0;
+
+        BatchFile(int tableid) {
+            super(tableid);
+        }
+
+        public void writePages(List<Page> pages) throws IOException {
+            List<Integer> pageNos = new ArrayList<Integer>();
+            for (Page p : pages)
+                pageNos.add(p.getId().pageNumber());
+            batches.add(pageNos);
+        }
+
+        public void force() throws IOException {
+            forceCount++;
+        }
+    }
+
+    private static void dirty(BufferPool bp, TransactionId tid, int table, int... pageNos)
+            throws Exception {
+        for (int pgNo : pageNos)
+            bp.getPage(tid, new HeapPageId(table, pgNo), Permissions.READ_WRITE).markDirty(true, tid);
+    }
+
+    /**
+     * flushAllPages hands each file all of its dirty pages in page order
+     * in one batch, and forces it once.
+     */
+    @Test public void flushAllPagesBatchesPerFile() throws Exception {
+        BatchFile a = new BatchFile(1);
+        BatchFile b = new BatchFile(2);
+        Database.getCatalog().addTable(a, "a");
+        Database.getCatalog().addTable(b, "b");
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+
+        dirty(bp, tid, 1, 7, 2, 3, 9, 1);
+        dirty(bp, tid, 2, 4, 0);
+        bp.getPage(tid, new HeapPageId(1, 5), Permissions.READ_ONLY); // clean
+        bp.flushAllPages();
+
+        assertEquals(1, a.batches.size());
+        assertEquals(Arrays.asList(1, 2, 3, 7, 9), a.batches.get(0));
+        assertEquals(1, a.forceCount);
+        assertEquals(Arrays.asList(0, 4), b.batches.get(0));
+        assertEquals(1, b.forceCount);
+        assertEquals(0, a.writeCount + b.writeCount);
+
+        // everything is clean now: nothing more to write
+        assertNull(bp.getPage(tid, new HeapPageId(1, 7), Permissions.READ_ONLY).isDirty());
+        bp.flushAllPages();
+        assertEquals(1, a.batches.size());
+        assertEquals(1, a.forceCount);
+    }
+
+    /**
+     * flushPages only writes the pages dirtied by the given transaction,
+     * and files without batch support still get every page.
+     */
+    @Test public void flushPagesOfTransaction() throws Exception {
+        BatchFile a = new BatchFile(1);
+        CountingFile plain = new CountingFile(2);
+        Database.getCatalog().addTable(a, "a");
+        Database.getCatalog().addTable(plain, "plain");
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+
+        dirty(bp, t1, 1, 3, 1);
+        dirty(bp, t2, 1, 2);
+        dirty(bp, t1, 2, 0, 1, 2);
+        bp.flushPages(t1);
+
+        assertEquals(Arrays.asList(1, 3), a.batches.get(0));
+        assertEquals(3, plain.writeCount);
+        assertEquals(t2, bp.getPage(t2, new HeapPageId(1, 2), Permissions.READ_ONLY).isDirty());
+    }
+
+    /**
+     * HeapFile.writePages coalesces runs of adjacent pages and writes every
+     * page where it belongs.
+     */
+    @Test public void heapFileWritePages() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 6, 1000, null, tuples);
+        for (HeapFile.Storage storage : new HeapFile.Storage[] {HeapFile.Storage.PLAIN, HeapFile.Storage.MAPPED}) {
+            HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), storage);
+            Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+            // pages 0-1 and 3-5 swap contents, then page 6 is appended
+            List<Page> pages = new ArrayList<Page>();
+            int[] from = {1, 0, 5, 4, 3, 0};
+            int[] to = {0, 1, 3, 4, 5, 6};
+            byte[][] expected = new byte[to.length][];
+            for (int i = 0; i < to.length; i++) {
+                expected[i] = hf.readPage(new HeapPageId(hf.getId(), from[i])).getPageData();
+                pages.add(new HeapPage(new HeapPageId(hf.getId(), to[i]), expected[i]));
+            }
+            hf.writePages(pages);
+            hf.force();
+
+            HeapFile check = new HeapFile(f, Utility.getTupleDesc(2));
+            assertEquals(7, check.numPages());
+            for (int i = 0; i < to.length; i++)
+                assertArrayEquals(expected[i], check.readPage(new HeapPageId(hf.getId(), to[i])).getPageData());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolFlushTest.class);
+    }
+}
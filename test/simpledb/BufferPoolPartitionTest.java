@@ -0,0 +1,122 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BufferPoolPartitionTest extends SimpleDbTestBase {
+
+    private static final int HOT = 1;
+    private static final int SCAN = 2;
+    private static final int POOL = 4;
+
+    private CountingFile hot;
+    private CountingFile scan;
+    private BufferPool bp;
+    private TransactionId tid;
+
+    @Before public void setUp() {
+        hot = new CountingFile(HOT);
+        scan = new CountingFile(SCAN);
+        Database.getCatalog().addTable(hot, "hot", "", "lookups");
+        Database.getCatalog().addTable(scan, "scan");
+        bp = Database.resetBufferPool(POOL);
+        bp.addPool("lookups", POOL, EvictionPolicy.Kind.LRU);
+        tid = new TransactionId();
+    }
+
+    private int resident(int table, int pages) {
+        int n = 0;
+        for (int i = 0; i < pages; i++) {
+            if (bp.isResident(new HeapPageId(table, i)))
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * A scan of a table in the default pool cannot evict the pages of a
+     * table bound to another pool.
+     */
+    @Test public void scanDoesNotEvictOtherPool() throws Exception {
+        for (int i = 0; i < POOL; i++)
+            bp.getPage(tid, new HeapPageId(HOT, i), Permissions.READ_ONLY);
+        for (int i = 0; i < 100; i++)
+            bp.getPage(tid, new HeapPageId(SCAN, i), Permissions.READ_ONLY);
+
+        assertEquals(POOL, resident(HOT, POOL));
+        assertEquals(POOL, resident(SCAN, 100));
+        for (int i = 0; i < POOL; i++)
+            bp.getPage(tid, new HeapPageId(HOT, i), Permissions.READ_ONLY);
+        assertEquals(POOL, hot.readCount);
+        assertEquals(2 * POOL, bp.capacity());
+    }
+
+    /**
+     * Each pool stays within its own capacity.
+     */
+    @Test public void poolsHaveSeparateCapacities() throws Exception {
+        bp.getPage(tid, new HeapPageId(SCAN, 0), Permissions.READ_ONLY);
+        for (int i = 0; i < 3 * POOL; i++)
+            bp.getPage(tid, new HeapPageId(HOT, i), Permissions.READ_ONLY);
+        assertEquals(POOL, resident(HOT, 3 * POOL));
+        assertEquals(1, resident(SCAN, 1));
+        assertEquals(POOL, bp.capacityFor(HOT));
+    }
+
+    /**
+     * A table bound to a pool the BufferPool does not have uses the
+     * default pool.
+     */
+    @Test public void unknownPoolFallsBackToDefault() throws Exception {
+        CountingFile other = new CountingFile(3);
+        Database.getCatalog().addTable(other, "other", "", "nonexistent");
+        for (int i = 0; i < 3 * POOL; i++)
+            bp.getPage(tid, new HeapPageId(3, i), Permissions.READ_ONLY);
+        assertEquals(POOL, resident(3, 3 * POOL));
+        try {
+            bp.addPool("lookups", 1, EvictionPolicy.Kind.LRU);
+            fail("duplicate pool name accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Catalog.loadSchema defines pools and binds tables to them.
+     */
+    @Test public void loadSchema() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("pool dims 8 lru\n");
+        w.write("dim (id int pk, name string) pool=dims\n");
+        w.write("fact (id int, dim int)\n");
+        w.close();
+
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        Catalog catalog = Database.getCatalog();
+        assertEquals("dims", catalog.getPoolName(catalog.getTableId("dim")));
+        assertEquals(BufferPool.DEFAULT_POOL, catalog.getPoolName(catalog.getTableId("fact")));
+        assertEquals(8, bp.getPoolCapacity("dims"));
+        assertTrue(bp.getPoolNames().contains(BufferPool.DEFAULT_POOL));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPartitionTest.class);
+    }
+}
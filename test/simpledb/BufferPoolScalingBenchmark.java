@@ -0,0 +1,99 @@
+package simpledb;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simpledb.TestUtil.CountingFile;
+
+/**
+ * Measures cache-hit throughput of the BufferPool as the number of reader
+ * threads grows, from one thread up to twice the available cores.  When
+ * readers contend, the pool drops some hits instead of replaying them into
+ * the eviction policy, so part of a speedup can come from doing less work
+ * per hit; the share of hits dropped is printed with each result.  Run with
+ * <p>
+ *      java -cp bin/src:bin/test:lib/* simpledb.BufferPoolScalingBenchmark [hits per thread]
+ */
+public class BufferPoolScalingBenchmark {
+    /** The table the pool is filled from. */
+    public static final int TABLE = 1;
+    /** Pages of the table, all resident once the pool is warmed. */
+    public static final int PAGES = BufferPool.DEFAULT_PAGES;
+    /** Runs of each measurement; the best one counts. */
+    private static final int RUNS = 3;
+
+    /**
+     * Registers the table and returns a fresh pool holding all of its pages,
+     * after one untimed run to let the JIT settle.
+     */
+    public static BufferPool warmPool(int hitsPerThread) throws Exception {
+        Database.getCatalog().addTable(new CountingFile(TABLE), "scaling");
+        BufferPool bp = Database.resetBufferPool(PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < PAGES; i++)
+            bp.getPage(tid, new HeapPageId(TABLE, i), Permissions.READ_ONLY);
+        hitThroughput(bp, 1, hitsPerThread);
+        return bp;
+    }
+
+    /** @return the best page fetches per second of RUNS runs with the given number of threads */
+    public static double bestThroughput(BufferPool bp, int threads, int hitsPerThread)
+            throws Exception {
+        double best = 0;
+        for (int i = 0; i < RUNS; i++)
+            best = Math.max(best, hitThroughput(bp, threads, hitsPerThread));
+        return best;
+    }
+
+    /** @return page fetches per second with the given number of threads */
+    public static double hitThroughput(final BufferPool bp, int threads, final int hitsPerThread)
+            throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    TransactionId tid = new TransactionId();
+                    HeapPageId[] pids = new HeapPageId[PAGES];
+                    for (int i = 0; i < PAGES; i++)
+                        pids[i] = new HeapPageId(TABLE, i);
+                    try {
+                        start.await();
+                        for (int i = 0; i < hitsPerThread; i++)
+                            bp.getPage(tid, pids[(i + offset) % PAGES], Permissions.READ_ONLY);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers)
+            w.join();
+        long elapsed = System.nanoTime() - begin;
+        if (error.get() != null)
+            throw new RuntimeException(error.get());
+        return (double) threads * hitsPerThread / (elapsed / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int hitsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        BufferPool bp = warmPool(hitsPerThread);
+        double single = bestThroughput(bp, 1, hitsPerThread);
+        System.out.printf("%d cores, 1 thread: %.1f M hits/s%n", cores, single / 1e6);
+        for (int threads = 2; threads <= 2 * cores; threads *= 2) {
+            long hits = bp.getStats().getHits();
+            long dropped = bp.getStats().getDroppedAccesses();
+            double speedup = bestThroughput(bp, threads, hitsPerThread) / single;
+            double droppedShare = (double) (bp.getStats().getDroppedAccesses() - dropped)
+                    / (bp.getStats().getHits() - hits);
+            System.out.printf("%2d threads: %.2fx single-thread throughput, %.1f%% of hits dropped%n",
+                    threads, speedup, droppedShare * 100);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BufferPoolStatsTest extends SimpleDbTestBase {
+
+    private static final int POOL = 4;
+
+    private BufferPool bp;
+    private TransactionId tid;
+
+    @Before public void setUp() {
+        Database.getCatalog().addTable(new CountingFile(1), "one");
+        Database.getCatalog().addTable(new CountingFile(2), "two");
+        bp = Database.resetBufferPool(POOL);
+        tid = new TransactionId();
+    }
+
+    private Page get(int table, int pgNo) throws Exception {
+        return bp.getPage(tid, new HeapPageId(table, pgNo), Permissions.READ_WRITE);
+    }
+
+    /**
+     * Hits and misses are counted per table, and every miss is a wait.
+     */
+    @Test public void hitsAndMisses() throws Exception {
+        get(1, 0);
+        get(1, 0);
+        get(1, 0);
+        get(2, 0);
+        get(2, 1);
+        get(2, 1);
+
+        BufferPoolStats stats = bp.getStats();
+        Map<Integer, BufferPoolStats.TableStats> tables = stats.getTableStats();
+        assertEquals(2, tables.get(1).getHits());
+        assertEquals(1, tables.get(1).getMisses());
+        assertEquals(1, tables.get(2).getHits());
+        assertEquals(2, tables.get(2).getMisses());
+        assertEquals(0.5, stats.getHitRatio(), 1e-9);
+        assertEquals(3, stats.getPageWaits());
+        assertTrue(stats.getPageWaitNanos() > 0);
+        assertEquals(0, stats.getDroppedAccesses());
+    }
+
+    /**
+     * Evictions, page writes and flush latencies are recorded whichever
+     * path writes the pages.
+     */
+    @Test public void evictionsAndFlushes() throws Exception {
+        for (int i = 0; i < POOL; i++)
+            get(1, i).markDirty(true, tid);
+        assertEquals(POOL, bp.dirtyPages());
+
+        // one dirty victim written by eviction
+        get(2, 0);
+        BufferPoolStats stats = bp.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(1, stats.getEvictionWrites());
+        assertEquals(1, stats.getPagesFlushed());
+        assertEquals(1, stats.getFlushLatency().getCount());
+
+        // the rest in one batch
+        bp.flushAllPages();
+        assertEquals(POOL, stats.getPagesFlushed());
+        assertEquals(2, stats.getFlushLatency().getCount());
+        assertTrue(stats.getFlushLatency().getTotalNanos() > 0);
+        assertEquals(0, bp.dirtyPages());
+    }
+
+    /**
+     * The JMX bean reports on the database's current pool.
+     */
+    @Test public void mxBean() throws Exception {
+        get(1, 0);
+        get(1, 0);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(BufferPoolMXBean.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(POOL, server.getAttribute(name, "Capacity"));
+        assertEquals(1, server.getAttribute(name, "ResidentPages"));
+        long[] histogram = (long[]) server.getAttribute(name, "FlushLatencyHistogram");
+        assertEquals(BufferPoolStats.LatencyHistogram.BUCKETS, histogram.length);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolStatsTest.class);
+    }
+}
@@ -0,0 +1,61 @@
+package simpledb;
+
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Measures what verifying page checksums costs a scan: the same table is
+ * scanned from two copies, one with its checksum side file and one without,
+ * so that only the first is verified.  Both scans read every page through
+ * readPage, alternating so that neither gets a warmer JIT or file cache.
+ * Run with
+ * <p>
+ *      java -cp bin/src:bin/test:lib/* simpledb.ChecksumBenchmark [pages]
+ */
+public class ChecksumBenchmark {
+    private static int sink;
+
+    /** @return the nanoseconds a full scan of hf takes through a small pool */
+    private static long scan(HeapFile hf) throws Exception {
+        // a pool too small to keep the table, so every page is read
+        Database.resetBufferPool(50);
+        long start = System.nanoTime();
+        SeqScan ss = new SeqScan(new TransactionId(), hf.getId(), "");
+        ss.open();
+        while (ss.hasNext())
+            sink += ((IntField) ss.next().getField(3)).getValue();
+        ss.close();
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = 10;
+        File f = SystemTestUtil.createRandomHeapFileUnopened(4, 254 * pages, 1000000, null,
+                new ArrayList<ArrayList<Integer>>());
+        File copy = SystemTestUtil.createTempTableFile("unchecked");
+        Files.copy(f.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        new File(copy.getPath() + ".crc").delete();
+
+        HeapFile checked = new HeapFile(f, Utility.getTupleDesc(4));
+        HeapFile unchecked = new HeapFile(copy, Utility.getTupleDesc(4));
+        Database.getCatalog().addTable(checked, "checked");
+        Database.getCatalog().addTable(unchecked, "unchecked");
+        if (checked.getChecksums().getChecksum(checked.numPages() - 1) == PageChecksums.NONE
+                || unchecked.getChecksums().getChecksum(0) != PageChecksums.NONE)
+            throw new IllegalStateException("only the first copy should have checksums");
+
+        long withCrc = Long.MAX_VALUE;
+        long withoutCrc = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            withCrc = Math.min(withCrc, scan(checked));
+            withoutCrc = Math.min(withoutCrc, scan(unchecked));
+        }
+        System.out.printf("%d pages: scan %.1f ms with checksums, %.1f ms without, %+.1f%% (%d)%n",
+                checked.numPages(), withCrc / 1e6, withoutCrc / 1e6,
+                100.0 * (withCrc - withoutCrc) / withoutCrc, sink & 1);
+    }
+}
@@ -0,0 +1,162 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class CompiledPredicateTest extends SimpleDbTestBase {
+    private static final int[] VALUES = { Integer.MIN_VALUE, -7, -1, 0, 1, 3, 7, Integer.MAX_VALUE };
+
+    private HeapPageId pid;
+    private List<Tuple> tuples;
+
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        tuples = new ArrayList<Tuple>();
+        for (int a : VALUES)
+            for (int b : VALUES)
+                tuples.add(Utility.getTuple(new int[] { a, b }, 2));
+    }
+
+    /** Fills a page of the given class with tuples, in slot order. */
+    private HeapPage fill(HeapPage page) throws DbException {
+        for (Tuple t : tuples)
+            page.insertTuple(t);
+        return page;
+    }
+
+    /** @return a batch of every tuple, all selected */
+    private TupleBatch batch() {
+        TupleBatch batch = new TupleBatch(Utility.getTupleDesc(2), tuples.size());
+        for (Tuple t : tuples)
+            batch.addTuple(t);
+        return batch;
+    }
+
+    /** Asserts that p gives what filter gives, on tuples, page bytes and batches. */
+    private void check(CompiledPredicate p, List<Predicate> conjunction, boolean disjunction)
+            throws Exception {
+        HeapPage row = fill(new HeapPage(pid, HeapPage.createEmptyPageData()));
+        HeapPage pax = fill(new PaxPage(pid, HeapPage.createEmptyPageData()));
+        TupleBatch batch = batch();
+        p.select(batch);
+        int selected = 0;
+        for (int i = 0; i < tuples.size(); i++) {
+            Tuple t = tuples.get(i);
+            boolean expected = !disjunction;
+            for (Predicate q : conjunction)
+                expected = disjunction ? expected || q.filter(t) : expected && q.filter(t);
+            String msg = p + " on " + t;
+            assertEquals(msg, expected, p.matches(t));
+            assertEquals(msg, expected, row.matches(i, p));
+            assertEquals(msg, expected, pax.matches(i, p));
+            if (expected)
+                assertEquals(msg, i, batch.getSelection()[selected++]);
+        }
+        assertEquals(selected, batch.numSelected());
+    }
+
+    /** Every int operator, at every constant including the extremes. */
+    @Test public void intComparisons() throws Exception {
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (int c : VALUES) {
+                Predicate p = new Predicate(1, op, new IntField(c));
+                check(p.compile(), Arrays.asList(p), false);
+            }
+        }
+    }
+
+    /** Conjunctions merge ranges on a field; disjunctions keep row order. */
+    @Test public void conjunctions() throws Exception {
+        Predicate gt = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(-7));
+        Predicate le = new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(3));
+        Predicate ne = new Predicate(1, Predicate.Op.NOT_EQUALS, new IntField(0));
+        Predicate eq = new Predicate(1, Predicate.Op.EQUALS, new IntField(7));
+
+        CompiledPredicate and = CompiledPredicate.and(gt, le, ne);
+        assertTrue(and.toString(), and.toString().startsWith("-6 <= f0 <= 3"));
+        check(and, Arrays.asList(gt, le, ne), false);
+
+        Predicate lt = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(-7));
+        assertSame(CompiledPredicate.FALSE, CompiledPredicate.and(gt, lt));
+        assertSame(CompiledPredicate.TRUE, CompiledPredicate.and());
+
+        CompiledPredicate or = CompiledPredicate.or(Arrays.asList(lt.compile(), eq.compile(), le.compile()));
+        check(or, Arrays.asList(lt, eq, le), true);
+        assertSame(CompiledPredicate.TRUE,
+                CompiledPredicate.or(Arrays.asList(CompiledPredicate.TRUE, eq.compile())));
+    }
+
+    /**
+     * Bounds on a field rule a predicate out only if no value within them
+     * matches, and do rule out ranges that miss them.
+     */
+    @Test public void bounds() throws Exception {
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (int c : VALUES) {
+                CompiledPredicate p = new Predicate(1, op, new IntField(c)).compile();
+                for (int lo : VALUES) {
+                    for (int hi : VALUES) {
+                        if (hi < lo)
+                            continue;
+                        int[] min = { Integer.MIN_VALUE, lo };
+                        int[] max = { Integer.MAX_VALUE, hi };
+                        for (int v : VALUES)
+                            if (v >= lo && v <= hi && p.matches(Utility.getTuple(new int[] { 0, v }, 2)))
+                                assertTrue(p + " within " + lo + ".." + hi, p.mayMatch(min, max));
+                    }
+                }
+            }
+        }
+        CompiledPredicate range = CompiledPredicate.and(
+                new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(-7)),
+                new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(3)));
+        assertFalse(range.mayMatch(new int[] { 4, 0 }, new int[] { 7, 0 }));
+        assertTrue(range.mayMatch(new int[] { 3, 0 }, new int[] { 7, 0 }));
+        assertFalse(CompiledPredicate.or(Arrays.asList(range, CompiledPredicate.FALSE))
+                .mayMatch(new int[] { -9, 0 }, new int[] { -7, 0 }));
+    }
+
+    /** String operators give what StringField.compare gives. */
+    @Test public void strings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        String[] values = { "", "apple", "banana", "band" };
+        TupleBatch batch = new TupleBatch(td, values.length);
+        for (String v : values) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField(v, Type.STRING_LEN));
+            batch.addTuple(t);
+        }
+        for (Predicate.Op op : Predicate.Op.values()) {
+            Predicate p = new Predicate(0, op, new StringField("ban", Type.STRING_LEN));
+            CompiledPredicate c = p.compile();
+            batch.setNumSelected(values.length);
+            for (int i = 0; i < values.length; i++)
+                batch.getSelection()[i] = i;
+            c.select(batch);
+            int selected = 0;
+            for (int i = 0; i < values.length; i++) {
+                Tuple t = batch.getTuple(i);
+                assertEquals(p.filter(t), c.matches(t));
+                if (p.filter(t))
+                    assertEquals(i, batch.getSelection()[selected++]);
+            }
+            assertEquals(selected, batch.numSelected());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompiledPredicateTest.class);
+    }
+}
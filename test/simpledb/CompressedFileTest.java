@@ -0,0 +1,161 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class CompressedFileTest extends SimpleDbTestBase {
+
+    private static void roundTrip(byte[] data) throws IOException {
+        byte[] packed = LZCodec.compress(data, 0, data.length);
+        byte[] unpacked = new byte[data.length];
+        LZCodec.decompress(packed, 0, packed.length, unpacked);
+        assertArrayEquals(data, unpacked);
+    }
+
+    /**
+     * Blocks of every kind decompress to what was compressed, runs of
+     * zeroes shrink to almost nothing, and corrupt blocks are refused.
+     */
+    @Test public void codec() throws Exception {
+        Random r = new Random(17);
+        byte[] random = new byte[70000];
+        r.nextBytes(random);
+        byte[] zeroes = new byte[BufferPool.getPageSize()];
+        byte[] repeats = new byte[5000];
+        for (int i = 0; i < repeats.length; i++)
+            repeats[i] = (byte) (i % 7 == 0 ? r.nextInt(4) : i % 13);
+        roundTrip(new byte[0]);
+        roundTrip(new byte[] { 1, 2, 3 });
+        roundTrip(random);
+        roundTrip(zeroes);
+        roundTrip(repeats);
+        assertTrue(LZCodec.compress(zeroes, 0, zeroes.length).length < 32);
+
+        byte[] packed = LZCodec.compress(repeats, 0, repeats.length);
+        try {
+            LZCodec.decompress(packed, 0, packed.length - 3, new byte[repeats.length]);
+            fail("truncated block should be refused");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Row pages are encoded with a dictionary of their strings, and come
+     * back as the page they were, empty slots included.
+     */
+    @Test public void rowEncoding() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(-1, 0);
+        HeapPage page = new HeapPage(pid, new byte[BufferPool.getPageSize()]);
+        for (int i = 0; page.getNumEmptySlots() > 1; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(i % 3 == 0 ? "red" : "a somewhat longer string", Type.STRING_LEN));
+            page.insertTuple(t);
+        }
+        File f = SystemTestUtil.createTempTableFile("table");
+        CompressedFile cf = new CompressedFile(f, BufferPool.getPageSize(), td, HeapFile.Layout.ROW);
+        byte[] stored = cf.encode(page.getPageData());
+        assertEquals(CompressedFile.ROWS, stored[0]);
+        assertTrue(stored.length < BufferPool.getPageSize() / 8);
+        assertArrayEquals(page.getPageData(), cf.decode(stored));
+
+        cf.write(2, page);
+        assertEquals(3, cf.numPages());
+        assertArrayEquals(page.getPageData(), cf.read(2));
+        assertArrayEquals(new byte[BufferPool.getPageSize()], cf.read(0));
+    }
+
+    /**
+     * A compressed HeapFile converted from an encoded one scans the same
+     * tuples, takes a fraction of the space, and is written back to
+     * through the BufferPool.
+     */
+    @Test public void heapFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        // a half-full last page, with small values
+        File raw = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 5 + 250, 100, null, tuples);
+        File f = SystemTestUtil.createTempTableFile("compressed");
+        HeapFileEncoder.compress(raw, f, BufferPool.getPageSize(), Utility.getTupleDesc(2));
+        assertTrue(f.length() < raw.length() / 2);
+
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), BufferPool.getPageSize(),
+                HeapFile.Storage.COMPRESSED, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertEquals(6, hf.numPages());
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 5));
+        assertEquals(504 - 250, page.getNumEmptySlots());
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 300; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        bp.flushAllPages();
+        assertEquals(7, hf.numPages());
+
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2), BufferPool.getPageSize(),
+                HeapFile.Storage.COMPRESSED, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(reopened, tuples);
+    }
+
+    /**
+     * Pages are written copy-on-write: until a page rewritten is published,
+     * the file read afresh, as after a crash, still has the old page, and
+     * the space the old page leaves is reused once the file is forced.
+     */
+    @Test public void copyOnWrite() throws Exception {
+        int pageSize = BufferPool.getPageSize();
+        TupleDesc td = Utility.getTupleDesc(2);
+        File f = SystemTestUtil.createTempTableFile("cow");
+        f.delete();
+        CompressedFile cf = new CompressedFile(f, pageSize, td, HeapFile.Layout.PAX);
+        byte[] old = new byte[pageSize];
+        byte[] changed = new byte[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            old[i] = (byte) (i % 3);
+            changed[i] = (byte) (i * 31 % 127);
+        }
+        for (int i = 0; i < 3; i++)
+            cf.write(i, old);
+        cf.force();
+        assertEquals(0, cf.freeBytes());
+
+        cf.write(1, changed);
+        assertArrayEquals(changed, cf.read(1));
+        assertArrayEquals(old, new CompressedFile(f, pageSize, td, HeapFile.Layout.PAX).read(1));
+        cf.publish();
+        assertArrayEquals(changed, new CompressedFile(f, pageSize, td, HeapFile.Layout.PAX).read(1));
+        assertEquals(cf.storedSize(0), cf.freeBytes());
+
+        // the old page's space is free once the index is forced
+        cf.force();
+        long length = f.length();
+        cf.write(1, old);
+        assertEquals(length, f.length());
+        cf.force();
+        assertEquals(cf.storedSize(1), cf.storedSize(0));
+        assertArrayEquals(old, new CompressedFile(f, pageSize, td, HeapFile.Layout.PAX).read(1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedFileTest.class);
+    }
+}
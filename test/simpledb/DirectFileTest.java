@@ -0,0 +1,92 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class DirectFileTest extends SimpleDbTestBase {
+
+    /**
+     * Aligned buffers start on the requested boundary and have the
+     * requested capacity.
+     */
+    @Test public void alignedBuffers() throws Exception {
+        for (int capacity : new int[] { 1, 4096, 10000 }) {
+            ByteBuffer buf = DirectFile.allocateAligned(capacity, 4096);
+            assertEquals(capacity, buf.capacity());
+            assertTrue(buf.isDirect());
+            assertEquals(0, buf.alignmentOffset(0, 4096));
+        }
+        FrameArena arena = new FrameArena(3, 4096);
+        byte[] data = new byte[4096];
+        data[17] = 5;
+        arena.write(2, data);
+        assertArrayEquals(data, arena.read(2));
+    }
+
+    /**
+     * A HeapFile in direct mode, or in ordinary mode where direct I/O is
+     * not available, reads what the encoder wrote and what it writes itself.
+     */
+    @Test public void heapFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3 + 10, 1000, null, tuples);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), BufferPool.getPageSize(),
+                HeapFile.Storage.DIRECT, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 600; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        bp.flushAllPages();
+        hf.force();
+        assertEquals(5, hf.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Replacing a table in the catalog closes the file it replaces, which
+     * in direct mode can then no longer be read.
+     */
+    @Test public void closedWhenReplaced() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504, 1000, null,
+                new ArrayList<ArrayList<Integer>>());
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), BufferPool.getPageSize(),
+                HeapFile.Storage.DIRECT, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        byte[] data = hf.readPage(pid).getPageData();
+
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2), BufferPool.getPageSize(),
+                HeapFile.Storage.DIRECT, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertArrayEquals(data, reopened.readPage(pid).getPageData());
+        if (!hf.isDirectIO())
+            return; // ordinary I/O keeps no file open
+        try {
+            hf.readPage(pid);
+            fail("a closed file was read");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DirectFileTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final int HOT_PAGES = 6;
+    private static final int COLD_PAGES = 2000;
+
+    /** Filter that lets every page go. */
+    private static final EvictionPolicy.Filter ANY = new EvictionPolicy.Filter() {
+        public boolean canEvict(PageId pid) {
+            return true;
+        }
+    };
+
+    /**
+     * Unit test for LruEvictionPolicy: the least recently touched page goes
+     * first.
+     */
+    @Test public void lruOrder() {
+        EvictionPolicy lru = EvictionPolicy.Kind.LRU.create(3);
+        HeapPageId p0 = new HeapPageId(1, 0);
+        HeapPageId p1 = new HeapPageId(1, 1);
+        HeapPageId p2 = new HeapPageId(1, 2);
+        lru.pageAdmitted(p0);
+        lru.pageAdmitted(p1);
+        lru.pageAdmitted(p2);
+        lru.pageAccessed(p0);
+
+        assertEquals(p1, lru.evict(ANY));
+        assertEquals(p2, lru.evict(ANY));
+        assertEquals(p0, lru.evict(ANY));
+        assertNull(lru.evict(ANY));
+    }
+
+    /**
+     * Unit test for TwoQueueEvictionPolicy: a page seen twice is promoted and
+     * outlives pages seen once.
+     */
+    @Test public void twoQueuePromotion() {
+        EvictionPolicy twoQ = EvictionPolicy.Kind.TWO_QUEUE.create(4);
+        HeapPageId hot = new HeapPageId(1, 0);
+        twoQ.pageAdmitted(hot);
+        assertEquals(hot, twoQ.evict(ANY));
+
+        // readmitted while its id is remembered: goes to the main queue
+        twoQ.pageAdmitted(hot);
+        for (int i = 1; i <= 3; i++)
+            twoQ.pageAdmitted(new HeapPageId(1, i));
+        assertEquals(new HeapPageId(1, 1), twoQ.evict(ANY));
+        assertEquals(new HeapPageId(1, 2), twoQ.evict(ANY));
+    }
+
+    /**
+     * Every policy must hand back each resident page exactly once and forget
+     * discarded pages.
+     */
+    @Test public void evictsOnlyResidentPages() {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            EvictionPolicy policy = kind.create(8);
+            for (int i = 0; i < 8; i++)
+                policy.pageAdmitted(new HeapPageId(1, i));
+            policy.pageRemoved(new HeapPageId(1, 3));
+
+            HashSet<PageId> victims = new HashSet<PageId>();
+            PageId victim;
+            while ((victim = policy.evict(ANY)) != null)
+                assertTrue(kind + " evicted " + victim + " twice", victims.add(victim));
+            assertEquals(kind.toString(), 7, victims.size());
+            assertTrue(kind.toString(), !victims.contains(new HeapPageId(1, 3)));
+        }
+    }
+
+    /**
+     * Pages the filter rejects are skipped without losing their place.
+     */
+    @Test public void skipsPinnedPages() {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            EvictionPolicy policy = kind.create(4);
+            final HeapPageId pinned = new HeapPageId(1, 0);
+            HeapPageId other = new HeapPageId(1, 1);
+            policy.pageAdmitted(pinned);
+            policy.pageAdmitted(other);
+
+            EvictionPolicy.Filter unpinned = new EvictionPolicy.Filter() {
+                public boolean canEvict(PageId pid) {
+                    return !pid.equals(pinned);
+                }
+            };
+            assertEquals(kind.toString(), other, policy.evict(unpinned));
+            assertNull(kind.toString(), policy.evict(unpinned));
+            assertEquals(kind.toString(), pinned, policy.evict(ANY));
+        }
+    }
+
+    /**
+     * A victim that stays resident goes back where it was taken from: it is
+     * the next victim again, and a 2Q probationary page is not promoted.
+     */
+    @Test public void failedEvictionKeepsPlace() {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            EvictionPolicy policy = kind.create(4);
+            for (int i = 0; i < 4; i++)
+                policy.pageAdmitted(new HeapPageId(1, i));
+            PageId victim = policy.evict(ANY);
+            policy.evictFailed(victim);
+            if (kind != EvictionPolicy.Kind.RANDOM)
+                assertEquals(kind.toString(), victim, policy.evict(ANY));
+
+            HashSet<PageId> victims = new HashSet<PageId>();
+            victims.add(victim);
+            PageId next;
+            while ((next = policy.evict(ANY)) != null)
+                victims.add(next);
+            assertEquals(kind.toString(), 4, victims.size());
+        }
+    }
+
+    /**
+     * Point lookups against a small hot table, interleaved with a full scan
+     * of a large cold table.
+     * @return the hit ratio of the hot lookups once the pool is warm
+     */
+    private double hotHitRatio(EvictionPolicy.Kind kind) throws Exception {
+        CountingFile hot = new CountingFile(1);
+        CountingFile cold = new CountingFile(2);
+        Database.getCatalog().addTable(hot, "hot");
+        Database.getCatalog().addTable(cold, "cold");
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES / 5, kind);
+        TransactionId tid = new TransactionId();
+
+        int lookups = 0;
+        for (int i = 0; i < COLD_PAGES; i++) {
+            if (i == COLD_PAGES / 2) {
+                hot.readCount = 0;
+                lookups = 0;
+            }
+            bp.getPage(tid, new HeapPageId(1, i % HOT_PAGES), Permissions.READ_ONLY);
+            lookups++;
+            bp.getPage(tid, new HeapPageId(2, i), Permissions.READ_ONLY);
+        }
+        assertEquals(COLD_PAGES, cold.readCount);
+        return 1.0 - (double) hot.readCount / lookups;
+    }
+
+    /**
+     * A concurrent scan must not flush the hot pages out of a 2Q pool, as it
+     * does with LRU.
+     */
+    @Test public void scanResistance() throws Exception {
+        double twoQ = hotHitRatio(EvictionPolicy.Kind.TWO_QUEUE);
+        double lru = hotHitRatio(EvictionPolicy.Kind.LRU);
+
+        assertTrue("2Q hot hit ratio " + twoQ, twoQ > 0.9);
+        assertTrue("LRU hot hit ratio " + lru, lru < 0.5);
+        assertEquals(BufferPool.DEFAULT_EVICTION_POLICY, EvictionPolicy.Kind.TWO_QUEUE);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
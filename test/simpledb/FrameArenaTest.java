@@ -0,0 +1,199 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FrameArenaTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for FrameArena.allocate() and free()
+     */
+    @Test public void allocateAndFree() {
+        FrameArena arena = new FrameArena(4, 64);
+        HashSet<Integer> slots = new HashSet<Integer>();
+        for (int i = 0; i < 4; i++)
+            assertTrue(slots.add(arena.allocate()));
+        assertEquals(-1, arena.allocate());
+
+        arena.free(2);
+        assertEquals(2, arena.allocate());
+    }
+
+    /**
+     * Unit test for FrameArena.write() and read(): frames do not overlap.
+     */
+    @Test public void readWrite() {
+        FrameArena arena = new FrameArena(3, 16);
+        for (int slot = 0; slot < 3; slot++) {
+            byte[] data = new byte[16];
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte) (slot * 16 + i);
+            arena.write(slot, data);
+        }
+        for (int slot = 0; slot < 3; slot++) {
+            byte[] data = arena.read(slot);
+            assertEquals(16, data.length);
+            assertEquals((byte) (slot * 16), data[0]);
+            assertEquals((byte) (slot * 16 + 15), data[15]);
+        }
+
+        // a short write leaves the rest of the frame alone
+        arena.write(1, new byte[] { 7 });
+        byte[] data = arena.read(1);
+        assertEquals(7, data[0]);
+        assertEquals((byte) 17, data[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedWrite() {
+        new FrameArena(1, 8).write(0, new byte[9]);
+    }
+
+    /**
+     * Unit test for off-heap BufferPool mode: pages dropped from the heap are
+     * rebuilt from the arena with the same contents.
+     */
+    @Test public void offHeapBufferPool() throws Exception {
+        TestUtil.CountingFile file = new TestUtil.CountingFile(1);
+        Database.getCatalog().addTable(file, "counting");
+        int pages = 4 * BufferPool.DEFAULT_PAGES;
+        BufferPool bp = Database.resetBufferPool(pages, BufferPool.DEFAULT_EVICTION_POLICY, true);
+        TransactionId tid = new TransactionId();
+
+        TestUtil.MockPage held = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_ONLY);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < pages; i++) {
+                TestUtil.MockPage p = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, i), Permissions.READ_ONLY);
+                assertEquals(i, p.getInt(0));
+            }
+        }
+        // the whole table fits in the arena, so nothing was read twice
+        assertEquals(pages, file.readCount);
+        // a page the caller still holds keeps its identity
+        assertTrue(held == bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_ONLY));
+        assertArrayEquals(held.getPageData(),
+                bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_ONLY).getPageData());
+    }
+
+    /**
+     * Dirty pages are never dropped from the heap before they are flushed,
+     * and flushing copies their new contents into the arena.
+     */
+    @Test public void offHeapDirtyPages() throws Exception {
+        TestUtil.CountingFile file = new TestUtil.CountingFile(1);
+        Database.getCatalog().addTable(file, "counting");
+        int pages = 4 * BufferPool.DEFAULT_PAGES;
+        BufferPool bp = Database.resetBufferPool(pages, BufferPool.DEFAULT_EVICTION_POLICY, true);
+        TransactionId tid = new TransactionId();
+
+        TestUtil.MockPage dirty = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_WRITE);
+        dirty.setInt(4, 42);
+        dirty.markDirty(true, tid);
+        dirty = null;
+
+        for (int i = 1; i < pages; i++)
+            bp.getPage(tid, new HeapPageId(1, i), Permissions.READ_ONLY);
+        System.gc();
+        TestUtil.MockPage p = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_ONLY);
+        assertEquals(42, p.getInt(4));
+        assertEquals(tid, p.isDirty());
+
+        bp.flushAllPages();
+        assertEquals(1, file.writeCount);
+        p = null;
+        for (int i = 1; i < pages; i++)
+            bp.getPage(tid, new HeapPageId(1, i), Permissions.READ_ONLY);
+        System.gc();
+        p = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_ONLY);
+        assertEquals(42, p.getInt(4));
+        assertEquals(null, p.isDirty());
+    }
+
+    /**
+     * A page handed out READ_WRITE stays materialized until its transaction
+     * completes, so changes made to it after other pages have been read are
+     * not lost.
+     */
+    @Test public void offHeapHeldPages() throws Exception {
+        TestUtil.CountingFile file = new TestUtil.CountingFile(1);
+        Database.getCatalog().addTable(file, "counting");
+        int pages = 4 * BufferPool.DEFAULT_PAGES;
+        BufferPool bp = Database.resetBufferPool(pages, BufferPool.DEFAULT_EVICTION_POLICY, true);
+        TransactionId tid = new TransactionId();
+
+        TestUtil.MockPage p = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_WRITE);
+        for (int i = 1; i < pages; i++)
+            bp.getPage(tid, new HeapPageId(1, i), Permissions.READ_ONLY);
+        p.setInt(4, 42);
+        p.markDirty(true, tid);
+        p = null;
+        System.gc();
+
+        bp.flushAllPages();
+        assertEquals(1, file.writeCount);
+        bp.transactionComplete(tid);
+        p = (TestUtil.MockPage) bp.getPage(tid, new HeapPageId(1, 0), Permissions.READ_ONLY);
+        assertEquals(42, p.getInt(4));
+    }
+
+    /** A HeapFile that counts the pages built from its bytes. */
+    private static class CountingHeapFile extends HeapFile {
+        final AtomicInteger built = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page newPage(PageId pid, byte[] data) {
+            built.incrementAndGet();
+            return super.newPage(pid, data);
+        }
+    }
+
+    /**
+     * An off-heap pool reads the bytes of HeapFile pages into the arena,
+     * and builds a prefetched page only when it is requested.
+     */
+    @Test public void offHeapRawReads() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFile(2, 2000, null, null).getFile();
+        CountingHeapFile hf = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertTrue(hf.numPages() >= 2);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES,
+                BufferPool.DEFAULT_EVICTION_POLICY, true);
+        TransactionId tid = new TransactionId();
+
+        HeapPageId pid = new HeapPageId(hf.getId(), 1);
+        bp.prefetchPage(pid);
+        while (bp.isPrefetching(pid))
+            Thread.sleep(1);
+        assertTrue(bp.isResident(pid));
+        assertEquals(0, hf.built.get());
+
+        Page page = bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(1, hf.built.get());
+        assertArrayEquals(hf.readPage(pid).getPageData(), page.getPageData());
+        bp.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(3, hf.built.get());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FrameArenaTest.class);
+    }
+}
@@ -0,0 +1,100 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    /**
+     * Fill classes, the search for a page with room, and saving and
+     * reloading the side file.
+     */
+    @Test public void classesAndPersistence() throws Exception {
+        File side = File.createTempFile("table", ".fsm");
+        side.delete();
+        side.deleteOnExit();
+        FreeSpaceMap map = new FreeSpaceMap(side, 100);
+        assertEquals(0, map.classOf(0));
+        assertEquals(1, map.classOf(1));
+        assertEquals(FreeSpaceMap.CLASSES, map.classOf(100));
+
+        // nothing known: the first page is worth a look
+        assertEquals(0, map.findPage(4));
+        map.update(0, 0);
+        map.update(2, 0);
+        assertEquals(FreeSpaceMap.UNKNOWN, map.getFillClass(1));
+        assertEquals(1, map.findPage(4));
+        map.update(1, 0);
+        assertEquals(3, map.findPage(4));
+        map.update(3, 0);
+        assertEquals(-1, map.findPage(4));
+        map.update(2, 50);
+        assertEquals(2, map.findPage(4));
+        map.write();
+
+        FreeSpaceMap reloaded = new FreeSpaceMap(side, 100);
+        assertEquals(0, reloaded.getFillClass(0));
+        assertEquals(map.classOf(50), reloaded.getFillClass(2));
+        assertEquals(2, reloaded.findPage(4));
+        reloaded.update(2, 0);
+        assertEquals(-1, reloaded.findPage(4));
+        assertEquals(4, reloaded.findPage(5));
+    }
+
+    /**
+     * Once the map knows which pages are full, an insert fetches only the
+     * page with room; when no page has room, a new page is added.
+     */
+    @Test public void insertGoesToPageWithRoom() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 5, 1000, null, tuples);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+
+        // a scan reads every page, so the map learns they are all full
+        Tuple victim = null;
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; it.hasNext(); i++) {
+            Tuple t = it.next();
+            if (i == 504 * 3 + 10)
+                victim = t;
+        }
+        it.close();
+        bp.deleteTuple(tid, victim);
+        bp.flushAllPages();
+
+        // a new HeapFile loads the map from the side file
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Tuple t = Utility.getHeapTuple(7, 2);
+        bp.insertTuple(tid, reopened.getId(), t);
+        assertEquals(new HeapPageId(reopened.getId(), 3), t.getRecordId().getPageId());
+        assertEquals(1, bp.getStats().getMisses());
+
+        // the file is full now: the next insert goes to a new page
+        t = Utility.getHeapTuple(8, 2);
+        bp.insertTuple(tid, reopened.getId(), t);
+        assertEquals(6, reopened.numPages());
+        assertEquals(5, t.getRecordId().getPageId().pageNumber());
+        assertEquals(2, bp.getStats().getMisses());
+        assertEquals(FreeSpaceMap.CLASSES, reopened.getFreeSpaceMap().getFillClass(5));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -55,8 +55,7 @@ public class HeapPageReadTest extends SimpleDbTestBase {
 
         // Convert it to a HeapFile and read in the bytes
         try {
-            File temp = File.createTempFile("table", ".dat");
-            temp.deleteOnExit();
+            File temp = SystemTestUtil.createTempTableFile("table");
             HeapFileEncoder.convert(table, temp, BufferPool.getPageSize(), 2);
             EXAMPLE_DATA = TestUtil.readFileBytes(temp.getAbsolutePath());
         } catch (IOException e) {
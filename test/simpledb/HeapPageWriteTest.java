@@ -0,0 +1,144 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HeapPageWriteTest extends SimpleDbTestBase {
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for HeapPage.insertTuple(): tuples go to the free slots in
+     * order, read back as inserted, and a full page refuses more.
+     */
+    @Test public void addTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA.clone());
+        int free = page.getNumEmptySlots();
+        for (int i = 0; i < free; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, 20 + i), t.getRecordId());
+        }
+        assertEquals(0, page.getNumEmptySlots());
+        try {
+            page.insertTuple(Utility.getHeapTuple(0, 2));
+            fail("page should be full");
+        } catch (DbException expected) {
+        }
+
+        HeapPage reread = new HeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = reread.iterator();
+        for (int i = 0; i < 20; i++)
+            it.next();
+        for (int i = 0; i < free; i++)
+            assertEquals(new IntField(i), it.next().getField(0));
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for HeapPage.deleteTuple(); a deleted tuple keeps its
+     * values even once its slot is reused.
+     */
+    @Test public void deleteTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA.clone());
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        assertNull(first.getRecordId());
+        assertFalse(page.isSlotUsed(0));
+        try {
+            first.setRecordId(new RecordId(pid, 0));
+            page.deleteTuple(first);
+            fail("slot 0 is already empty");
+        } catch (DbException expected) {
+        }
+
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        assertTrue(page.isSlotUsed(0));
+        assertEquals(new IntField(HeapPageReadTest.EXAMPLE_VALUES[0][1]), first.getField(1));
+    }
+
+    /**
+     * Empty slots are found across the 64-bit words of the header, and the
+     * iterator skips them, including at word boundaries and in the last,
+     * partial word.
+     */
+    @Test public void slotBitmap() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA.clone());
+        assertEquals(504, page.numSlots);
+        while (page.getNumEmptySlots() > 0)
+            page.insertTuple(Utility.getHeapTuple(1, 2));
+
+        int[] holes = { 0, 63, 64, 130, 503 };
+        Tuple[] all = new Tuple[504];
+        Iterator<Tuple> it = page.iterator();
+        for (int i = 0; i < 504; i++)
+            all[i] = it.next();
+        for (int i = holes.length - 1; i >= 0; i--)
+            page.deleteTuple(all[holes[i]]);
+        assertEquals(holes.length, page.getNumEmptySlots());
+
+        int seen = 0;
+        int next = 0;
+        for (it = page.iterator(); it.hasNext(); seen++) {
+            int slot = it.next().getRecordId().tupleno();
+            assertTrue(slot >= next);
+            assertTrue(Arrays.binarySearch(holes, slot) < 0);
+            next = slot + 1;
+        }
+        assertEquals(504 - holes.length, seen);
+
+        for (int hole : holes) {
+            Tuple t = Utility.getHeapTuple(2, 2);
+            page.insertTuple(t);
+            assertEquals(hole, t.getRecordId().tupleno());
+        }
+        assertEquals(0, page.getNumEmptySlots());
+    }
+
+    /**
+     * The before-image is only copied when the page changes, and
+     * getPageData(ByteBuffer) writes what getPageData() returns.
+     */
+    @Test public void beforeImage() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, data);
+        assertSame(data, page.oldData);
+
+        page.insertTuple(Utility.getHeapTuple(99, 2));
+        assertNotSame(data, page.oldData);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        assertSame(data, page.oldData);
+        assertArrayEquals(page.getPageData(), page.getBeforeImage().getPageData());
+
+        ByteBuffer buf = ByteBuffer.allocate(data.length + 1);
+        buf.put((byte) 1);
+        page.getPageData(buf);
+        assertFalse(buf.hasRemaining());
+        assertArrayEquals(page.getPageData(), Arrays.copyOfRange(buf.array(), 1, buf.capacity()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapPageWriteTest.class);
+    }
+}
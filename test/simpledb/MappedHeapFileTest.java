@@ -0,0 +1,106 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private static final int PAGES = 5;
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile plain;
+    private HeapFile mapped;
+
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * PAGES, 1000, null, tuples);
+        plain = new HeapFile(f, Utility.getTupleDesc(2));
+        mapped = new HeapFile(f, Utility.getTupleDesc(2), HeapFile.Storage.MAPPED);
+        assertTrue(mapped.isMemoryMapped());
+        // both share the file's id; HeapPage looks the schema up by it
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Pages read through the mapping match those read with plain I/O.
+     */
+    @Test
+    public void readPage() throws Exception {
+        assertEquals(PAGES, mapped.numPages());
+        for (int i = 0; i < PAGES; i++) {
+            HeapPageId pid = new HeapPageId(plain.getId(), i);
+            assertArrayEquals(plain.readPage(pid).getPageData(), mapped.readPage(pid).getPageData());
+        }
+    }
+
+    /**
+     * A page read from the mapping is a private copy: changing it in memory
+     * leaves the file and the page's before-image alone until it is written.
+     */
+    @Test
+    public void writePage() throws Exception {
+        HeapPageId pid = new HeapPageId(mapped.getId(), 1);
+        HeapPage page = (HeapPage) mapped.readPage(pid);
+        byte[] original = page.getPageData();
+        byte[] changed = original.clone();
+        changed[100] ^= 1; // inside the tuple data
+        HeapPage modified = new HeapPage(pid, changed);
+
+        assertArrayEquals(original, mapped.readPage(pid).getPageData());
+        mapped.writePage(modified);
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+        assertArrayEquals(changed, plain.readPage(pid).getPageData());
+        assertArrayEquals(changed, mapped.readPage(pid).getPageData());
+    }
+
+    /**
+     * Writing the page after the last one extends the file, and the new
+     * page can be read back through the mapping.
+     */
+    @Test
+    public void appendPage() throws Exception {
+        HeapPageId pid = new HeapPageId(mapped.getId(), PAGES);
+        byte[] data = plain.readPage(new HeapPageId(plain.getId(), 0)).getPageData();
+        mapped.writePage(new HeapPage(pid, data));
+        assertEquals(PAGES + 1, mapped.numPages());
+        assertArrayEquals(data, mapped.readPage(pid).getPageData());
+    }
+
+    /**
+     * A scan of a memory-mapped table returns every tuple.
+     */
+    @Test
+    public void scan() throws Exception {
+        SystemTestUtil.matchTuples(mapped, tuples);
+    }
+
+    /**
+     * A page written through the mapping is in the file once the file is
+     * closed, and a closed file is mapped again when it is used.
+     */
+    @Test
+    public void close() throws Exception {
+        HeapPageId pid = new HeapPageId(mapped.getId(), 2);
+        byte[] data = mapped.readPage(new HeapPageId(mapped.getId(), 0)).getPageData();
+        mapped.writePage(new HeapPage(pid, data));
+        mapped.close();
+        assertArrayEquals(data, plain.readPage(pid).getPageData());
+        assertArrayEquals(data, mapped.readPage(pid).getPageData());
+        mapped.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageChecksumsTest extends SimpleDbTestBase {
+
+    /**
+     * Pages written by HeapFileEncoder or a HeapFile are stamped; a page
+     * torn afterwards is refused by readPage and reported by the scrubber,
+     * while pages never stamped are read as they are.
+     */
+    @Test public void tornPage() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3, 1000, null, tuples);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertTrue(hf.getChecksums().getChecksum(2) != PageChecksums.NONE);
+        assertTrue(hf.verifyPage(1));
+
+        // rewrite pages 0 and 1 through the pool, which stamps them anew
+        int before = hf.getChecksums().getChecksum(1);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 504 + 10; i++)
+            bp.deleteTuple(tid, it.next());
+        it.close();
+        bp.flushAllPages();
+        assertTrue(hf.getChecksums().getChecksum(1) != before);
+
+        // the second half of page 1 never made it to disk
+        tear(f, 1);
+
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        reopened.readPage(new HeapPageId(reopened.getId(), 0));
+        try {
+            reopened.readPage(new HeapPageId(reopened.getId(), 1));
+            fail("torn page should be refused");
+        } catch (DbException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+        assertTrue(reopened.verifyPage(2));
+
+        Scrubber scrubber = new Scrubber(1000);
+        List<HeapPageId> corrupt = scrubber.scrub();
+        assertTrue(corrupt.contains(new HeapPageId(reopened.getId(), 1)));
+        assertFalse(corrupt.contains(new HeapPageId(reopened.getId(), 0)));
+
+        // without the side file, nothing is checked
+        reopened.getChecksums().getFile().delete();
+        HeapFile unchecked = new HeapFile(f, Utility.getTupleDesc(2));
+        assertEquals(PageChecksums.NONE, unchecked.getChecksums().getChecksum(1));
+        assertTrue(unchecked.verifyPage(1));
+    }
+
+    /**
+     * Until the file is next forced, a page written may be on disk as it
+     * was or as it was written, and both are read; once forced, only the
+     * new page is.
+     */
+    @Test public void crashAroundPageWrite() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3, 1000, null,
+                new ArrayList<ArrayList<Integer>>());
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(hf.getId(), 1);
+        byte[] old = hf.readPage(pid).getPageData();
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        page.deleteTuple(page.iterator().next());
+        byte[] written = page.getPageData();
+
+        // the checksum is written, but the page write is lost
+        hf.writePage(page);
+        overwrite(f, 1, old);
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertArrayEquals(old, reopened.readPage(new HeapPageId(reopened.getId(), 1)).getPageData());
+
+        // the page write made it, but the file was not forced
+        overwrite(f, 1, written);
+        reopened = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertArrayEquals(written, reopened.readPage(new HeapPageId(reopened.getId(), 1)).getPageData());
+
+        // once forced, the old page no longer passes
+        hf.force();
+        overwrite(f, 1, old);
+        reopened = new HeapFile(f, Utility.getTupleDesc(2));
+        assertFalse(reopened.verifyPage(1));
+    }
+
+    /** Writes data over page pageNo of f. */
+    private static void overwrite(File f, int pageNo, byte[] data) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.seek((long) pageNo * BufferPool.getPageSize());
+        raf.write(data);
+        raf.close();
+    }
+
+    /** Zeroes the second half of page pageNo of f. */
+    private static void tear(File f, int pageNo) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.seek((long) pageNo * BufferPool.getPageSize() + BufferPool.getPageSize() / 2);
+        raf.write(new byte[BufferPool.getPageSize() / 2]);
+        raf.close();
+    }
+
+    /**
+     * A page of a compressed file is checked as it is read back, so a
+     * page with a deleted tuple, whose bytes the encoding drops, passes.
+     */
+    @Test public void compressedPageWithDelete() throws Exception {
+        File f = SystemTestUtil.createTempTableFile("compressed");
+        f.delete();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), BufferPool.getPageSize(),
+                HeapFile.Storage.COMPRESSED, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        Tuple kept = Utility.getHeapTuple(1, 2);
+        Tuple deleted = Utility.getHeapTuple(2, 2);
+        page.insertTuple(deleted);
+        page.insertTuple(kept);
+        page.deleteTuple(deleted);
+        hf.writePage(page);
+
+        assertTrue(hf.verifyPage(0));
+        HeapPage read = (HeapPage) hf.readPage(pid);
+        assertEquals(page.getNumEmptySlots(), read.getNumEmptySlots());
+    }
+
+    /**
+     * Checksums survive in the side file, and the same bytes give the same
+     * checksum from an array and from a buffer.
+     */
+    @Test public void sideFile() throws Exception {
+        File side = File.createTempFile("table", ".crc");
+        side.delete();
+        side.deleteOnExit();
+        byte[] page = new byte[BufferPool.getPageSize()];
+        page[10] = 42;
+        int sum = PageChecksums.checksum(page, 0, page.length);
+        assertEquals(sum, PageChecksums.checksum(java.nio.ByteBuffer.wrap(page)));
+        assertTrue(sum != PageChecksums.NONE);
+
+        PageChecksums sums = new PageChecksums(side);
+        sums.stamp(3, sum);
+        sums.settle();
+        sums.write();
+        PageChecksums reloaded = new PageChecksums(side);
+        assertEquals(PageChecksums.NONE, reloaded.getChecksum(1));
+        assertEquals(sum, reloaded.getChecksum(3));
+        assertTrue(reloaded.verify(3, page));
+        page[11] = 1;
+        assertFalse(reloaded.verify(3, page));
+        assertTrue(reloaded.verify(1, page));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageChecksumsTest.class);
+    }
+}
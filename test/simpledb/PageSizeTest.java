@@ -0,0 +1,94 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageSizeTest extends SimpleDbTestBase {
+    private static final int LARGE_PAGE_SIZE = 4 * BufferPool.getPageSize();
+    private static final int LARGE_PAGES = 3;
+
+    private ArrayList<ArrayList<Integer>> largeTuples;
+    private ArrayList<ArrayList<Integer>> smallTuples;
+    private HeapFile large;
+    private HeapFile small;
+
+    @Before
+    public void setUp() throws Exception {
+        int perPage = (LARGE_PAGE_SIZE * 8) / (Utility.getTupleDesc(2).getSize() * 8 + 1);
+        largeTuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, perPage * LARGE_PAGES, 1000, null, largeTuples);
+        HeapFileEncoder.convert(largeTuples, f, LARGE_PAGE_SIZE, 2);
+        large = new HeapFile(f, Utility.getTupleDesc(2), LARGE_PAGE_SIZE, HeapFile.Storage.PLAIN);
+        Database.getCatalog().addTable(large, SystemTestUtil.getUUID());
+
+        smallTuples = new ArrayList<ArrayList<Integer>>();
+        small = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, smallTuples);
+        Database.getCatalog().addTable(small, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * A table with pages larger than the default is read and scanned with
+     * its own page size, next to a table that uses the default.
+     */
+    @Test
+    public void scan() throws Exception {
+        assertEquals(LARGE_PAGE_SIZE, large.getPageSize());
+        assertEquals(BufferPool.getPageSize(), small.getPageSize());
+        assertEquals(LARGE_PAGES, large.numPages());
+        HeapPage page = (HeapPage) large.readPage(new HeapPageId(large.getId(), 0));
+        assertEquals(LARGE_PAGE_SIZE, page.getPageData().length);
+        assertEquals(0, page.getNumEmptySlots());
+
+        Database.resetBufferPool(8);
+        SystemTestUtil.matchTuples(large, largeTuples);
+        SystemTestUtil.matchTuples(small, smallTuples);
+    }
+
+    /**
+     * A large page takes up as much of the pool's capacity as the
+     * default-size pages it spans.
+     */
+    @Test
+    public void largePagesWeighMore() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, new HeapPageId(large.getId(), 0), Permissions.READ_ONLY);
+        bp.getPage(tid, new HeapPageId(large.getId(), 1), Permissions.READ_ONLY);
+        assertEquals(0, bp.getStats().getEvictions());
+        assertEquals(2, bp.capacityFor(large.getId()));
+        assertEquals(8, bp.capacityFor(small.getId()));
+
+        // a third large page, or a small page on top of a full pool, evicts
+        bp.getPage(tid, new HeapPageId(large.getId(), 2), Permissions.READ_ONLY);
+        assertEquals(1, bp.getStats().getEvictions());
+        bp.getPage(tid, new HeapPageId(small.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(2, bp.getStats().getEvictions());
+        assertEquals(2, bp.residentPages());
+    }
+
+    /**
+     * An off-heap pool keeps pages of each size in an arena of that size.
+     */
+    @Test
+    public void offHeapMixedSizes() throws Exception {
+        Database.resetBufferPool(8, BufferPool.DEFAULT_EVICTION_POLICY, true);
+        SystemTestUtil.matchTuples(large, largeTuples);
+        SystemTestUtil.matchTuples(small, smallTuples);
+        SystemTestUtil.matchTuples(large, largeTuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
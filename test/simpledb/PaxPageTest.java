@@ -0,0 +1,86 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PaxPageTest extends SimpleDbTestBase {
+    private HeapPageId pid;
+
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(3)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * The values of a field are stored next to each other, and tuples read
+     * back with the slots and RecordIds they were inserted in.
+     */
+    @Test public void columns() throws Exception {
+        PaxPage page = new PaxPage(pid, new byte[BufferPool.getPageSize()]);
+        int n = page.getNumEmptySlots();
+        assertEquals(HeapPage.numSlots(BufferPool.getPageSize(), Utility.getTupleDesc(3)), n);
+        for (int i = 0; i < n; i++)
+            page.insertTuple(Utility.getTuple(new int[] { i, 1000 + i, 2000 + i }, 3));
+
+        byte[] data = page.getPageData();
+        int column1 = page.columnOffset(1);
+        assertEquals(page.columnOffset(0) + 4 * n, column1);
+        for (int i = 0; i < n; i++) {
+            assertEquals(1000 + i, Type.readInt(data, column1 + 4 * i));
+            assertEquals(2000 + i, page.getInt(2, i));
+        }
+
+        page.deleteTuple(page.iterator().next());
+        PaxPage reread = new PaxPage(pid, data);
+        Iterator<Tuple> it = page.iterator();
+        Iterator<Tuple> rit = reread.iterator();
+        rit.next();
+        for (int i = 1; i < n; i++) {
+            Tuple t = it.next();
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            assertEquals(new IntField(1000 + i), t.getField(1));
+            assertEquals(t.toString(), rit.next().toString());
+        }
+        assertFalse(it.hasNext());
+        assertTrue(page.getBeforeImage() instanceof PaxPage);
+    }
+
+    /**
+     * A HeapFile in the PAX layout inserts, writes and scans its pages.
+     */
+    @Test public void heapFile() throws Exception {
+        File f = SystemTestUtil.createTempTableFile("pax");
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(3), BufferPool.getPageSize(),
+                HeapFile.Storage.PLAIN, HeapFile.Layout.PAX);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        BufferPool bp = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 1000; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getTuple(new int[] { i, -i, 7 }, 3));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i, 7)));
+        }
+        bp.flushAllPages();
+        assertEquals(3, hf.numPages());
+        assertTrue(hf.readPage(new HeapPageId(hf.getId(), 0)) instanceof PaxPage);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxPageTest.class);
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PredicatePushdownTest extends SimpleDbTestBase {
+
+    /** @return a table of the given layout holding rows of { i, i % 10, -i } */
+    private HeapFile createTable(HeapFile.Layout layout, int rows, List<ArrayList<Integer>> tuples)
+            throws Exception {
+        File f = SystemTestUtil.createTempTableFile("pushdown");
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(3), BufferPool.getPageSize(), HeapFile.Storage.PLAIN, layout);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getTuple(new int[] { i, i % 10, -i }, 3));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10, -i)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return hf;
+    }
+
+    /**
+     * A filtered SeqScan returns just the matching tuples, whether read a
+     * tuple or a batch at a time, in every layout.
+     */
+    @Test public void filteredScan() throws Exception {
+        Predicate low = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(100));
+        Predicate high = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(1500));
+        Predicate digit = new Predicate(1, Predicate.Op.EQUALS, new IntField(3));
+        CompiledPredicate filter = CompiledPredicate.and(low, high, digit);
+        for (HeapFile.Layout layout : HeapFile.Layout.values()) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            HeapFile hf = createTable(layout, 2000, tuples);
+            ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+            for (ArrayList<Integer> t : tuples)
+                if (t.get(0) >= 100 && t.get(0) < 1500 && t.get(1) == 3)
+                    expected.add(t);
+
+            TransactionId tid = new TransactionId();
+            SystemTestUtil.matchTuples(new SeqScan(tid, hf.getId(), "t", filter), expected);
+            SystemTestUtil.matchTuples(BatchAdapter.toTuples(new SeqScan(tid, hf.getId(), "t", filter)), expected);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /** Tuples of a HeapPage that fail the filter are never built. */
+    @Test public void rowsNotBuilt() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = createTable(HeapFile.Layout.ROW, 300, tuples);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        TransactionId tid = new TransactionId();
+        CompiledPredicate filter = new Predicate(1, Predicate.Op.EQUALS, new IntField(7)).compile();
+        DbFileIterator it = hf.iterator(tid, filter);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            assertEquals(new IntField(7), it.next().getField(1));
+            count++;
+        }
+        it.close();
+        assertEquals(30, count);
+
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        for (int i = 0; i < 300; i++)
+            assertEquals("slot " + i, i % 10 == 7, page.tuples[i] != null);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PredicatePushdownTest.class);
+    }
+}
@@ -0,0 +1,109 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ProjectionScanTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+            new String[] { "id", "name", "score" });
+    private static final int ROWS = 500;
+
+    /** @return a table of the given layout holding rows of { i, "name" + i, i * 3 } */
+    private HeapFile createTable(HeapFile.Layout layout) throws Exception {
+        File f = SystemTestUtil.createTempTableFile("projection");
+        HeapFile hf = new HeapFile(f, TD, BufferPool.getPageSize(), HeapFile.Storage.PLAIN, layout);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(TD);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+            t.setField(2, new IntField(i * 3));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        return hf;
+    }
+
+    /**
+     * A scan for some columns returns narrow tuples of just those, in the
+     * order asked for, and can filter on a column it does not return.
+     */
+    @Test public void narrowTuples() throws Exception {
+        int[] columns = { 2, 0 };
+        CompiledPredicate filter = new Predicate(1, Predicate.Op.LIKE, new StringField("7", Type.STRING_LEN)).compile();
+        for (HeapFile.Layout layout : HeapFile.Layout.values()) {
+            HeapFile hf = createTable(layout);
+            TransactionId tid = new TransactionId();
+            SeqScan scan = new SeqScan(tid, hf.getId(), "t", filter, columns);
+            TupleDesc td = scan.getTupleDesc();
+            assertEquals(2, td.numFields());
+            assertEquals("t.score", td.getFieldName(0));
+            assertEquals("t.id", td.getFieldName(1));
+
+            Set<Integer> expected = new HashSet<Integer>();
+            for (int i = 0; i < ROWS; i++)
+                if (Integer.toString(i).contains("7"))
+                    expected.add(i);
+
+            scan.open();
+            Set<Integer> seen = new HashSet<Integer>();
+            while (scan.hasNext()) {
+                Tuple t = scan.next();
+                assertEquals(2, t.getTupleDesc().numFields());
+                int id = ((IntField) t.getField(1)).getValue();
+                assertEquals(new IntField(id * 3), t.getField(0));
+                assertNotNull(t.getRecordId());
+                assertTrue(layout + " " + id, seen.add(id));
+            }
+            assertEquals(layout.toString(), expected, seen);
+
+            scan.rewind();
+            seen.clear();
+            TupleBatch batch;
+            while ((batch = scan.nextBatch()) != null) {
+                int[] scores = batch.getInts(0);
+                int[] ids = batch.getInts(1);
+                int[] sel = batch.getSelection();
+                for (int k = 0; k < batch.numSelected(); k++) {
+                    assertEquals(ids[sel[k]] * 3, scores[sel[k]]);
+                    seen.add(ids[sel[k]]);
+                }
+            }
+            assertEquals(layout.toString(), expected, seen);
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /** A HeapPage decodes only the projected fields, and keeps no tuples. */
+    @Test public void pageProjection() throws Exception {
+        HeapFile hf = createTable(HeapFile.Layout.ROW);
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        Iterator<Tuple> it = page.iterator(CompiledPredicate.TRUE, new int[] { 1 });
+        Tuple t = it.next();
+        assertEquals(new TupleDesc(new Type[] { Type.STRING_TYPE }), t.getTupleDesc());
+        assertEquals("name0", t.getField(0).toString());
+        assertNull(page.tuples[0]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ProjectionScanTest.class);
+    }
+}
@@ -0,0 +1,184 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.CountingFile;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private static final int TABLE = 1;
+    private static final int FILE_PAGES = 1000;
+
+    private BufferPool bp;
+
+    @Before public void setUp() {
+        Database.getCatalog().addTable(new CountingFile(TABLE), "counting");
+        bp = Database.resetBufferPool(200);
+    }
+
+    /** Waits until the prefetcher has nothing queued for pages [0, n). */
+    private void awaitPrefetches(int n) throws InterruptedException {
+        for (int i = 0; i < n; i++) {
+            while (bp.isPrefetching(new HeapPageId(TABLE, i)))
+                Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Non-consecutive requests are not a scan, and trigger no prefetching.
+     */
+    @Test public void randomRequestsDoNotPrefetch() {
+        ReadAhead ra = new ReadAhead(bp, TABLE, FILE_PAGES);
+        for (int pgNo : new int[] {5, 9, 2, 7, 30, 12})
+            ra.pageRequested(pgNo);
+        for (int i = 0; i < 40; i++) {
+            HeapPageId pid = new HeapPageId(TABLE, i);
+            assertFalse(bp.isResident(pid) || bp.isPrefetching(pid));
+        }
+    }
+
+    /**
+     * A sequential reader gets the pages ahead of it loaded, and the window
+     * grows up to a quarter of the pool, but never past the end of the file.
+     */
+    @Test public void sequentialRequestsPrefetch() throws Exception {
+        ReadAhead ra = new ReadAhead(bp, TABLE, 60);
+        ra.pageRequested(0);
+        assertEquals(ReadAhead.MIN_WINDOW, ra.getWindow());
+        for (int i = 0; i < 60; i++) {
+            ra.pageRequested(i);
+            // stand in for the reader: touch the page it asked for
+            bp.getPage(new TransactionId(), new HeapPageId(TABLE, i), Permissions.READ_ONLY);
+        }
+        awaitPrefetches(FILE_PAGES);
+        assertEquals(200 / 4, ra.getWindow());
+        for (int i = 0; i < 60; i++)
+            assertTrue(bp.isResident(new HeapPageId(TABLE, i)));
+        assertFalse(bp.isResident(new HeapPageId(TABLE, 60)));
+    }
+
+    /**
+     * Prefetched pages that are gone by the time the reader gets to them
+     * shrink the window.
+     */
+    @Test public void wastedPrefetchesShrinkWindow() throws Exception {
+        ReadAhead ra = new ReadAhead(bp, TABLE, FILE_PAGES);
+        for (int i = 0; i < 20; i++)
+            ra.pageRequested(i);
+        int grown = ra.getWindow();
+        assertTrue(grown > ReadAhead.MIN_WINDOW);
+
+        awaitPrefetches(FILE_PAGES);
+        for (int i = 20; i < 20 + grown; i++)
+            bp.discardPage(new HeapPageId(TABLE, i));
+        ra.pageRequested(20);
+        assertEquals(grown / 2, ra.getWindow());
+    }
+
+    /**
+     * A prefetched page stays on probation until it is requested, so a
+     * read-ahead that is never used cannot displace hot pages.
+     */
+    @Test public void prefetchIsNotAReference() {
+        EvictionPolicy twoQ = EvictionPolicy.Kind.TWO_QUEUE.create(4);
+        EvictionPolicy.Filter any = new EvictionPolicy.Filter() {
+            public boolean canEvict(PageId pid) {
+                return true;
+            }
+        };
+        HeapPageId p = new HeapPageId(TABLE, 0);
+        twoQ.pageAdmitted(p);
+        assertEquals(p, twoQ.evict(any));
+
+        // remembered on A1out, but prefetching it again is not a second use
+        twoQ.pagePrefetched(p);
+        twoQ.pageAdmitted(new HeapPageId(TABLE, 1));
+        assertEquals(p, twoQ.evict(any));
+
+        // while a real request for it is, and promotes it past page 2
+        twoQ.pagePrefetched(p);
+        twoQ.pageAdmitted(p);
+        twoQ.pageAdmitted(new HeapPageId(TABLE, 2));
+        twoQ.pageAdmitted(new HeapPageId(TABLE, 3));
+        assertEquals(new HeapPageId(TABLE, 1), twoQ.evict(any));
+        assertEquals(new HeapPageId(TABLE, 2), twoQ.evict(any));
+    }
+
+    /**
+     * A reader that passes over pages gets only the pages it will request
+     * prefetched, and the pages it passes over do not end its run.
+     */
+    @Test public void filteredRequestsPrefetchWantedPages() throws Exception {
+        ReadAhead ra = new ReadAhead(bp, TABLE, 60, new ReadAhead.PageFilter() {
+            public boolean wanted(int pgNo) {
+                return pgNo % 2 == 0;
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            if (i % 2 == 1) {
+                ra.pageSkipped(i);
+                continue;
+            }
+            ra.pageRequested(i);
+            bp.getPage(new TransactionId(), new HeapPageId(TABLE, i), Permissions.READ_ONLY);
+        }
+        awaitPrefetches(60);
+        assertTrue(bp.isResident(new HeapPageId(TABLE, 20)));
+        for (int i = 1; i < 60; i += 2)
+            assertFalse("page " + i, bp.isResident(new HeapPageId(TABLE, i)));
+    }
+
+    /**
+     * At most as many prefetches as the pool holds wait for the prefetch
+     * thread; further ones are dropped, and not reported as pending.
+     */
+    @Test public void prefetchQueueIsBounded() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Database.getCatalog().addTable(new CountingFile(TABLE + 1) {
+            public Page readPage(PageId id) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.readPage(id);
+            }
+        }, "blocking");
+        int pages = 10;
+        bp = Database.resetBufferPool(pages);
+
+        // the prefetch thread takes the first request and blocks on it
+        bp.prefetchPage(new HeapPageId(TABLE + 1, 0));
+        started.await();
+        for (int i = 1; i <= 2 * pages; i++)
+            bp.prefetchPage(new HeapPageId(TABLE + 1, i));
+        for (int i = 1; i <= 2 * pages; i++)
+            assertEquals("page " + i, i <= pages, bp.isPrefetching(new HeapPageId(TABLE + 1, i)));
+
+        release.countDown();
+        for (int i = 0; i <= pages; i++) {
+            while (bp.isPrefetching(new HeapPageId(TABLE + 1, i)))
+                Thread.sleep(1);
+        }
+        assertTrue(bp.isResident(new HeapPageId(TABLE + 1, pages)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
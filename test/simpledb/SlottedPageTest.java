@@ -0,0 +1,132 @@
+package simpledb;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, new String[] { "id", "name" });
+
+    private HeapPageId pid;
+
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Short strings take only their own length, so a slotted page holds
+     * many more of them than a HeapPage does.
+     */
+    @Test public void shortStringsPackDensely() throws Exception {
+        SlottedPage page = new SlottedPage(pid, new byte[BufferPool.getPageSize()]);
+        int n = 0;
+        while (page.getFreeSpace() >= SlottedPage.recordSize(tuple(n, "x" + n)) + SlottedPage.SLOT_SIZE)
+            page.insertTuple(tuple(n, "x" + n++));
+        assertTrue(n > 4 * HeapPage.numSlots(BufferPool.getPageSize(), TD));
+        try {
+            page.insertTuple(tuple(0, "a string longer than the space left on the page"));
+            fail("page should be full");
+        } catch (DbException expected) {
+        }
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        Iterator<Tuple> it = reread.iterator();
+        for (int i = 0; i < n; i++) {
+            Tuple t = it.next();
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("x" + i, ((StringField) t.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Deleting frees a tuple's slot and bytes; an insert reuses the slot
+     * and squeezes out the holes when it needs their space.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedPage page = new SlottedPage(pid, new byte[BufferPool.getPageSize()]);
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'a');
+        String big = new String(chars);
+        List<Tuple> inserted = new ArrayList<Tuple>();
+        for (int i = 0; page.getFreeSpace() >= SlottedPage.recordSize(tuple(i, big)) + SlottedPage.SLOT_SIZE; i++) {
+            Tuple t = tuple(i, big);
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        int full = page.getFreeSpace();
+        page.deleteTuple(inserted.get(1));
+        page.deleteTuple(inserted.get(3));
+        assertNull(inserted.get(1).getRecordId());
+        assertFalse(page.isSlotUsed(1));
+        assertEquals(full + 2 * SlottedPage.recordSize(tuple(0, big)), page.getFreeSpace());
+
+        // needs both holes
+        chars = new char[250];
+        Arrays.fill(chars, 'b');
+        Tuple t = tuple(99, new String(chars));
+        page.insertTuple(t);
+        assertEquals(new RecordId(pid, 1), t.getRecordId());
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        int seen = 0;
+        for (Iterator<Tuple> it = reread.iterator(); it.hasNext(); seen++) {
+            Tuple u = it.next();
+            int id = ((IntField) u.getField(0)).getValue();
+            assertEquals(id == 99 ? t.getField(1) : inserted.get(id).getField(1), u.getField(1));
+        }
+        assertEquals(inserted.size() - 1, seen);
+        assertArrayEquals(new byte[BufferPool.getPageSize()], page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * A HeapFile in the slotted layout inserts through its free space map,
+     * writes its pages and reads them back.
+     */
+    @Test public void heapFile() throws Exception {
+        File f = SystemTestUtil.createTempTableFile("slotted");
+        HeapFile hf = new HeapFile(f, TD, BufferPool.getPageSize(), HeapFile.Storage.PLAIN, HeapFile.Layout.SLOTTED);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        BufferPool bp = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        int rows = 3 * HeapPage.numSlots(BufferPool.getPageSize(), TD);
+        for (int i = 0; i < rows; i++)
+            bp.insertTuple(tid, hf.getId(), tuple(i, "name" + i));
+        bp.flushAllPages();
+        assertEquals(1, hf.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int i = 0;
+        for (; it.hasNext(); i++)
+            assertEquals("name" + i, ((StringField) it.next().getField(1)).getValue());
+        it.close();
+        assertEquals(rows, i);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
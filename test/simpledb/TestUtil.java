@@ -228,6 +228,10 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public int getPageSize() {
+            return BufferPool.getPageSize();
+        }
+
         public int getId() {
             return tableid;
         }
@@ -241,6 +245,82 @@ public class TestUtil {
 		}
     }
 
+    /**
+     * Stub DbFile that hands out empty MockPages and counts page reads and
+     * writes, for unit testing the BufferPool.
+     */
+    public static class CountingFile extends SkeletonFile {
+        public int readCount = 0;
+        public int writeCount = 0;
+
+        public CountingFile(int tableid) {
+            super(tableid, Utility.getTupleDesc(1));
+        }
+
+        /** @return a MockPage whose first four bytes hold its page number */
+        public Page readPage(PageId id) {
+            readCount += 1;
+            byte[] data = new byte[BufferPool.getPageSize()];
+            java.nio.ByteBuffer.wrap(data).putInt(id.pageNumber());
+            return new MockPage((HeapPageId) id, data);
+        }
+
+        public void writePage(Page p) throws IOException {
+            writeCount += 1;
+        }
+    }
+
+    /**
+     * Minimal Page implementation holding raw bytes, for unit testing the
+     * BufferPool without a real page format.
+     */
+    public static class MockPage implements Page {
+        private final HeapPageId pid;
+        private final byte[] data;
+        private TransactionId dirtier;
+
+        public MockPage(HeapPageId pid, byte[] data) {
+            this.pid = pid;
+            this.data = data;
+        }
+
+        public HeapPageId getId() {
+            return pid;
+        }
+
+        public TransactionId isDirty() {
+            return dirtier;
+        }
+
+        public void markDirty(boolean dirty, TransactionId tid) {
+            dirtier = dirty ? tid : null;
+        }
+
+        public byte[] getPageData() {
+            return data.clone();
+        }
+
+        public void getPageData(java.nio.ByteBuffer dest) {
+            dest.put(data);
+        }
+
+        /** @return the int stored at offset in the page */
+        public int getInt(int offset) {
+            return java.nio.ByteBuffer.wrap(data).getInt(offset);
+        }
+
+        public void setInt(int offset, int value) {
+            java.nio.ByteBuffer.wrap(data).putInt(offset, value);
+        }
+
+        public Page getBeforeImage() {
+            return new MockPage(pid, data.clone());
+        }
+
+        public void setBeforeImage() {
+        }
+    }
+
     /**
      * Mock SeqScan class for unit testing.
      */
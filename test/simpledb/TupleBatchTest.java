@@ -0,0 +1,133 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+    /**
+     * SeqScan batches hold every tuple of the table once, with RecordIds,
+     * in each page layout and across page and batch boundaries.
+     */
+    @Test public void seqScanBatches() throws Exception {
+        for (HeapFile.Layout layout : HeapFile.Layout.values()) {
+            File f = SystemTestUtil.createTempTableFile("batch");
+            HeapFile hf = new HeapFile(f, Utility.getTupleDesc(3), BufferPool.getPageSize(), HeapFile.Storage.PLAIN, layout);
+            Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+            BufferPool bp = Database.getBufferPool();
+            TransactionId tid = new TransactionId();
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            for (int i = 0; i < 2500; i++) {
+                bp.insertTuple(tid, hf.getId(), Utility.getTuple(new int[] { i, -i, i % 7 }, 3));
+                tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i, i % 7)));
+            }
+            bp.flushAllPages();
+
+            SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+            scan.open();
+            int rows = 0;
+            TupleBatch batch;
+            while ((batch = scan.nextBatch()) != null) {
+                assertEquals(batch.size(), batch.numSelected());
+                int[] first = batch.getInts(0);
+                int[] second = batch.getInts(1);
+                for (int row = 0; row < batch.size(); row++) {
+                    assertEquals(-first[row], second[row]);
+                    assertEquals(hf.getId(), batch.getTuple(row).getRecordId().getPageId().getTableId());
+                }
+                rows += batch.size();
+            }
+            assertEquals(layout.toString(), tuples.size(), rows);
+            scan.close();
+
+            SystemTestUtil.matchTuples(BatchAdapter.toTuples(new SeqScan(tid, hf.getId(), "t")), tuples);
+            bp.transactionComplete(tid);
+        }
+    }
+
+    /**
+     * Tuples go into batches of string and int vectors, and only the rows
+     * left selected come back out.
+     */
+    @Test public void adapters() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 10; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("s" + i, Type.STRING_LEN));
+            tuples.add(t);
+        }
+
+        BatchIterator batches = BatchAdapter.toBatches(new TupleIterator(td, tuples), 4);
+        batches.open();
+        TupleBatch batch = batches.nextBatch();
+        assertEquals(4, batch.size());
+        assertEquals("s2", batch.getStrings(1)[2]);
+        try {
+            batch.getInts(1);
+            fail("field 1 is a string field");
+        } catch (IllegalArgumentException expected) {
+        }
+        batches.close();
+
+        // keep the odd values only
+        DbIterator it = BatchAdapter.toTuples(new BatchIterator() {
+            private final BatchIterator child = BatchAdapter.toBatches(new TupleIterator(td, tuples), 4);
+
+            public void open() throws DbException, TransactionAbortedException {
+                child.open();
+            }
+
+            public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+                TupleBatch b = child.nextBatch();
+                if (b == null)
+                    return null;
+                int[] sel = b.getSelection();
+                int[] values = b.getInts(0);
+                int n = 0;
+                for (int k = 0; k < b.numSelected(); k++)
+                    if (values[sel[k]] % 2 == 1)
+                        sel[n++] = sel[k];
+                b.setNumSelected(n);
+                return b;
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                child.rewind();
+            }
+
+            public TupleDesc getTupleDesc() {
+                return child.getTupleDesc();
+            }
+
+            public void close() {
+                child.close();
+            }
+        });
+        it.open();
+        for (int i = 1; i < 10; i += 2) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("s" + i, Type.STRING_LEN), t.getField(1));
+        }
+        assertFalse(it.hasNext());
+        it.rewind();
+        assertEquals(new IntField(1), it.next().getField(0));
+        it.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleBatchTest.class);
+    }
+}
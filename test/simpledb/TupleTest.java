@@ -1,6 +1,9 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
@@ -57,6 +60,33 @@ public class TupleTest extends SimpleDbTestBase {
 	}
     }
 
+    /**
+     * A tuple backed by serialized bytes decodes each field from them on
+     * first access, at the offset given by its TupleDesc, and keeps it.
+     */
+    @Test public void lazyFields() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(0x55); // leading byte, as a page header would be
+        new IntField(-7).serialize(dos);
+        new StringField("lazy", Type.STRING_LEN).serialize(dos);
+        new IntField(1 << 20).serialize(dos);
+        byte[] data = baos.toByteArray();
+        assertEquals(1 + td.getSize(), data.length);
+        assertEquals(4 + Type.STRING_TYPE.getLen(), td.getFieldOffset(2));
+
+        Tuple tup = new Tuple(td, data, 1);
+        assertEquals(new IntField(1 << 20), tup.getField(2));
+        // fields not asked for yet are still read from the bytes
+        data[1 + 3] = 9;
+        assertEquals(new IntField(-7 & ~0xff | 9), tup.getField(0));
+        data[1 + 3] = 0;
+        assertEquals(new IntField(-7 & ~0xff | 9), tup.getField(0));
+        assertEquals(new StringField("lazy", Type.STRING_LEN), tup.getField(1));
+        assertEquals("-247\tlazy\t1048576", tup.toString());
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,192 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+
+    /** A HeapFile that counts the pages read from it. */
+    private static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingHeapFile(File f, HeapFile.Layout layout) {
+            super(f, Utility.getTupleDesc(2), BufferPool.getPageSize(), Storage.PLAIN, layout);
+        }
+
+        public Page readPage(PageId pid) throws DbException {
+            reads.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    /** @return a table of the given layout holding rows of { i, i % 10 }, in order of i */
+    private CountingHeapFile createTable(HeapFile.Layout layout, List<ArrayList<Integer>> tuples)
+            throws Exception {
+        CountingHeapFile hf = new CountingHeapFile(SystemTestUtil.createTempTableFile("zones"), layout);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getTuple(new int[] { i, i % 10 }, 2));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        return hf;
+    }
+
+    /** @return the tuples whose first field is in [lo, hi) */
+    private static List<ArrayList<Integer>> range(List<ArrayList<Integer>> tuples, int lo, int hi) {
+        List<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(0) >= lo && t.get(0) < hi)
+                expected.add(t);
+        return expected;
+    }
+
+    private static CompiledPredicate between(int lo, int hi) {
+        return CompiledPredicate.and(
+                new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(lo)),
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(hi)));
+    }
+
+    /**
+     * A range scan of a table in order of the filtered field reads only the
+     * pages that hold the range, whether read a tuple or a batch at a time,
+     * in every layout.
+     */
+    @Test public void rangeScanSkipsPages() throws Exception {
+        CompiledPredicate filter = between(2000, 2100);
+        for (HeapFile.Layout layout : HeapFile.Layout.values()) {
+            List<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            CountingHeapFile hf = createTable(layout, tuples);
+            assertTrue(layout.toString(), hf.numPages() >= 40);
+            List<ArrayList<Integer>> expected = range(tuples, 2000, 2100);
+
+            TransactionId tid = new TransactionId();
+            hf.reads.set(0);
+            SystemTestUtil.matchTuples(new SeqScan(tid, hf.getId(), "t", filter), expected);
+            assertTrue(layout + " read " + hf.reads, hf.reads.get() < hf.numPages() / 4);
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            hf.reads.set(0);
+            SystemTestUtil.matchTuples(BatchAdapter.toTuples(new SeqScan(tid, hf.getId(), "t", filter)), expected);
+            assertTrue(layout + " read " + hf.reads, hf.reads.get() < hf.numPages() / 4);
+
+            // nothing to skip for a filter on a field the pages do not cluster on
+            SystemTestUtil.matchTuples(new SeqScan(tid, hf.getId(), "t",
+                    new Predicate(1, Predicate.Op.EQUALS, new IntField(4)).compile()),
+                    digit(tuples, 4));
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    private static List<ArrayList<Integer>> digit(List<ArrayList<Integer>> tuples, int d) {
+        List<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(1) == d)
+                expected.add(t);
+        return expected;
+    }
+
+    /**
+     * A tuple inserted outside the bounds of its page is found by a range
+     * scan before and after its page is written.
+     */
+    @Test public void insertsWidenBounds() throws Exception {
+        List<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CountingHeapFile hf = createTable(HeapFile.Layout.ROW, tuples);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getTuple(new int[] { -5, 5 }, 2));
+        List<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        expected.add(new ArrayList<Integer>(Arrays.asList(-5, 5)));
+        SystemTestUtil.matchTuples(new SeqScan(tid, hf.getId(), "t", between(-10, 0)), expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf.reads.set(0);
+        tid = new TransactionId();
+        SystemTestUtil.matchTuples(new SeqScan(tid, hf.getId(), "t", between(-10, 0)), expected);
+        assertEquals(1, hf.reads.get());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A page written without a force, as on eviction, is found by a range
+     * scan after a crash for a tuple outside its old bounds, whether the
+     * page write reached disk or not.
+     */
+    @Test public void crashBeforeForce() throws Exception {
+        List<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CountingHeapFile hf = createTable(HeapFile.Layout.ROW, tuples);
+        HeapPageId pid = new HeapPageId(hf.getId(), 3);
+        byte[] old = hf.readPage(pid).getPageData();
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        // the largest value on the page goes, and one below them all comes
+        Tuple deleted = null;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); )
+            deleted = it.next();
+        int gone = ((IntField) deleted.getField(0)).getValue();
+        page.deleteTuple(deleted);
+        page.insertTuple(Utility.getTuple(new int[] { -5, 5 }, 2));
+        hf.writePage(page);
+
+        // the page reached disk, but the side files were never written again
+        CountingHeapFile reopened = new CountingHeapFile(hf.getFile(), HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        List<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        expected.add(new ArrayList<Integer>(Arrays.asList(-5, 5)));
+        SystemTestUtil.matchTuples(new SeqScan(tid, reopened.getId(), "t", between(-10, 0)), expected);
+
+        // the page write was lost
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw");
+        raf.seek(3L * BufferPool.getPageSize());
+        raf.write(old);
+        raf.close();
+        reopened = new CountingHeapFile(hf.getFile(), HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(new SeqScan(tid, reopened.getId(), "t", between(gone, gone + 1)),
+                range(tuples, gone, gone + 1));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** HeapFileEncoder writes the zone map of the pages it writes. */
+    @Test public void encoderWritesZones() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        File f = SystemTestUtil.createTempTableFile("zones");
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        assertTrue(new File(f.getPath() + ".zone").exists());
+
+        CountingHeapFile hf = new CountingHeapFile(f, HeapFile.Layout.ROW);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(new SeqScan(tid, hf.getId(), "t", between(ROWS - 10, ROWS)),
+                range(tuples, ROWS - 10, ROWS));
+        assertEquals(1, hf.reads.get());
+        assertTrue(hf.getZoneMap().mayMatch(0, between(0, 1)));
+        assertFalse(hf.getZoneMap().mayMatch(0, between(ROWS - 10, ROWS)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,40 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Checks that cache-hit throughput of the BufferPool holds up as reader
+ * threads are added.  Hits take no pool-wide lock, so up to the number of
+ * cores n threads should get at least half of n times the throughput of one,
+ * and beyond it throughput must not collapse; on a single core only the
+ * latter can be checked.  For the full curve, run
+ * {@link BufferPoolScalingBenchmark}.
+ */
+public class BufferPoolScalingTest extends SimpleDbTestBase {
+    private static final int HITS_PER_THREAD = 500000;
+
+    @Test public void testHitScaling() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        BufferPool bp = BufferPoolScalingBenchmark.warmPool(HITS_PER_THREAD);
+        double single = BufferPoolScalingBenchmark.bestThroughput(bp, 1, HITS_PER_THREAD);
+        for (int threads : new int[] { Math.max(2, cores), 2 * cores }) {
+            double speedup = BufferPoolScalingBenchmark.bestThroughput(bp, threads, HITS_PER_THREAD)
+                    / single;
+            double expected = 0.5 * Math.min(threads, cores);
+            assertTrue(threads + " threads on " + cores + " cores: speedup " + speedup
+                    + " < " + expected, speedup >= expected);
+        }
+        assertEquals("hits must not read the file", BufferPoolScalingBenchmark.PAGES,
+                bp.getStats().getMisses());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BufferPoolScalingTest.class);
+    }
+}
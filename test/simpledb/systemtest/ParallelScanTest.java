@@ -0,0 +1,232 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+public class ParallelScanTest extends SimpleDbTestBase {
+
+    /** Every tuple is returned exactly once, whatever the table size. */
+    @Test public void testScan() throws IOException, DbException, TransactionAbortedException {
+        int[] rowSizes = new int[]{0, 1, 503, 504, 505, 504 * ParallelSeqScan.MORSEL_PAGES * 3 + 7};
+        for (int rows : rowSizes) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            HeapFile f = SystemTestUtil.createRandomHeapFile(2, rows, null, tuples);
+            TransactionId tid = new TransactionId();
+            SystemTestUtil.matchTuples(new ParallelSeqScan(tid, f.getId(), "t", 4, null), tuples);
+            Database.getBufferPool().transactionComplete(tid);
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        }
+    }
+
+    /** Pages are read by more than one worker, and each only once. */
+    @Test public void testWorkers() throws IOException, DbException, TransactionAbortedException {
+        class InstrumentedHeapFile extends HeapFile {
+            public final Set<Thread> readers = new HashSet<Thread>();
+            public int readCount = 0;
+
+            public InstrumentedHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public synchronized Page readPage(PageId pid) throws DbException {
+                readCount += 1;
+                readers.add(Thread.currentThread());
+                try {
+                    // long enough for the other workers to claim morsels
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.readPage(pid);
+            }
+        }
+
+        final int PAGES = ParallelSeqScan.MORSEL_PAGES * 4;
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        InstrumentedHeapFile table = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TransactionId tid = new TransactionId();
+            SystemTestUtil.matchTuples(new ParallelSeqScan(tid, table.getId(), "t", 4, pool), tuples);
+            Database.getBufferPool().transactionComplete(tid);
+        } finally {
+            pool.shutdown();
+        }
+        synchronized (table) {
+            assertEquals(PAGES, table.readCount);
+            assertTrue("pages read by " + table.readers.size() + " thread(s)", table.readers.size() > 1);
+        }
+    }
+
+    /** Rewinding, or closing part way, cancels the workers of the old run. */
+    @Test public void testRewind() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * 40, null, tuples);
+
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, f.getId(), "table", 4, null);
+        assertEquals("table.", scan.getTupleDesc().getFieldName(0).substring(0, 6));
+        scan.open();
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(scan.hasNext());
+            scan.next();
+        }
+        scan.rewind();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        assertEquals(tuples.size(), count);
+        scan.rewind();
+        assertTrue(scan.hasNext());
+        scan.close();
+        try {
+            scan.hasNext();
+            fail("closed scan should fail");
+        } catch (IllegalStateException expected) {
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A scan opened while another scan on the same pool is stalled on its
+     * consumer, as the inner side of a join is, still completes.
+     */
+    @Test(timeout = 60000) public void testNestedScan() throws Exception {
+        ArrayList<ArrayList<Integer>> outerTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, outerTuples);
+        ArrayList<ArrayList<Integer>> innerTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile inner = SystemTestUtil.createRandomHeapFile(2, 504 * 4, null, innerTuples);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            TransactionId tid = new TransactionId();
+            ParallelSeqScan outerScan = new ParallelSeqScan(tid, outer.getId(), "o", 2, pool);
+            outerScan.open();
+            outerScan.next();
+            // wait for the outer workers to fill the queue and block
+            Thread.sleep(200);
+            SystemTestUtil.matchTuples(new ParallelSeqScan(tid, inner.getId(), "i", 2, pool), innerTuples);
+
+            int count = 1;
+            while (outerScan.hasNext()) {
+                outerScan.next();
+                count++;
+            }
+            assertEquals(outerTuples.size(), count);
+            outerScan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** An Error thrown by a worker reaches the consumer. */
+    @Test public void testWorkerError() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 4, 1000, null, tuples);
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(2)) {
+            @Override
+            public Page readPage(PageId pid) throws DbException {
+                if (pid.pageNumber() == 2)
+                    throw new AssertionError("page 2 is bad");
+                return super.readPage(pid);
+            }
+        };
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 2, null);
+        scan.open();
+        try {
+            while (scan.hasNext())
+                scan.next();
+            fail("the worker's error should be thrown");
+        } catch (AssertionError expected) {
+            assertEquals("page 2 is bad", expected.getMessage());
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * When one worker fails and another then fills the queue and finishes,
+     * only one END is queued, so the second worker does not wait for room
+     * until the scan is closed.
+     */
+    @Test(timeout = 60000) public void testWorkerErrorEndsOnce() throws Exception {
+        final int morsel = ParallelSeqScan.MORSEL_PAGES;
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 2 * morsel, 1000, null,
+                new ArrayList<ArrayList<Integer>>());
+        final CountDownLatch secondStarted = new CountDownLatch(1);
+        final CountDownLatch errorSeen = new CountDownLatch(1);
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(2)) {
+            @Override
+            public Page readPage(PageId pid) throws DbException {
+                int p = pid.pageNumber();
+                try {
+                    if (p == 0) {
+                        // fail only once the other worker has its morsel
+                        secondStarted.await();
+                        throw new AssertionError("page 0 is bad");
+                    }
+                    if (p == morsel) {
+                        secondStarted.countDown();
+                        errorSeen.await();
+                    }
+                    // exactly a queue's worth of batches after the error
+                    if (p < morsel || p > morsel + 2 * 4)
+                        return new HeapPage((HeapPageId) pid, HeapPage.createEmptyPageData());
+                } catch (InterruptedException e) {
+                    throw new DbException("interrupted");
+                } catch (IOException e) {
+                    throw new DbException("could not make an empty page");
+                }
+                return super.readPage(pid);
+            }
+        };
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            TransactionId tid = new TransactionId();
+            ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 2, pool);
+            scan.open();
+            try {
+                scan.hasNext();
+                fail("the worker's error should be thrown");
+            } catch (AssertionError expected) {
+                assertEquals("page 0 is bad", expected.getMessage());
+            }
+            errorSeen.countDown();
+            assertTrue("a worker is still waiting to queue",
+                    pool.awaitQuiescence(10, TimeUnit.SECONDS));
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelScanTest.class);
+    }
+}
@@ -7,7 +7,6 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
 import java.util.Random;
 
 import org.junit.Test;
@@ -78,7 +77,8 @@ public class ScanTest extends SimpleDbTestBase {
             }
 
             @Override
-            public Page readPage(PageId pid) throws NoSuchElementException {
+            public synchronized Page readPage(PageId pid) throws DbException {
+                // read-ahead reads pages on another thread
                 readCount += 1;
                 return super.readPage(pid);
             }
@@ -104,6 +104,40 @@ public class ScanTest extends SimpleDbTestBase {
         assertEquals(0, table.readCount);
     }
 
+    /** Verifies that a scan reads ahead of itself without reading any page twice. */
+    @Test public void testReadAhead() throws IOException, DbException, TransactionAbortedException {
+        /** Counts readPage operations issued by the scanning thread. */
+        class InstrumentedHeapFile extends HeapFile {
+            private final Thread scanner = Thread.currentThread();
+            public int readCount = 0;
+            public int prefetchCount = 0;
+
+            public InstrumentedHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public synchronized Page readPage(PageId pid) throws DbException {
+                readCount += 1;
+                if (Thread.currentThread() != scanner)
+                    prefetchCount += 1;
+                return super.readPage(pid);
+            }
+        }
+
+        final int PAGES = 40;
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992*PAGES, 1000, null, tuples);
+        InstrumentedHeapFile table = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+        SystemTestUtil.matchTuples(table, tuples);
+        synchronized (table) {
+            assertEquals(PAGES, table.readCount);
+            assertTrue("no page was read ahead", table.prefetchCount > 0);
+        }
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);
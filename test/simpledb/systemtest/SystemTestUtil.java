@@ -18,6 +18,12 @@ public class SystemTestUtil {
 
     private static final int MAX_RAND_VALUE = 1 << 16;
 
+    /**
+     * Suffixes of the side files a HeapFile keeps next to its file: the
+     * free-space map, checksums, zone map and compressed page index.
+     */
+    private static final String[] SIDE_FILES = { ".fsm", ".crc", ".zone", ".idx" };
+
     /** @param columnSpecification Mapping between column index and value. */
     public static HeapFile createRandomHeapFile(
             int columns, int rows, Map<Integer, Integer> columnSpecification,
@@ -79,12 +85,25 @@ public class SystemTestUtil {
         }
 
         // Convert the tuples list to a heap file and open it
-        File temp = File.createTempFile("table", ".dat");
-        temp.deleteOnExit();
+        File temp = createTempTableFile("table");
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return temp;
     }
 
+    /**
+     * Creates an empty temporary file for a table, deleted on exit along
+     * with any side files a HeapFile or HeapFileEncoder writes next to it.
+     *
+     * @param prefix the start of the file's name
+     */
+    public static File createTempTableFile(String prefix) throws IOException {
+        File temp = File.createTempFile(prefix, ".dat");
+        temp.deleteOnExit();
+        for (String suffix : SIDE_FILES)
+            new File(temp.getPath() + suffix).deleteOnExit();
+        return temp;
+    }
+
     public static ArrayList<Integer> tupleToList(Tuple tuple) {
         ArrayList<Integer> list = new ArrayList<Integer>();
         for (int i = 0; i < tuple.getTupleDesc().numFields(); ++i) {